@@ -3,6 +3,7 @@ package com.jd.genie.agent.agent;
 import com.jd.genie.agent.dto.File;
 import com.jd.genie.agent.printer.Printer;
 import com.jd.genie.agent.tool.ToolCollection;
+import com.jd.genie.agent.util.CancellationToken;
 import com.jd.genie.model.dto.FileInformation;
 import com.jd.genie.model.req.AgentRequest;
 import lombok.AllArgsConstructor;
@@ -33,4 +34,8 @@ public class AgentContext {
     String basePrompt;
     Integer agentType;
     List<File> taskProductFiles;
+    // 流式输出合并配置 "最大延迟毫秒,最大字符数"，为空时按生产者取全局配置
+    String streamFlush;
+    // 请求取消令牌，取消后智能体不再开始新的步骤
+    CancellationToken cancellationToken;
 }
\ No newline at end of file
@@ -9,17 +9,19 @@ import com.jd.genie.agent.enums.RoleType;
 import com.jd.genie.agent.llm.LLM;
 import com.jd.genie.agent.printer.Printer;
 import com.jd.genie.agent.tool.ToolCollection;
+import com.jd.genie.agent.util.CancellationToken;
 import com.jd.genie.agent.util.ThreadUtil;
 import lombok.Data;
 import lombok.experimental.Accessors;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CountDownLatch;
 
 /**
  * 代理基类 - 管理代理状态和执行的基础类
@@ -51,6 +53,12 @@ public abstract class BaseAgent {
     // digital employee prompt
     private String digitalEmployeePrompt;
 
+    // 当前执行的任务，工具按任务取数字员工
+    private String currentTask;
+
+    // 流式解析阶段提前派发的工具执行结果，key为工具ID
+    private final Map<String, DispatchedTool> dispatchedTools = new ConcurrentHashMap<>();
+
     /**
      * 执行单个步骤
      */
@@ -69,6 +77,14 @@ public abstract class BaseAgent {
         List<String> results = new ArrayList<>();
         try {
             while (currentStep < maxSteps && state != AgentState.FINISHED) {
+                // 请求已取消（如客户端断线未重连），不再开始新的步骤
+                if (isCancelled()) {
+                    String reason = context.getCancellationToken().getReason();
+                    log.warn("{} {} cancelled before step {}: {}", context.getRequestId(), getName(), currentStep + 1, reason);
+                    state = AgentState.ERROR;
+                    results.add("Cancelled: " + reason);
+                    break;
+                }
                 currentStep++;
                 log.info("{} {} Executing step {}/{}", context.getRequestId(), getName(), currentStep, maxSteps);
                 String stepResult = step();
@@ -88,6 +104,14 @@ public abstract class BaseAgent {
         return results.isEmpty() ? "No steps executed" : results.get(results.size() - 1);
     }
 
+    /**
+     * 请求是否已取消
+     */
+    public boolean isCancelled() {
+        CancellationToken cancellation = context.getCancellationToken();
+        return Objects.nonNull(cancellation) && cancellation.isCancelled();
+    }
+
     /**
      * 更新代理记忆
      */
@@ -112,6 +136,13 @@ public abstract class BaseAgent {
         memory.addMessage(message);
     }
 
+    /**
+     * 按模型上下文长度截取记忆，system 消息占用的 token 作为预留
+     */
+    protected List<Message> getContextMessages(Message systemMsg) {
+        return llm.truncateMessages(context, memory, Objects.nonNull(systemMsg) ? llm.countTokens(systemMsg) : 0);
+    }
+
     public String executeTool(ToolCall command) {
         if (command == null || command.getFunction() == null || command.getFunction().getName() == null) {
             return "Error: Invalid function call format";
@@ -124,7 +155,7 @@ public abstract class BaseAgent {
             Object args = mapper.readValue(command.getFunction().getArguments(), Object.class);
 
             // 执行工具
-            Object result = availableTools.execute(name, args);
+            Object result = availableTools.execute(currentTask, name, args);
             log.info("{} execute tool: {} {} result {}", context.getRequestId(), name, args, result);
             // 格式化结果
             if (Objects.nonNull(result)) {
@@ -143,19 +174,67 @@ public abstract class BaseAgent {
      * @return 返回工具执行结果映射，key为工具ID，value为执行结果
      */
     public Map<String, String> executeTools(List<ToolCall> commands) {
+        Map<String, CompletableFuture<String>> futures = new LinkedHashMap<>();
+        for (ToolCall tooCall : commands) {
+            // 流式阶段已开始执行的工具直接等待结果
+            DispatchedTool dispatched = Objects.nonNull(tooCall.getId()) ? dispatchedTools.remove(tooCall.getId()) : null;
+            futures.put(tooCall.getId(), Objects.nonNull(dispatched) ? dispatched.future
+                    : ThreadUtil.submit(ThreadUtil.TOOL, () -> executeTool(tooCall)));
+        }
+        discardDispatchedTools("not in final tool calls");
+
         Map<String, String> result = new ConcurrentHashMap<>();
-        CountDownLatch taskCount = ThreadUtil.getCountDownLatch(commands.size());
         for (ToolCall tooCall : commands) {
-            ThreadUtil.execute(() -> {
-                String toolResult = executeTool(tooCall);
-                result.put(tooCall.getId(), toolResult);
-                taskCount.countDown();
-            });
+            try {
+                result.put(tooCall.getId(), futures.get(tooCall.getId()).join());
+            } catch (Exception e) {
+                log.error("{} execute tool {} failed ", context.getRequestId(), tooCall.getFunction().getName(), e);
+                result.put(tooCall.getId(), "Tool" + tooCall.getFunction().getName() + " Error.");
+            }
         }
-        ThreadUtil.await(taskCount);
         return result;
     }
 
+    /**
+     * 提前派发单个工具调用，LLM 流式输出出完整参数后立即开始执行
+     * 结果由后续 executeTools 按工具ID取回
+     */
+    public void dispatchTool(ToolCall command) {
+        if (Objects.isNull(command.getId())) {
+            return;
+        }
+        dispatchedTools.computeIfAbsent(command.getId(), id -> {
+            log.info("{} dispatch tool {} before llm finished", context.getRequestId(), command.getFunction().getName());
+            DispatchedTool dispatched = new DispatchedTool(command.getFunction().getName());
+            // 丢弃时尚未开始执行的工具不再执行
+            dispatched.future = ThreadUtil.submit(ThreadUtil.TOOL, () -> dispatched.discarded ? null : executeTool(command));
+            return dispatched;
+        });
+    }
 
+    /**
+     * 丢弃未被最终工具调用认领的提前派发工具：LLM 调用失败、最终响应中不含该工具ID、或本轮不执行工具时调用
+     * 尚未开始的工具不再执行，已在执行的工具结果被丢弃
+     */
+    public void discardDispatchedTools(String reason) {
+        for (String id : new ArrayList<>(dispatchedTools.keySet())) {
+            DispatchedTool dispatched = dispatchedTools.remove(id);
+            if (Objects.isNull(dispatched)) {
+                continue;
+            }
+            dispatched.discarded = true;
+            dispatched.future.cancel(false);
+            log.warn("{} discard dispatched tool {} {}: {}", context.getRequestId(), dispatched.name, id, reason);
+        }
+    }
 
+    private static class DispatchedTool {
+        private final String name;
+        private volatile boolean discarded;
+        private CompletableFuture<String> future;
+
+        private DispatchedTool(String name) {
+            this.name = name;
+        }
+    }
 }
\ No newline at end of file
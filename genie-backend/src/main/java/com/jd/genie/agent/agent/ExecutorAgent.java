@@ -80,6 +80,38 @@ public class ExecutorAgent extends ReActAgent {
         setTaskId(0);
     }
 
+    /**
+     * 派生并行子执行器：复用已渲染的提示词与工具集，记忆与当前执行器共享（写时复制），
+     * 子执行器结束后由调用方通过 getMemory().merge 合并新增消息
+     */
+    public ExecutorAgent fork() {
+        ExecutorAgent fork = new ExecutorAgent();
+        fork.setName(getName());
+        fork.setDescription(getDescription());
+        fork.setSystemPromptSnapshot(systemPromptSnapshot);
+        fork.setNextStepPromptSnapshot(nextStepPromptSnapshot);
+        fork.setSystemPrompt(systemPromptSnapshot);
+        fork.setNextStepPrompt(nextStepPromptSnapshot);
+        fork.setPrinter(getPrinter());
+        fork.setMaxSteps(getMaxSteps());
+        GenieConfig genieConfig = SpringContextHolder.getApplicationContext().getBean(GenieConfig.class);
+        fork.setLlm(new LLM(genieConfig.getExecutorModelName(), ""));
+        fork.setContext(context);
+        fork.setMaxObserve(maxObserve);
+        fork.availableTools = availableTools;
+        fork.setDigitalEmployeePrompt(getDigitalEmployeePrompt());
+        fork.setTaskId(0);
+        fork.setState(getState());
+        fork.setMemory(getMemory().fork());
+        return fork;
+    }
+
+    /**
+     * 仅用于 fork 与同包单测：不渲染提示词、不初始化工具
+     */
+    ExecutorAgent() {
+    }
+
     @Override
     public boolean think() {
         // 获取文件内容
@@ -93,14 +125,17 @@ public class ExecutorAgent extends ReActAgent {
         }
 
         try {
+            GenieConfig genieConfig = SpringContextHolder.getApplicationContext().getBean(GenieConfig.class);
             // 获取带工具选项的响应
             log.info("{} executor ask tool {}", context.getRequestId(), JSON.toJSONString(availableTools));
+            Message systemMsg = Message.systemMessage(getSystemPrompt(), null);
             CompletableFuture<LLM.ToolCallResponse> future = getLlm().askTool(
                     context,
-                    getMemory().getMessages(),
-                    Message.systemMessage(getSystemPrompt(), null),
+                    getContextMessages(systemMsg),
+                    systemMsg,
                     availableTools,
-                    ToolChoice.AUTO, null, false, 300
+                    ToolChoice.AUTO, null, false, 300,
+                    "1".equals(genieConfig.getIncrementalToolCall()) ? this::dispatchTool : null
             );
 
             LLM.ToolCallResponse response = future.get();
@@ -0,0 +1,166 @@
+package com.jd.genie.agent.agent;
+
+import com.jd.genie.agent.dto.Plan;
+import com.jd.genie.agent.enums.AgentState;
+import com.jd.genie.agent.util.ThreadUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * 计划步骤调度器：按步骤依赖执行计划，依赖全部完成的步骤立即启动，不等待同批其他步骤
+ * 1. 每个步骤由主执行器分叉出的 ExecutorAgent 执行，记忆共享启动时主执行器的记忆（已包含完成步骤的过程）
+ * 2. 步骤完成后在调度线程中按完成顺序合并记忆、更新计划状态并推送
+ * 3. 同时执行的步骤数不超过 maxParallel；任一步骤失败或请求取消后不再启动新步骤，等待在途步骤结束（在途步骤共享取消令牌，随即中断）
+ * 依赖无法满足（循环依赖）时按下标顺序放行，避免计划卡死
+ */
+@Slf4j
+public class PlanScheduler {
+    private final AgentContext context;
+    private final ExecutorAgent executor;
+    private final int maxParallel;
+
+    public PlanScheduler(AgentContext context, ExecutorAgent executor, int maxParallel) {
+        this.context = context;
+        this.executor = executor;
+        this.maxParallel = Math.max(1, maxParallel);
+    }
+
+    /**
+     * 执行计划中未完成的步骤，直到全部完成或有步骤失败
+     *
+     * @return 本轮各步骤的执行结果，按完成顺序拼接
+     */
+    public String execute(Plan plan) {
+        BlockingQueue<StepResult> finished = new LinkedBlockingQueue<>();
+        Set<Integer> launched = new HashSet<>();
+        List<String> results = new ArrayList<>();
+        AgentState failedState = null;
+        int running = 0;
+        context.getTaskProductFiles().clear();
+
+        while (true) {
+            if (failedState == null && executor.isCancelled()) {
+                log.warn("{} plan cancelled, {} steps still running", context.getRequestId(), running);
+                failedState = AgentState.ERROR;
+            }
+            if (failedState == null) {
+                for (int index : readySteps(plan, launched, running == 0)) {
+                    if (running >= maxParallel) {
+                        break;
+                    }
+                    launch(plan, index, finished);
+                    launched.add(index);
+                    running++;
+                }
+            }
+            if (running == 0) {
+                break;
+            }
+
+            StepResult result;
+            try {
+                result = finished.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("{} plan scheduler interrupted, {} steps still running", context.getRequestId(), running);
+                executor.setState(AgentState.ERROR);
+                return String.join("\n", results);
+            }
+            running--;
+
+            // 合并步骤执行过程到主执行器，后续启动的步骤可见
+            executor.getMemory().merge(result.agent.getMemory());
+            result.agent.getMemory().clear();
+
+            if (result.state == AgentState.FINISHED) {
+                plan.updateStepStatus(result.index, "completed", "");
+                results.add(result.output);
+            } else {
+                plan.updateStepStatus(result.index, "blocked", "");
+                if (failedState == null) {
+                    failedState = result.state;
+                }
+                log.error("{} plan step {} ended with state {}", context.getRequestId(), result.index, result.state);
+            }
+            context.getPrinter().send("plan", plan);
+        }
+
+        executor.setState(failedState != null ? failedState : AgentState.FINISHED);
+        return String.join("\n", results);
+    }
+
+    /**
+     * 依赖均已完成的未启动步骤；没有在途步骤且无步骤可启动时（依赖不满足）放行下标最小的未完成步骤
+     */
+    private List<Integer> readySteps(Plan plan, Set<Integer> launched, boolean idle) {
+        List<Integer> ready = new ArrayList<>();
+        Integer firstPending = null;
+        for (int i = 0; i < plan.getSteps().size(); i++) {
+            if ("completed".equals(plan.getStepStatus().get(i)) || launched.contains(i)) {
+                continue;
+            }
+            if (firstPending == null) {
+                firstPending = i;
+            }
+            boolean satisfied = true;
+            for (int dependency : plan.dependenciesOf(i)) {
+                if (!"completed".equals(plan.getStepStatus().get(dependency))) {
+                    satisfied = false;
+                    break;
+                }
+            }
+            if (satisfied) {
+                ready.add(i);
+            }
+        }
+        if (ready.isEmpty() && idle && firstPending != null) {
+            log.warn("{} plan dependencies unsatisfiable, run step {} in order", context.getRequestId(), firstPending);
+            ready.add(firstPending);
+        }
+        return ready;
+    }
+
+    private void launch(Plan plan, int index, BlockingQueue<StepResult> finished) {
+        String step = plan.getSteps().get(index);
+        // 规划阶段已推送的当前步骤不重复推送
+        if (!"in_progress".equals(plan.getStepStatus().get(index))) {
+            plan.updateStepStatus(index, "in_progress", "");
+            context.getPrinter().send("plan", plan);
+            context.getPrinter().send("task", step);
+        }
+
+        ExecutorAgent agent = executor.fork();
+        log.info("{} plan step {} start, dependencies {}", context.getRequestId(), index, plan.dependenciesOf(index));
+
+        ThreadUtil.submit(ThreadUtil.SLAVE, () -> agent.run("你的任务是：" + step))
+                .whenComplete((output, e) -> {
+                    if (e != null) {
+                        // 步骤异常或被线程池拒绝，按执行异常处理
+                        log.error("{} plan step {} failed", context.getRequestId(), index, e);
+                        finished.add(new StepResult(index, agent, AgentState.ERROR, null));
+                    } else {
+                        finished.add(new StepResult(index, agent, agent.getState(), output));
+                    }
+                });
+    }
+
+    private static class StepResult {
+        private final int index;
+        private final ExecutorAgent agent;
+        private final AgentState state;
+        private final String output;
+
+        private StepResult(int index, ExecutorAgent agent, AgentState state, String output) {
+            this.index = index;
+            this.agent = agent;
+            this.state = state;
+            this.output = output;
+        }
+    }
+}
@@ -102,9 +102,10 @@ public class PlanningAgent extends ReActAgent {
             }
 
             context.setStreamMessageType("plan_thought");
+            Message systemMsg = Message.systemMessage(getSystemPrompt(), null);
             CompletableFuture<LLM.ToolCallResponse> future = getLlm().askTool(context,
-                    getMemory().getMessages(),
-                    Message.systemMessage(getSystemPrompt(), null),
+                    getContextMessages(systemMsg),
+                    systemMsg,
                     availableTools,
                     ToolChoice.AUTO, null, context.getIsStream(), 300
             );
@@ -38,17 +38,36 @@ public abstract class ReActAgent extends BaseAgent {
     @Override
     public String step() {
         boolean shouldAct = think();
+        // 思考期间请求被取消，LLM 调用已中断，不再执行上一轮遗留的工具调用
+        if (isCancelled()) {
+            discardDispatchedTools("cancelled");
+            return "Cancelled";
+        }
         if (!shouldAct) {
+            // think 失败或无需执行工具，流式阶段提前派发的工具不会被认领
+            discardDispatchedTools("think finished without action");
             return "Thinking complete - no action needed";
         }
-        return act();
+        String result = act();
+        // act 未执行工具（最终响应无工具调用）时同样丢弃
+        discardDispatchedTools("not claimed by act");
+        return result;
     }
 
+    /**
+     * 为任务生成数字员工：异步调用 LLM，不阻塞任务执行，工具展示数字员工时才等待结果
+     * 同一请求内相同任务只生成一次，并发子任务各自保存，互不覆盖
+     */
     public void generateDigitalEmployee(String task) {
         // 1、参数检查
         if (StringUtils.isEmpty(task)) {
             return;
         }
+        setCurrentTask(task);
+        context.getToolCollection().resolveDigitalEmployee(task, this::requestDigitalEmployee);
+    }
+
+    private CompletableFuture<JSONObject> requestDigitalEmployee(String task) {
         try {
             // 2. 构建系统消息（提取为独立方法）
             String formattedPrompt = formatSystemPrompt(task);
@@ -60,24 +79,25 @@ public abstract class ReActAgent extends BaseAgent {
                     Collections.singletonList(userMessage),
                     Collections.emptyList(),
                     false,
-                    0.01);
+                    0.01,
+                    true);
 
             // 4. 解析响应
-            String llmResponse = summaryFuture.get();
-            log.info("requestId: {} task:{} generateDigitalEmployee: {}", context.getRequestId(), task, llmResponse);
-            JSONObject jsonObject = parseDigitalEmployee(llmResponse);
-            if (jsonObject != null) {
-                log.info("requestId:{} generateDigitalEmployee: {}", context.getRequestId(), jsonObject);
-                context.getToolCollection().updateDigitalEmployee(jsonObject);
-                context.getToolCollection().setCurrentTask(task);
-                // 更新 availableTools 添加数字员工
-                availableTools = context.getToolCollection();
-            } else {
-                log.error("requestId: {} generateDigitalEmployee failed", context.getRequestId());
-            }
-
+            return summaryFuture.handle((llmResponse, e) -> {
+                if (e != null) {
+                    log.error("requestId: {} in generateDigitalEmployee failed,", context.getRequestId(), e);
+                    return null;
+                }
+                log.info("requestId: {} task:{} generateDigitalEmployee: {}", context.getRequestId(), task, llmResponse);
+                JSONObject jsonObject = parseDigitalEmployee(llmResponse);
+                if (jsonObject == null) {
+                    log.error("requestId: {} generateDigitalEmployee failed", context.getRequestId());
+                }
+                return jsonObject;
+            });
         } catch (Exception e) {
             log.error("requestId: {} in generateDigitalEmployee failed,", context.getRequestId(), e);
+            return CompletableFuture.completedFuture(null);
         }
     }
 
@@ -84,15 +84,18 @@ public class ReactImplAgent extends ReActAgent {
             getMemory().addMessage(userMsg);
         }
         try {
+            GenieConfig genieConfig = SpringContextHolder.getApplicationContext().getBean(GenieConfig.class);
             // 获取带工具选项的响应
             context.setStreamMessageType("tool_thought");
 
+            Message systemMsg = Message.systemMessage(getSystemPrompt(), null);
             CompletableFuture<LLM.ToolCallResponse> future = getLlm().askTool(
                     context,
-                    getMemory().getMessages(),
-                    Message.systemMessage(getSystemPrompt(), null),
+                    getContextMessages(systemMsg),
+                    systemMsg,
                     availableTools,
-                    ToolChoice.AUTO, null, context.getIsStream(), 300
+                    ToolChoice.AUTO, null, context.getIsStream(), 300,
+                    "1".equals(genieConfig.getIncrementalToolCall()) ? this::dispatchTool : null
             );
 
             LLM.ToolCallResponse response = future.get();
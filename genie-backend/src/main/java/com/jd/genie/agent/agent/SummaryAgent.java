@@ -156,7 +156,8 @@ public class SummaryAgent extends BaseAgent {
                     Collections.singletonList(userMessage),
                     Collections.emptyList(),
                     false,
-                    0.01);
+                    0.01,
+                    true);
 
             // 5. 解析响应
             String llmResponse = summaryFuture.get();
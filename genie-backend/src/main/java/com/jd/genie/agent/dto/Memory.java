@@ -1,19 +1,39 @@
 package com.jd.genie.agent.dto;
 
 import com.jd.genie.agent.enums.RoleType;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.ToIntFunction;
 
 /**
  * 记忆类 - 管理代理的消息历史
+ * 支持 fork/merge：分叉与原记忆共享已有消息（写时复制），并行子执行器分叉代价与历史长度无关
  */
 @Data
 public class Memory {
-    private List<Message> messages = new ArrayList<>();
+    private List<Message> messages = new MessageList();
+
+    // 上下文窗口的 token 前缀和，随消息追加增量维护，不参与序列化
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private transient TokenIndex tokenIndex;
+
+    public void setMessages(List<Message> messages) {
+        this.messages = messages;
+        resetTokenIndex();
+    }
 
     /**
      * 添加消息
@@ -41,6 +61,7 @@ public class Memory {
      */
     public void clear() {
         messages.clear();
+        resetTokenIndex();
     }
 
     /**
@@ -60,6 +81,30 @@ public class Memory {
                 iterator.remove();
             }
         }
+        resetTokenIndex();
+    }
+
+    /**
+     * 分叉记忆：与当前记忆共享已有消息，之后双方各自追加互不可见
+     */
+    public Memory fork() {
+        if (!(messages instanceof MessageList)) {
+            // 外部设置的普通列表先转换一次，内容不变，token 索引仍然有效
+            messages = new MessageList(messages);
+        }
+        Memory fork = new Memory();
+        fork.messages = ((MessageList) messages).fork();
+        return fork;
+    }
+
+    /**
+     * 合并分叉记忆中分叉后新增的消息，分叉中被删除的继承消息不影响当前记忆
+     */
+    public void merge(Memory fork) {
+        int from = fork.messages instanceof MessageList ? ((MessageList) fork.messages).inherited() : 0;
+        for (int i = from; i < fork.size(); i++) {
+            addMessage(fork.get(i));
+        }
     }
 
     /**
@@ -92,4 +137,105 @@ public class Memory {
     public Message get(int index) {
         return messages.get(index);
     }
-}
\ No newline at end of file
+
+    /**
+     * 计算 maxTokens 预算内的上下文窗口，保留区间为 [start, size)
+     * 已计数的消息不再重复计数，只对新追加的消息计数；切点在前缀和上二分查找。
+     * 发生截断时起点后移到首条 user 消息，避免 tool 结果脱离对应的 tool_calls；最后一条消息始终保留
+     *
+     * @param tokenizer 分词器名称，变化时重建索引
+     * @param counter   单条消息的 token 计数
+     * @param maxTokens 消息可用的 token 预算
+     */
+    public synchronized ContextWindow contextWindow(String tokenizer, ToIntFunction<Message> counter, long maxTokens) {
+        if (tokenIndex == null || !tokenIndex.tokenizer.equals(tokenizer)) {
+            tokenIndex = new TokenIndex(tokenizer);
+        }
+        long[] prefix = tokenIndex.sync(messages, counter);
+        int size = messages.size();
+        long total = prefix[size];
+        if (total <= maxTokens || size == 0) {
+            return new ContextWindow(0, size, total, total);
+        }
+        // 最小的 start 使 prefix[size] - prefix[start] <= maxTokens
+        int low = 1;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (total - prefix[mid] <= maxTokens) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        int start = Math.min(low, size - 1);
+        int userStart = start;
+        while (userStart < size && messages.get(userStart).getRole() != RoleType.USER) {
+            userStart++;
+        }
+        if (userStart < size) {
+            start = userStart;
+        } else {
+            // 窗口内没有 user 消息时至少跳过开头孤立的 tool 结果
+            while (start < size - 1 && messages.get(start).getRole() == RoleType.TOOL) {
+                start++;
+            }
+        }
+        return new ContextWindow(start, size, total, total - prefix[start]);
+    }
+
+    private void resetTokenIndex() {
+        synchronized (this) {
+            tokenIndex = null;
+        }
+    }
+
+    /**
+     * 上下文窗口：保留 messages[start, size)
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class ContextWindow {
+        private final int start;
+        private final int size;
+        private final long totalTokens;
+        private final long keptTokens;
+
+        public boolean isTruncated() {
+            return start > 0;
+        }
+    }
+
+    /**
+     * prefix[i] 为前 i 条消息的 token 总数。消息只会追加、或通过 Memory 方法整体变更（此时索引重置），
+     * 但最后一条消息的内容可能被追加工具结果，因此每次同步时复核已索引的最后一条
+     */
+    private static class TokenIndex {
+        private final String tokenizer;
+        private long[] prefix = new long[16];
+        private Message last;
+        private int indexed;
+
+        private TokenIndex(String tokenizer) {
+            this.tokenizer = tokenizer;
+        }
+
+        private long[] sync(List<Message> messages, ToIntFunction<Message> counter) {
+            int size = messages.size();
+            if (indexed > size || (indexed > 0 && messages.get(indexed - 1) != last)) {
+                indexed = 0;
+            } else if (indexed > 0 && prefix[indexed] - prefix[indexed - 1] != counter.applyAsInt(last)) {
+                indexed--;
+            }
+            if (prefix.length < size + 1) {
+                prefix = Arrays.copyOf(prefix, Math.max(size + 1, prefix.length * 2));
+            }
+            for (int i = indexed; i < size; i++) {
+                prefix[i + 1] = prefix[i] + counter.applyAsInt(messages.get(i));
+            }
+            indexed = size;
+            last = size > 0 ? messages.get(size - 1) : null;
+            return prefix;
+        }
+    }
+}
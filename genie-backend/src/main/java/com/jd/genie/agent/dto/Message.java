@@ -3,20 +3,16 @@ package com.jd.genie.agent.dto;
 
 import com.jd.genie.agent.dto.tool.ToolCall;
 import com.jd.genie.agent.enums.RoleType;
-import lombok.AllArgsConstructor;
-import lombok.Builder;
-import lombok.Data;
-import lombok.NoArgsConstructor;
+import lombok.*;
 
 import java.util.List;
+import java.util.function.UnaryOperator;
 
 /**
  * 消息类 - 表示代理系统中的各种消息
  */
 @Data
-@Builder
 @NoArgsConstructor
-@AllArgsConstructor
 public class Message {
     private RoleType role;           // 消息角色
     private String content;          // 消息内容
@@ -24,6 +20,93 @@ public class Message {
     private String toolCallId;       // 工具调用ID
     private List<ToolCall> toolCalls; // 工具调用列表
 
+    // token 数缓存，内容变化后失效；不参与序列化与比较
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private transient TokenCount tokenCount;
+
+    // 脱敏结果缓存，content 变化后失效
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private transient Desensitized desensitized;
+
+    // 按方言(OpenAI/Claude)序列化后的消息缓存，任一字段被重新赋值后失效
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private transient Formatted formatted;
+
+    // 构造器与 builder 只包含消息字段，缓存字段不对外暴露
+    @Builder
+    public Message(RoleType role, String content, String base64Image, String toolCallId, List<ToolCall> toolCalls) {
+        this.role = role;
+        this.content = content;
+        this.base64Image = base64Image;
+        this.toolCallId = toolCallId;
+        this.toolCalls = toolCalls;
+    }
+
+    /**
+     * 获取指定分词器下缓存的 token 数，未缓存或内容已变化时返回 null
+     */
+    public Integer cachedTokens(String tokenizer) {
+        TokenCount cached = tokenCount;
+        if (cached != null && cached.tokenizer.equals(tokenizer)
+                && cached.content == content && cached.toolCalls == toolCalls) {
+            return cached.tokens;
+        }
+        return null;
+    }
+
+    public void cacheTokens(String tokenizer, int tokens) {
+        tokenCount = new TokenCount(tokenizer, content, toolCalls, tokens);
+    }
+
+    /**
+     * 获取脱敏后的内容，同一脱敏器下 content 未变化时复用上次结果，历史工具消息不重复脱敏
+     */
+    public String desensitizedContent(UnaryOperator<String> desensitizer) {
+        Desensitized cached = desensitized;
+        if (cached != null && cached.desensitizer == desensitizer && cached.content == content) {
+            return cached.result;
+        }
+        String current = content;
+        String result = desensitizer.apply(current);
+        desensitized = new Desensitized(desensitizer, current, result);
+        return result;
+    }
+
+    /**
+     * 获取缓存的序列化结果，未缓存或消息已变化时返回 null
+     *
+     * @param context 序列化依赖的外部状态（如脱敏器），变化时缓存失效
+     */
+    public String cachedFormat(boolean isClaude, Object context) {
+        Formatted cached = formatted;
+        if (cached == null || !cached.matches(this, context)) {
+            return null;
+        }
+        return isClaude ? cached.claude : cached.openai;
+    }
+
+    public void cacheFormat(boolean isClaude, Object context, String json) {
+        Formatted cached = formatted;
+        if (cached == null || !cached.matches(this, context)) {
+            cached = new Formatted(role, content, base64Image, toolCallId, toolCalls, context);
+            formatted = cached;
+        }
+        if (isClaude) {
+            cached.claude = json;
+        } else {
+            cached.openai = json;
+        }
+    }
+
     /**
      * 创建用户消息
      */
@@ -79,4 +162,45 @@ public class Message {
                 .toolCalls(toolCalls)
                 .build();
     }
-}
\ No newline at end of file
+
+    @AllArgsConstructor
+    private static class TokenCount {
+        private final String tokenizer;
+        private final String content;
+        private final List<ToolCall> toolCalls;
+        private final int tokens;
+    }
+
+    @AllArgsConstructor
+    private static class Desensitized {
+        private final UnaryOperator<String> desensitizer;
+        private final String content;
+        private final String result;
+    }
+
+    private static class Formatted {
+        private final RoleType role;
+        private final String content;
+        private final String base64Image;
+        private final String toolCallId;
+        private final List<ToolCall> toolCalls;
+        private final Object context;
+        private volatile String openai;
+        private volatile String claude;
+
+        private Formatted(RoleType role, String content, String base64Image, String toolCallId,
+                          List<ToolCall> toolCalls, Object context) {
+            this.role = role;
+            this.content = content;
+            this.base64Image = base64Image;
+            this.toolCallId = toolCallId;
+            this.toolCalls = toolCalls;
+            this.context = context;
+        }
+
+        private boolean matches(Message message, Object context) {
+            return role == message.role && content == message.content && base64Image == message.base64Image
+                    && toolCallId == message.toolCallId && toolCalls == message.toolCalls && this.context == context;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.jd.genie.agent.dto;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * 可分叉的消息列表：已冻结的前缀由若干只读段组成并在分叉间共享，各分叉只在自己的尾部追加
+ * 1. fork 时把当前尾部冻结为新的只读段，子列表复用全部段，代价与段数相关而与消息数无关
+ * 2. 追加只写尾部；修改或删除前缀中的消息时先展开为私有副本（写时复制），不影响其他分叉
+ * 3. inherited 记录仍保留的继承消息数，删除继承消息时同步减少，合并时据此取分叉后新增的消息
+ * 非线程安全，分叉后由各自的执行线程独占使用
+ */
+class MessageList extends AbstractList<Message> implements RandomAccess {
+    // 段数超过上限时冻结为单段，避免随机访问退化
+    private static final int MAX_SEGMENTS = 16;
+
+    private Message[][] segments;
+    // offsets[i] 为第 i 段首条消息的下标
+    private int[] offsets;
+    private int frozenSize;
+    private ArrayList<Message> tail;
+    private int inherited;
+
+    MessageList() {
+        this.segments = new Message[0][];
+        this.offsets = new int[0];
+        this.tail = new ArrayList<>();
+    }
+
+    MessageList(Collection<Message> messages) {
+        this();
+        tail.addAll(messages);
+    }
+
+    private MessageList(Message[][] segments, int[] offsets, int frozenSize) {
+        this.segments = segments;
+        this.offsets = offsets;
+        this.frozenSize = frozenSize;
+        this.tail = new ArrayList<>();
+        this.inherited = frozenSize;
+    }
+
+    /**
+     * 分叉：子列表与当前列表共享全部已有消息
+     */
+    MessageList fork() {
+        freeze();
+        return new MessageList(segments, offsets, frozenSize);
+    }
+
+    /**
+     * 从父列表继承且仍保留的消息数，位于列表开头
+     */
+    int inherited() {
+        return inherited;
+    }
+
+    @Override
+    public Message get(int index) {
+        if (index >= frozenSize) {
+            return tail.get(index - frozenSize);
+        }
+        if (index < 0) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        int segment = Arrays.binarySearch(offsets, index);
+        if (segment < 0) {
+            segment = -segment - 2;
+        }
+        return segments[segment][index - offsets[segment]];
+    }
+
+    @Override
+    public int size() {
+        return frozenSize + tail.size();
+    }
+
+    @Override
+    public boolean add(Message message) {
+        modCount++;
+        return tail.add(message);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Message> messages) {
+        modCount++;
+        return tail.addAll(messages);
+    }
+
+    @Override
+    public Message set(int index, Message message) {
+        if (index < frozenSize) {
+            unfreeze();
+        }
+        return tail.set(index - frozenSize, message);
+    }
+
+    @Override
+    public void add(int index, Message message) {
+        if (index < frozenSize) {
+            unfreeze();
+        }
+        modCount++;
+        if (index < inherited) {
+            inherited++;
+        }
+        tail.add(index - frozenSize, message);
+    }
+
+    @Override
+    public Message remove(int index) {
+        if (index < frozenSize) {
+            unfreeze();
+        }
+        modCount++;
+        if (index < inherited) {
+            inherited--;
+        }
+        return tail.remove(index - frozenSize);
+    }
+
+    @Override
+    public void clear() {
+        modCount++;
+        segments = new Message[0][];
+        offsets = new int[0];
+        frozenSize = 0;
+        inherited = 0;
+        tail = new ArrayList<>();
+    }
+
+    /**
+     * 把尾部冻结为新的只读段；段数过多时全部合并为一段
+     */
+    private void freeze() {
+        if (tail.isEmpty()) {
+            return;
+        }
+        if (segments.length >= MAX_SEGMENTS) {
+            Message[] all = toArray(new Message[0]);
+            segments = new Message[][]{all};
+            offsets = new int[]{0};
+        } else {
+            segments = Arrays.copyOf(segments, segments.length + 1);
+            segments[segments.length - 1] = tail.toArray(new Message[0]);
+            offsets = Arrays.copyOf(offsets, offsets.length + 1);
+            offsets[offsets.length - 1] = frozenSize;
+        }
+        frozenSize = size();
+        tail.clear();
+    }
+
+    /**
+     * 写时复制：展开为私有尾部，共享段保持不变
+     */
+    private void unfreeze() {
+        ArrayList<Message> copy = new ArrayList<>(size());
+        for (Message[] segment : segments) {
+            copy.addAll(Arrays.asList(segment));
+        }
+        copy.addAll(tail);
+        segments = new Message[0][];
+        offsets = new int[0];
+        frozenSize = 0;
+        tail = copy;
+    }
+}
@@ -7,6 +7,8 @@ import lombok.NoArgsConstructor;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * 计划类
@@ -16,6 +18,7 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 public class Plan {
+    private static final Pattern STEP_ORDER = Pattern.compile("^\\s*执行顺序(\\d+)\\.");
 
     /**
      * 计划标题
@@ -37,10 +40,22 @@ public class Plan {
      */
     private List<String> notes;
 
+    /**
+     * 步骤依赖列表，第 i 项为步骤 i 依赖的步骤下标(0-based)；为空时按"执行顺序N."推导，见 dependenciesOf
+     */
+    private List<List<Integer>> dependencies;
+
     /**
      * 创建新计划
      */
     public static Plan create(String title, List<String> steps) {
+        return create(title, steps, null);
+    }
+
+    /**
+     * 创建带步骤依赖的新计划
+     */
+    public static Plan create(String title, List<String> steps, List<List<Integer>> dependencies) {
         List<String> status = new ArrayList<>();
         List<String> notes = new ArrayList<>();
 
@@ -54,6 +69,7 @@ public class Plan {
                 .steps(steps)
                 .stepStatus(status)
                 .notes(notes)
+                .dependencies(dependencies)
                 .build();
     }
 
@@ -61,6 +77,13 @@ public class Plan {
      * 更新计划
      */
     public void update(String title, List<String> newSteps) {
+        update(title, newSteps, null);
+    }
+
+    /**
+     * 更新计划，步骤变更时依赖随之替换
+     */
+    public void update(String title, List<String> newSteps, List<List<Integer>> newDependencies) {
         if (title != null) {
             this.title = title;
         }
@@ -84,7 +107,55 @@ public class Plan {
             this.steps = newSteps;
             this.stepStatus = newStatuses;
             this.notes = newNotes;
+            this.dependencies = newDependencies;
+        } else if (newDependencies != null) {
+            this.dependencies = newDependencies;
+        }
+    }
+
+    /**
+     * 步骤 i 依赖的步骤下标
+     * 1. 显式依赖：忽略越界与自身下标
+     * 2. 所有步骤都带"执行顺序N."时：依赖序号小于 N 的最大序号组，同序号步骤可并行
+     * 3. 否则依赖前一个步骤，即按顺序执行
+     */
+    public List<Integer> dependenciesOf(int index) {
+        List<Integer> result = new ArrayList<>();
+        if (dependencies != null && dependencies.size() == steps.size()) {
+            List<Integer> declared = dependencies.get(index);
+            if (declared != null) {
+                for (Integer dependency : declared) {
+                    if (dependency != null && dependency >= 0 && dependency < steps.size() && dependency != index
+                            && !result.contains(dependency)) {
+                        result.add(dependency);
+                    }
+                }
+            }
+            return result;
+        }
+        int[] orders = new int[steps.size()];
+        for (int i = 0; i < steps.size(); i++) {
+            Matcher matcher = STEP_ORDER.matcher(steps.get(i));
+            if (!matcher.find()) {
+                if (index > 0) {
+                    result.add(index - 1);
+                }
+                return result;
+            }
+            orders[i] = Integer.parseInt(matcher.group(1));
+        }
+        int previous = Integer.MIN_VALUE;
+        for (int order : orders) {
+            if (order < orders[index] && order > previous) {
+                previous = order;
+            }
+        }
+        for (int i = 0; i < steps.size(); i++) {
+            if (orders[i] == previous) {
+                result.add(i);
+            }
         }
+        return result;
     }
 
     /**
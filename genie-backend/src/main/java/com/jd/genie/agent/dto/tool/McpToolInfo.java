@@ -5,6 +5,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.Map;
+
 @Data
 @Builder
 @NoArgsConstructor
@@ -14,4 +16,6 @@ public class McpToolInfo {
     String name;
     String desc;
     String parameters;
+    // 预解析的 parameters，只读，使用方需要修改时先拷贝
+    Map<String, Object> inputSchema;
 }
@@ -0,0 +1,226 @@
+package com.jd.genie.agent.llm;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * BPE 分词器，兼容 tiktoken 词表格式（每行 "base64(token) rank"）
+ * 词表从 classpath 的 tokenizer/{name}.tiktoken.gz 加载，不依赖网络
+ * 只计数不输出 token id：先按正则切分，再对每段 UTF-8 字节做 byte pair 合并
+ * 短片段逐轮扫描最小 rank；长片段（如无标点的长段中文）用优先队列合并，避免 O(n²)
+ */
+@Slf4j
+public class BpeTokenizer implements Tokenizer {
+    public static final String CL100K_BASE = "cl100k_base";
+    public static final String O200K_BASE = "o200k_base";
+
+    private static final String CL100K_PATTERN = "(?i:'s|'t|'re|'ve|'m|'ll|'d)|[^\\r\\n\\p{L}\\p{N}]?\\p{L}+|\\p{N}{1,3}"
+            + "| ?[^\\s\\p{L}\\p{N}]+[\\r\\n]*|\\s*[\\r\\n]+|\\s+(?!\\S)|\\s+";
+    private static final String O200K_PATTERN = String.join("|",
+            "[^\\r\\n\\p{L}\\p{N}]?[\\p{Lu}\\p{Lt}\\p{Lm}\\p{Lo}\\p{M}]*[\\p{Ll}\\p{Lm}\\p{Lo}\\p{M}]+(?i:'s|'t|'re|'ve|'m|'ll|'d)?",
+            "[^\\r\\n\\p{L}\\p{N}]?[\\p{Lu}\\p{Lt}\\p{Lm}\\p{Lo}\\p{M}]+[\\p{Ll}\\p{Lm}\\p{Lo}\\p{M}]*(?i:'s|'t|'re|'ve|'m|'ll|'d)?",
+            "\\p{N}{1,3}",
+            " ?[^\\s\\p{L}\\p{N}]+[\\r\\n/]*",
+            "\\s*[\\r\\n]+",
+            "\\s+(?!\\S)",
+            "\\s+");
+
+    // 超过该字节数的片段使用优先队列合并
+    private static final int HEAP_MERGE_THRESHOLD = 128;
+
+    private final String name;
+    private final Pattern pattern;
+    // key 为 token 字节按 ISO-8859-1 映射成的字符串，每个字符对应一个字节
+    private final Map<String, Integer> ranks;
+
+    public BpeTokenizer(String name, String pattern, Map<String, Integer> ranks) {
+        this.name = name;
+        this.pattern = Pattern.compile(pattern, Pattern.UNICODE_CHARACTER_CLASS);
+        this.ranks = ranks;
+    }
+
+    /**
+     * 加载内置词表，不存在时返回 null
+     */
+    public static BpeTokenizer load(String name) {
+        String pattern;
+        if (CL100K_BASE.equals(name)) {
+            pattern = CL100K_PATTERN;
+        } else if (O200K_BASE.equals(name)) {
+            pattern = O200K_PATTERN;
+        } else {
+            return null;
+        }
+        String resource = "tokenizer/" + name + ".tiktoken.gz";
+        long start = System.currentTimeMillis();
+        try (InputStream in = BpeTokenizer.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null) {
+                log.error("tokenizer vocab {} not found in classpath", resource);
+                return null;
+            }
+            Map<String, Integer> ranks = new HashMap<>(256 * 1024);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(in), StandardCharsets.US_ASCII));
+            Base64.Decoder decoder = Base64.getDecoder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int space = line.indexOf(' ');
+                if (space <= 0) {
+                    continue;
+                }
+                byte[] token = decoder.decode(line.substring(0, space));
+                ranks.put(new String(token, StandardCharsets.ISO_8859_1), Integer.parseInt(line.substring(space + 1)));
+            }
+            log.info("load tokenizer {} with {} tokens in {}ms", name, ranks.size(), System.currentTimeMillis() - start);
+            return new BpeTokenizer(name, pattern, ranks);
+        } catch (IOException e) {
+            log.error("load tokenizer {} failed", name, e);
+            return null;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int countTokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int count = 0;
+        Matcher matcher = pattern.matcher(text);
+        while (matcher.find()) {
+            String piece = toByteString(text, matcher.start(), matcher.end());
+            count += ranks.containsKey(piece) ? 1 : countPiece(piece);
+        }
+        return count;
+    }
+
+    /**
+     * 将文本片段转成字节串，ASCII 片段无需编码
+     */
+    private static String toByteString(String text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) >= 0x80) {
+                byte[] bytes = text.substring(start, end).getBytes(StandardCharsets.UTF_8);
+                return new String(bytes, StandardCharsets.ISO_8859_1);
+            }
+        }
+        return text.substring(start, end);
+    }
+
+    private int countPiece(String piece) {
+        return piece.length() > HEAP_MERGE_THRESHOLD ? countPieceHeap(piece) : countPieceScan(piece);
+    }
+
+    /**
+     * 对单个片段做 byte pair 合并，每次合并 rank 最小的相邻对，返回最终 token 数
+     */
+    int countPieceScan(String piece) {
+        int length = piece.length();
+        if (length <= 1) {
+            return length;
+        }
+        // boundaries[0..size) 为当前各 token 的起始位置，最后一个元素为 length
+        int[] boundaries = new int[length + 1];
+        int[] pairRanks = new int[length + 1];
+        for (int i = 0; i <= length; i++) {
+            boundaries[i] = i;
+        }
+        int size = length + 1;
+        for (int i = 0; i < size - 2; i++) {
+            pairRanks[i] = rank(piece, boundaries[i], boundaries[i + 2]);
+        }
+        pairRanks[size - 2] = Integer.MAX_VALUE;
+        while (size > 2) {
+            int minIndex = -1;
+            int minRank = Integer.MAX_VALUE;
+            for (int i = 0; i < size - 2; i++) {
+                if (pairRanks[i] < minRank) {
+                    minRank = pairRanks[i];
+                    minIndex = i;
+                }
+            }
+            if (minIndex < 0) {
+                break;
+            }
+            // 合并 minIndex 与 minIndex+1 两个 token
+            System.arraycopy(boundaries, minIndex + 2, boundaries, minIndex + 1, size - minIndex - 2);
+            System.arraycopy(pairRanks, minIndex + 2, pairRanks, minIndex + 1, size - minIndex - 2);
+            size--;
+            pairRanks[minIndex] = minIndex + 2 < size ? rank(piece, boundaries[minIndex], boundaries[minIndex + 2]) : Integer.MAX_VALUE;
+            if (minIndex > 0) {
+                pairRanks[minIndex - 1] = rank(piece, boundaries[minIndex - 1], boundaries[minIndex + 1]);
+            }
+        }
+        return size - 1;
+    }
+
+    /**
+     * 与 countPieceScan 结果相同：相邻对按 (rank, 起始位置) 进入优先队列，取出时校验该对仍然存在，O(n log n)
+     */
+    int countPieceHeap(String piece) {
+        int length = piece.length();
+        // 以 token 起始位置为下标的双向链表，next 为下一个 token 的起始位置（即当前 token 的结束位置）
+        int[] next = new int[length];
+        int[] prev = new int[length];
+        boolean[] alive = new boolean[length];
+        PriorityQueue<long[]> pairs = new PriorityQueue<>(length, Comparator.comparingLong((long[] pair) -> pair[0]));
+        for (int i = 0; i < length; i++) {
+            next[i] = i + 1;
+            prev[i] = i - 1;
+            alive[i] = true;
+        }
+        for (int i = 0; i + 1 < length; i++) {
+            offerPair(pairs, piece, i, i + 2);
+        }
+        int tokens = length;
+        while (!pairs.isEmpty()) {
+            long[] pair = pairs.poll();
+            int start = (int) pair[0];
+            int end = (int) pair[1];
+            int mid = alive[start] ? next[start] : length;
+            if (mid >= length || next[mid] != end) {
+                // 相邻 token 已变化，过期的对
+                continue;
+            }
+            alive[mid] = false;
+            next[start] = end;
+            if (end < length) {
+                prev[end] = start;
+                offerPair(pairs, piece, start, next[end]);
+            }
+            if (prev[start] >= 0) {
+                offerPair(pairs, piece, prev[start], end);
+            }
+            tokens--;
+        }
+        return tokens;
+    }
+
+    private void offerPair(PriorityQueue<long[]> pairs, String piece, int start, int end) {
+        int rank = rank(piece, start, end);
+        if (rank != Integer.MAX_VALUE) {
+            pairs.add(new long[]{((long) rank << 32) | start, end});
+        }
+    }
+
+    private int rank(String piece, int start, int end) {
+        Integer rank = ranks.get(piece.substring(start, end));
+        return rank != null ? rank : Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,43 @@
+package com.jd.genie.agent.llm;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+import java.io.IOException;
+
+/**
+ * 流式 JSON 请求体：发送时由 Jackson 直接写入连接的 okio sink，不再生成完整 JSON 字符串及其 UTF-8 副本
+ * 预序列化的消息与工具定义(RawJson)原样写出；请求参数不可在发送期间修改，OkHttp 重试时会重新写出
+ */
+public class JsonRequestBody extends RequestBody {
+    private static final MediaType JSON = MediaType.parse("application/json");
+
+    private final ObjectWriter writer;
+    private final Object value;
+
+    public JsonRequestBody(ObjectMapper objectMapper, Object value) {
+        // sink 由 OkHttp 管理，写完后不能关闭
+        this.writer = objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.value = value;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return JSON;
+    }
+
+    @Override
+    public long contentLength() {
+        // 长度未知，按 chunked 发送
+        return -1;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        writer.writeValue(sink.outputStream(), value);
+    }
+}
@@ -3,35 +3,43 @@ package com.jd.genie.agent.llm;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
 import com.alibaba.fastjson.TypeReference;
-import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jd.genie.agent.agent.AgentContext;
+import com.jd.genie.agent.dto.Memory;
 import com.jd.genie.agent.dto.Message;
 import com.jd.genie.agent.dto.tool.McpToolInfo;
 import com.jd.genie.agent.dto.tool.ToolCall;
 import com.jd.genie.agent.dto.tool.ToolChoice;
+import com.jd.genie.agent.enums.RoleType;
+import com.jd.genie.agent.printer.StreamCoalescer;
 import com.jd.genie.agent.tool.BaseTool;
 import com.jd.genie.agent.tool.ToolCollection;
+import com.jd.genie.agent.util.CancellationToken;
+import com.jd.genie.agent.util.Desensitizer;
+import com.jd.genie.agent.util.RawJson;
 import com.jd.genie.agent.util.SpringContextHolder;
+import com.jd.genie.agent.util.SseFrameReader;
 import com.jd.genie.agent.util.StringUtil;
 import com.jd.genie.config.GenieConfig;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.*;
 import org.apache.commons.lang3.StringUtils;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -42,18 +50,28 @@ import java.util.regex.Pattern;
 @Data
 public class LLM {
     private static final Map<String, LLM> instances = new ConcurrentHashMap<>();
+    private static final ObjectMapper MESSAGE_MAPPER = new ObjectMapper();
+    private static final int TOOL_SCHEMA_CACHE_SIZE = 64;
+    private static final Map<String, ToolSchema> toolSchemas = Collections.synchronizedMap(
+            new LinkedHashMap<String, ToolSchema>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ToolSchema> eldest) {
+                    return size() > TOOL_SCHEMA_CACHE_SIZE;
+                }
+            });
+    private static final LongAdder TRUNCATE_COUNT = new LongAdder();
+    private static final LongAdder TRUNCATE_MESSAGES = new LongAdder();
+    private static final LongAdder TRUNCATE_TOKENS = new LongAdder();
 
     private final String model;
     private final String llmErp;
     private final int maxTokens;
     private final double temperature;
-    private final String apiKey;
-    private final String baseUrl;
-    private final String interfaceUrl;
     private final String functionCallType;
     private final TokenCounter tokenCounter;
     private final ObjectMapper objectMapper;
     private final Map<String, Object> extParams;
+    private final LLMEndpointPool endpointPool;
 
     private int totalInputTokens;
     private Integer maxInputTokens;
@@ -65,18 +83,17 @@ public class LLM {
         this.model = config.getModel();
         this.maxTokens = config.getMaxTokens();
         this.temperature = config.getTemperature();
-        this.apiKey = config.getApiKey();
-        this.baseUrl = config.getBaseUrl();
-        this.interfaceUrl = StringUtils.isNotEmpty(config.getInterfaceUrl()) ? config.getInterfaceUrl() : "/v1/chat/completions";
         this.functionCallType = config.getFunctionCallType();
         // 初始化 token 计数相关属性
         this.totalInputTokens = 0;
         this.maxInputTokens = config.getMaxInputTokens();
         this.extParams = config.getExtParams();
 
-        // 初始化 tokenizer
-        this.tokenCounter = new TokenCounter();
+        // 初始化 tokenizer，按模型选择分词器
+        this.tokenCounter = new TokenCounter(TokenizerFactory.getTokenizer(config));
         this.objectMapper = new ObjectMapper();
+        // 同一逻辑模型共享端点池，端点内共享连接池与限流
+        this.endpointPool = LLMEndpointPool.get(config);
     }
 
     /**
@@ -84,120 +101,196 @@ public class LLM {
      */
     public static List<Map<String, Object>> formatMessages(List<Message> messages, boolean isClaude) {
         List<Map<String, Object>> formattedMessages = new ArrayList<>();
+        Desensitizer desensitizer = null;
+        for (Message message : messages) {
+            if (isToolResult(message) && desensitizer == null) {
+                desensitizer = getDesensitizer();
+            }
+            formattedMessages.add(formatMessage(message, isClaude, desensitizer));
+        }
+        return formattedMessages;
+    }
 
+    /**
+     * 格式化并序列化消息，序列化结果按方言缓存在 Message 上，历史消息只在首次或内容被修改后序列化；
+     * 返回的 RawJson 由请求体序列化时原样写出
+     */
+    public static List<Object> serializeMessages(List<Message> messages, boolean isClaude) {
+        List<Object> serializedMessages = new ArrayList<>(messages.size());
+        Desensitizer desensitizer = null;
         for (Message message : messages) {
-            Map<String, Object> messageMap = new HashMap<>();
-            // 处理 base64 图像
-            if (message.getBase64Image() != null && !message.getBase64Image().isEmpty()) {
-                List<Map<String, Object>> multimodalContent = new ArrayList<>();
-                // 创建内层的 image_url Map
-                Map<String, String> imageUrlMap = new HashMap<>();
-                imageUrlMap.put("url", "data:image/jpeg;base64," + message.getBase64Image());
-                // 创建外层的 Map
-                Map<String, Object> outerMap = new HashMap<>();
-                outerMap.put("type", "image_url");
-                outerMap.put("image_url", imageUrlMap);
-                // 将创建好的 Map 添加到 multimodalContent 中
-                multimodalContent.add(outerMap);
-
-                Map<String, Object> contentMap = new HashMap<>();
-                outerMap.put("type", "text");
-                outerMap.put("text", message.getContent());
-                multimodalContent.add(contentMap);
+            Object context = null;
+            if (isToolResult(message)) {
+                if (desensitizer == null) {
+                    desensitizer = getDesensitizer();
+                }
+                context = desensitizer;
+            }
+            String json = message.cachedFormat(isClaude, context);
+            if (json == null) {
+                try {
+                    json = MESSAGE_MAPPER.writeValueAsString(formatMessage(message, isClaude, desensitizer));
+                } catch (JsonProcessingException e) {
+                    throw new IllegalStateException("serialize message failed", e);
+                }
+                message.cacheFormat(isClaude, context, json);
+            }
+            serializedMessages.add(new RawJson(json));
+        }
+        return serializedMessages;
+    }
+
+    private static boolean isToolResult(Message message) {
+        return (message.getBase64Image() == null || message.getBase64Image().isEmpty())
+                && (message.getToolCalls() == null || message.getToolCalls().isEmpty())
+                && message.getToolCallId() != null && !message.getToolCallId().isEmpty();
+    }
+
+    private static Desensitizer getDesensitizer() {
+        GenieConfig genieConfig = SpringContextHolder.getApplicationContext().getBean(GenieConfig.class);
+        return StringUtil.getDesensitizer(genieConfig.getSensitivePatterns());
+    }
 
+    private static Map<String, Object> formatMessage(Message message, boolean isClaude, Desensitizer desensitizer) {
+        Map<String, Object> messageMap = new HashMap<>();
+        // 处理 base64 图像
+        if (message.getBase64Image() != null && !message.getBase64Image().isEmpty()) {
+            List<Map<String, Object>> multimodalContent = new ArrayList<>();
+            // 创建内层的 image_url Map
+            Map<String, String> imageUrlMap = new HashMap<>();
+            imageUrlMap.put("url", "data:image/jpeg;base64," + message.getBase64Image());
+            // 创建外层的 Map
+            Map<String, Object> outerMap = new HashMap<>();
+            outerMap.put("type", "image_url");
+            outerMap.put("image_url", imageUrlMap);
+            // 将创建好的 Map 添加到 multimodalContent 中
+            multimodalContent.add(outerMap);
+
+            Map<String, Object> contentMap = new HashMap<>();
+            outerMap.put("type", "text");
+            outerMap.put("text", message.getContent());
+            multimodalContent.add(contentMap);
+
+            messageMap.put("role", message.getRole().getValue());
+            messageMap.put("content", multimodalContent);
+
+        } else if (message.getToolCalls() != null && !message.getToolCalls().isEmpty()) {
+            if (isClaude) {
+                // Claude格式的工具调用处理
                 messageMap.put("role", message.getRole().getValue());
-                messageMap.put("content", multimodalContent);
-
-            } else if (message.getToolCalls() != null && !message.getToolCalls().isEmpty()) {
-                if (isClaude) {
-                    // Claude格式的工具调用处理
-                    messageMap.put("role", message.getRole().getValue());
-                    List<Map<String, Object>> claudeToolCalls = new ArrayList<>();
-                    for (ToolCall toolCall : message.getToolCalls()) {
-                        Map<String, Object> claudeToolCall = new HashMap<>();
-                        claudeToolCall.put("type", "tool_use");
-                        claudeToolCall.put("id", toolCall.getId());
-                        claudeToolCall.put("name", toolCall.getFunction().getName());
-                        claudeToolCall.put("input", JSON.parseObject(toolCall.getFunction().getArguments()));
-                        claudeToolCalls.add(claudeToolCall);
-                    }
-                    messageMap.put("content", claudeToolCalls);
-                } else {
-                    messageMap.put("role", message.getRole().getValue());
-                    List<Map<String, Object>> toolCallsMap = JSON.parseObject(JSON.toJSONString(message.getToolCalls()),
-                            new TypeReference<List<Map<String, Object>>>() {
-                            });
-                    messageMap.put("tool_calls", toolCallsMap);
-                }
-            } else if (message.getToolCallId() != null && !message.getToolCallId().isEmpty()) {
-                // 敏感词过滤
-                GenieConfig genieConfig = SpringContextHolder.getApplicationContext().getBean(GenieConfig.class);
-                String content = StringUtil.textDesensitization(message.getContent(), genieConfig.getSensitivePatterns());
-                if (isClaude) {
-                    // Claude格式的工具调用结果处理
-                    messageMap.put("role", "user");
-                    List<Map<String, Object>> claudeToolCalls = new ArrayList<>();
+                List<Map<String, Object>> claudeToolCalls = new ArrayList<>();
+                for (ToolCall toolCall : message.getToolCalls()) {
                     Map<String, Object> claudeToolCall = new HashMap<>();
-                    claudeToolCall.put("type", "tool_result");
-                    claudeToolCall.put("tool_use_id", message.getToolCallId());
-                    claudeToolCall.put("content", content);
+                    claudeToolCall.put("type", "tool_use");
+                    claudeToolCall.put("id", toolCall.getId());
+                    claudeToolCall.put("name", toolCall.getFunction().getName());
+                    claudeToolCall.put("input", JSON.parseObject(toolCall.getFunction().getArguments()));
                     claudeToolCalls.add(claudeToolCall);
-                    messageMap.put("content", claudeToolCalls);
-                } else {
-                    messageMap.put("role", message.getRole().getValue());
-                    messageMap.put("content", content);
-                    messageMap.put("tool_call_id", message.getToolCallId());
                 }
+                messageMap.put("content", claudeToolCalls);
             } else {
                 messageMap.put("role", message.getRole().getValue());
-                messageMap.put("content", message.getContent());
+                List<Map<String, Object>> toolCallsMap = JSON.parseObject(JSON.toJSONString(message.getToolCalls()),
+                        new TypeReference<List<Map<String, Object>>>() {
+                        });
+                messageMap.put("tool_calls", toolCallsMap);
             }
-
-            formattedMessages.add(messageMap);
+        } else if (message.getToolCallId() != null && !message.getToolCallId().isEmpty()) {
+            // 敏感词过滤，脱敏器由调用方按批次获取（工具结果消息必不为空）
+            String content = message.desensitizedContent(desensitizer);
+            if (isClaude) {
+                // Claude格式的工具调用结果处理
+                messageMap.put("role", "user");
+                List<Map<String, Object>> claudeToolCalls = new ArrayList<>();
+                Map<String, Object> claudeToolCall = new HashMap<>();
+                claudeToolCall.put("type", "tool_result");
+                claudeToolCall.put("tool_use_id", message.getToolCallId());
+                claudeToolCall.put("content", content);
+                claudeToolCalls.add(claudeToolCall);
+                messageMap.put("content", claudeToolCalls);
+            } else {
+                messageMap.put("role", message.getRole().getValue());
+                messageMap.put("content", content);
+                messageMap.put("tool_call_id", message.getToolCallId());
+            }
+        } else {
+            messageMap.put("role", message.getRole().getValue());
+            messageMap.put("content", message.getContent());
         }
 
-        return formattedMessages;
+        return messageMap;
     }
 
-    public List<Map<String, Object>> truncateMessage(AgentContext context, List<Map<String, Object>> messages, int maxInputTokens) {
-        if (messages.isEmpty() || maxInputTokens < 0) {
+    /**
+     * 按 maxInputTokens 从最新消息向前保留，reservedTokens 为 system 等固定占用；
+     * 发生截断时保证以 user 消息开头，最后一条消息始终保留。
+     * 用于 ask 等临时构造的消息列表：每次调用都重建前缀和，为 O(n)（单条消息的 token 数有缓存，不重复分词）；
+     * 来自 Agent 记忆的消息应使用 Memory 重载，增量维护索引
+     */
+    public List<Message> truncateMessages(AgentContext context, List<Message> messages, int reservedTokens) {
+        if (messages.isEmpty() || Objects.isNull(maxInputTokens) || maxInputTokens <= 0) {
             return messages;
         }
-        log.info("{} before truncate {}", context.getRequestId(), JSON.toJSONString(messages));
-        List<Map<String, Object>> truncatedMessages = new ArrayList<>();
-        int remainingTokens = maxInputTokens;
-        Map<String, Object> system = messages.get(0);
-        if ("system".equals(system.getOrDefault("role", ""))) {
-            remainingTokens -= tokenCounter.countMessageTokens(system);
-        }
+        Memory memory = new Memory();
+        memory.setMessages(messages);
+        return truncateMessages(context, memory, reservedTokens);
+    }
 
-        for (int i = messages.size() - 1; i >= 0; i--) {
-            Map<String, Object> message = messages.get(i);
-            int messageToken = tokenCounter.countMessageTokens(message);
-            if (remainingTokens >= messageToken) {
-                truncatedMessages.add(0, message);
-                remainingTokens -= messageToken;
-            } else {
-                break;
-            }
+    /**
+     * 按 maxInputTokens 截取 Memory 的上下文窗口，token 前缀和挂在 Memory 上增量维护，
+     * 每轮只需对新增消息计数，切点二分查找。截断结果以计数形式记录，不再输出完整消息
+     */
+    public List<Message> truncateMessages(AgentContext context, Memory memory, int reservedTokens) {
+        List<Message> messages = memory.getMessages();
+        if (messages.isEmpty() || Objects.isNull(maxInputTokens) || maxInputTokens <= 0) {
+            return messages;
         }
-        // use assistant 保证完整性
-        Iterator<Map<String, Object>> iterator = truncatedMessages.iterator();
-        while (iterator.hasNext()) {
-            Map<String, Object> message = iterator.next();
-            if (!"user".equals(message.getOrDefault("role", ""))) {
-                iterator.remove(); // 安全删除当前元素
-            } else {
-                break;
-            }
+        Memory.ContextWindow window = memory.contextWindow(tokenCounter.getTokenizerName(),
+                tokenCounter::countMessage, (long) maxInputTokens - reservedTokens);
+        if (!window.isTruncated()) {
+            return messages;
         }
+        TRUNCATE_COUNT.increment();
+        TRUNCATE_MESSAGES.add(window.getStart());
+        TRUNCATE_TOKENS.add(window.getTotalTokens() - window.getKeptTokens());
+        log.info("{} truncate messages kept={}/{} tokens={}/{} reserved={} max={}", context.getRequestId(),
+                window.getSize() - window.getStart(), window.getSize(), window.getKeptTokens(),
+                window.getTotalTokens(), reservedTokens, maxInputTokens);
+        return messages.subList(window.getStart(), window.getSize());
+    }
+
+    /**
+     * 计算单条消息的 token 数
+     */
+    public int countTokens(Message message) {
+        return tokenCounter.countMessage(message);
+    }
 
-        if ("system".equals(system.getOrDefault("role", ""))) {
-            truncatedMessages.add(0, system);
+    /**
+     * 估算请求的输入 token 数，用于限流
+     */
+    private int countPromptTokens(List<Message> messages, int reservedTokens) {
+        int tokens = reservedTokens;
+        for (Message message : messages) {
+            tokens += tokenCounter.countMessage(message);
         }
-        log.info("{} after truncate {}", context.getRequestId(), JSON.toJSONString(truncatedMessages));
+        return tokens;
+    }
+
+    private static boolean logRequestBody() {
+        GenieConfig genieConfig = SpringContextHolder.getApplicationContext().getBean(GenieConfig.class);
+        return "1".equals(genieConfig.getLlmRequestLog());
+    }
 
-        return truncatedMessages;
+    /**
+     * 上下文截断统计
+     */
+    public static Map<String, Object> truncateStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("truncations", TRUNCATE_COUNT.sum());
+        stats.put("droppedMessages", TRUNCATE_MESSAGES.sum());
+        stats.put("droppedTokens", TRUNCATE_TOKENS.sum());
+        return stats;
     }
 
     /**
@@ -209,16 +302,39 @@ public class LLM {
             List<Message> systemMsgs,
             boolean stream,
             Double temperature
+    ) {
+        return ask(context, messages, systemMsgs, stream, temperature, false);
+    }
+
+    /**
+     * 向 LLM 发送请求并获取响应
+     *
+     * @param cacheable 是否使用响应缓存，仅用于相同输入可复用结果的调用；温度高于缓存配置时不生效
+     */
+    public CompletableFuture<String> ask(
+            AgentContext context,
+            List<Message> messages,
+            List<Message> systemMsgs,
+            boolean stream,
+            Double temperature,
+            boolean cacheable
     ) {
         try {
-            List<Map<String, Object>> formattedMessages;
+            List<Object> formattedMessages;
+            int systemTokens = 0;
+            if (systemMsgs != null) {
+                for (Message systemMsg : systemMsgs) {
+                    systemTokens += tokenCounter.countMessage(systemMsg);
+                }
+            }
+            messages = truncateMessages(context, messages, systemTokens);
+            int promptTokens = countPromptTokens(messages, systemTokens);
             // 格式化系统和用户消息
             if (systemMsgs != null && !systemMsgs.isEmpty()) {
-                List<Map<String, Object>> formattedSystemMsgs = formatMessages(systemMsgs, false);
-                formattedMessages = new ArrayList<>(formattedSystemMsgs);
-                formattedMessages.addAll(formatMessages(messages, model.contains("claude")));
+                formattedMessages = serializeMessages(systemMsgs, false);
+                formattedMessages.addAll(serializeMessages(messages, model.contains("claude")));
             } else {
-                formattedMessages = formatMessages(messages, model.contains("claude"));
+                formattedMessages = serializeMessages(messages, model.contains("claude"));
             }
 
             // 准备请求参数
@@ -231,41 +347,25 @@ public class LLM {
 
             // 根据模型设置不同的参数
             params.put("max_tokens", maxTokens);
-            params.put("temperature", temperature != null ? temperature : this.temperature);
+            double requestTemperature = temperature != null ? temperature : this.temperature;
+            params.put("temperature", requestTemperature);
             if (Objects.nonNull(extParams)) {
                 params.putAll(extParams);
             }
 
-            log.info("{} call llm ask request {}", context.getRequestId(), JSONObject.toJSONString(params));
-            // 处理非流式请求
-            if (!stream) {
-                params.put("stream", false);
-
-                // 调用 API
-                CompletableFuture<String> future = callOpenAI(params);
-
-                return future.thenApply(response -> {
-                    try {
-                        // 解析响应
-                        log.info("{} call llm response {}", context.getRequestId(), response);
-                        JsonNode jsonResponse = objectMapper.readTree(response);
-                        JsonNode choices = jsonResponse.get("choices");
-
-                        if (choices == null || choices.isEmpty() || choices.get(0).get("message").get("content") == null) {
-                            throw new IllegalArgumentException("Empty or invalid response from LLM");
-                        }
-
-                        return choices.get(0).get("message").get("content").asText();
-                    } catch (IOException e) {
-                        throw new CompletionException(e);
-                    }
-                });
-            } else {
-                // 处理流式请求
-                params.put("stream", true);
-                // 调用流式 API
-                return callOpenAIStream(params);
+            log.info("{} call llm ask request model={} messages={} stream={}", context.getRequestId(), model,
+                    formattedMessages.size(), stream);
+            if (logRequestBody()) {
+                log.info("{} call llm ask request {}", context.getRequestId(), JSONObject.toJSONString(params));
+            }
+            if (cacheable) {
+                LLMResponseCache cache = LLMResponseCache.getInstance();
+                if (cache.accepts(requestTemperature)) {
+                    return cache.get(context.getRequestId(), LLMResponseCache.key(params),
+                            () -> requestAsk(context, params, stream, promptTokens, null));
+                }
             }
+            return requestAsk(context, params, stream, promptTokens, context.getCancellationToken());
         } catch (Exception e) {
             log.error("{} Unexpected error in ask: {}", e.getMessage(), e);
             CompletableFuture<String> future = new CompletableFuture<>();
@@ -274,6 +374,42 @@ public class LLM {
         }
     }
 
+    /**
+     * @param cancellationToken 请求取消时中断调用；缓存请求可能被其他请求等待，传 null
+     */
+    private CompletableFuture<String> requestAsk(AgentContext context, Map<String, Object> params, boolean stream,
+                                                 int promptTokens, CancellationToken cancellationToken) {
+        // 处理非流式请求
+        if (!stream) {
+            params.put("stream", false);
+
+            // 调用 API
+            CompletableFuture<String> future = callOpenAI(context.getRequestId(), params, LLMClientFactory.DEFAULT_TIMEOUT, promptTokens, cancellationToken);
+
+            return future.thenApply(response -> {
+                try {
+                    // 解析响应
+                    log.info("{} call llm response {}", context.getRequestId(), response);
+                    JsonNode jsonResponse = objectMapper.readTree(response);
+                    JsonNode choices = jsonResponse.get("choices");
+
+                    if (choices == null || choices.isEmpty() || choices.get(0).get("message").get("content") == null) {
+                        throw new IllegalArgumentException("Empty or invalid response from LLM");
+                    }
+
+                    return choices.get(0).get("message").get("content").asText();
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            });
+        } else {
+            // 处理流式请求
+            params.put("stream", true);
+            // 调用流式 API
+            return callOpenAIStream(context.getRequestId(), params, promptTokens, cancellationToken);
+        }
+    }
+
     public <T> T deepCopy(T original) {
         try {
             // 序列化为 JSON 字节数组
@@ -331,6 +467,83 @@ public class LLM {
     }
 
 
+    /**
+     * 获取工具定义，按方言(openai/claude/struct_parse)与工具集合签名缓存，跨步骤、跨请求复用
+     */
+    private ToolSchema getToolSchema(ToolCollection tools) throws IOException {
+        String dialect = "struct_parse".equals(functionCallType) ? "struct_parse" : model.contains("claude") ? "claude" : "openai";
+        String key = dialect + "\n" + tools.schemaKey();
+        ToolSchema toolSchema = toolSchemas.get(key);
+        if (Objects.isNull(toolSchema)) {
+            toolSchema = buildToolSchema(tools);
+            toolSchemas.put(key, toolSchema);
+        }
+        return toolSchema;
+    }
+
+    private ToolSchema buildToolSchema(ToolCollection tools) throws IOException {
+        StringBuilder stringBuilder = new StringBuilder();
+        List<Map<String, Object>> formattedTools = new ArrayList<>();
+        if ("struct_parse".equals(functionCallType)) {
+            GenieConfig genieConfig = SpringContextHolder.getApplicationContext().getBean(GenieConfig.class);
+            stringBuilder.append(genieConfig.getStructParseToolSystemPrompt());
+            // base tool
+            for (BaseTool tool : tools.getToolMap().values()) {
+                Map<String, Object> functionMap = new HashMap<>();
+                functionMap.put("name", tool.getName());
+                functionMap.put("description", tool.getDescription());
+                functionMap.put("parameters", addFunctionNameParam(tool.toParams(), tool.getName()));
+                stringBuilder.append(String.format("- `%s`\n```json %s ```\n", tool.getName(), JSON.toJSONString(functionMap)));
+            }
+            // mcp tool
+            for (McpToolInfo tool : tools.getMcpToolMap().values()) {
+                Map<String, Object> parameters = mcpParameters(tool);
+                Map<String, Object> functionMap = new HashMap<>();
+                functionMap.put("name", tool.getName());
+                functionMap.put("description", tool.getDesc());
+                functionMap.put("parameters", addFunctionNameParam(parameters, tool.getName()));
+                stringBuilder.append(String.format("- `%s`\n```json %s ```\n", tool.getName(), JSON.toJSONString(functionMap)));
+            }
+
+        } else { // function_call
+            // base tool
+            for (BaseTool tool : tools.getToolMap().values()) {
+                Map<String, Object> functionMap = new HashMap<>();
+                functionMap.put("name", tool.getName());
+                functionMap.put("description", tool.getDescription());
+                functionMap.put("parameters", tool.toParams());
+                Map<String, Object> toolMap = new HashMap<>();
+                toolMap.put("type", "function");
+                toolMap.put("function", functionMap);
+                formattedTools.add(toolMap);
+            }
+            // mcp tool
+            for (McpToolInfo tool : tools.getMcpToolMap().values()) {
+                Map<String, Object> parameters = mcpParameters(tool);
+                Map<String, Object> functionMap = new HashMap<>();
+                functionMap.put("name", tool.getName());
+                functionMap.put("description", tool.getDesc());
+                functionMap.put("parameters", parameters);
+                Map<String, Object> toolMap = new HashMap<>();
+                toolMap.put("type", "function");
+                toolMap.put("function", functionMap);
+                formattedTools.add(toolMap);
+            }
+
+            if (model.contains("claude")) {
+                formattedTools = gptToClaudeTool(formattedTools);
+            }
+        }
+        return new ToolSchema(stringBuilder.toString(), new RawJson(objectMapper.writeValueAsString(formattedTools)));
+    }
+
+    private Map<String, Object> mcpParameters(McpToolInfo tool) {
+        if (Objects.nonNull(tool.getInputSchema())) {
+            return tool.getInputSchema();
+        }
+        return JSON.parseObject(tool.getParameters(), new TypeReference<Map<String, Object>>() {});
+    }
+
     private Map<String, Object> addFunctionNameParam(Map<String, Object> parameters, String toolName) {
         Map<String, Object> newParameters = deepCopy(parameters);
         // require
@@ -366,6 +579,46 @@ public class LLM {
             Double temperature,
             boolean stream,
             int timeout
+    ) {
+        return askTool(context, messages, systemMsgs, tools, toolChoice, temperature, stream, timeout, null);
+    }
+
+    /**
+     * 向 LLM 发送工具请求并获取响应
+     *
+     * @param messages         已按上下文长度截取的消息，见 truncateMessages
+     * @param toolCallListener 不为空时以流式方式请求，每个工具调用参数完整后立即回调（仅 OpenAI function_call 模式生效）
+     */
+    public CompletableFuture<ToolCallResponse> askTool(
+            AgentContext context,
+            List<Message> messages,
+            Message systemMsgs,
+            ToolCollection tools,
+            ToolChoice toolChoice,
+            Double temperature,
+            boolean stream,
+            int timeout,
+            Consumer<ToolCall> toolCallListener
+    ) {
+        return askTool(context, messages, systemMsgs, tools, toolChoice, temperature, stream, timeout, toolCallListener, false);
+    }
+
+    /**
+     * 向 LLM 发送工具请求并获取响应
+     *
+     * @param cacheable 是否使用响应缓存，仅用于相同输入可复用结果的调用；命中时不再推送流式内容，工具调用仍逐个回调 toolCallListener
+     */
+    public CompletableFuture<ToolCallResponse> askTool(
+            AgentContext context,
+            List<Message> messages,
+            Message systemMsgs,
+            ToolCollection tools,
+            ToolChoice toolChoice,
+            Double temperature,
+            boolean stream,
+            int timeout,
+            Consumer<ToolCall> toolCallListener,
+            boolean cacheable
     ) {
         try {
             // 验证 toolChoice
@@ -377,73 +630,23 @@ public class LLM {
             // 设置 API 请求
             Map<String, Object> params = new HashMap<>();
 
-            // tools
-            StringBuilder stringBuilder = new StringBuilder();
-            List<Map<String, Object>> formattedTools = new ArrayList<>();
-            if ("struct_parse".equals(functionCallType)) {
-                GenieConfig genieConfig = SpringContextHolder.getApplicationContext().getBean(GenieConfig.class);
-                stringBuilder.append(genieConfig.getStructParseToolSystemPrompt());
-                // base tool
-                for (BaseTool tool : tools.getToolMap().values()) {
-                    Map<String, Object> functionMap = new HashMap<>();
-                    functionMap.put("name", tool.getName());
-                    functionMap.put("description", tool.getDescription());
-                    functionMap.put("parameters", addFunctionNameParam(tool.toParams(), tool.getName()));
-                    stringBuilder.append(String.format("- `%s`\n```json %s ```\n", tool.getName(), JSON.toJSONString(functionMap)));
-                }
-                // mcp tool
-                for (McpToolInfo tool : tools.getMcpToolMap().values()) {
-                    Map<String, Object> parameters = JSON.parseObject(tool.getParameters(), new TypeReference<Map<String, Object>>() {});
-                    Map<String, Object> functionMap = new HashMap<>();
-                    functionMap.put("name", tool.getName());
-                    functionMap.put("description", tool.getDesc());
-                    functionMap.put("parameters", addFunctionNameParam(parameters, tool.getName()));
-                    stringBuilder.append(String.format("- `%s`\n```json %s ```\n", tool.getName(), JSON.toJSONString(functionMap)));
-                }
-
-            } else { // function_call
-                // base tool
-                for (BaseTool tool : tools.getToolMap().values()) {
-                    Map<String, Object> functionMap = new HashMap<>();
-                    functionMap.put("name", tool.getName());
-                    functionMap.put("description", tool.getDescription());
-                    functionMap.put("parameters", tool.toParams());
-                    Map<String, Object> toolMap = new HashMap<>();
-                    toolMap.put("type", "function");
-                    toolMap.put("function", functionMap);
-                    formattedTools.add(toolMap);
-                }
-                // mcp tool
-                for (McpToolInfo tool : tools.getMcpToolMap().values()) {
-                    Map<String, Object> parameters = JSON.parseObject(tool.getParameters(), new TypeReference<Map<String, Object>>() {});
-                    Map<String, Object> functionMap = new HashMap<>();
-                    functionMap.put("name", tool.getName());
-                    functionMap.put("description", tool.getDesc());
-                    functionMap.put("parameters", parameters);
-                    Map<String, Object> toolMap = new HashMap<>();
-                    toolMap.put("type", "function");
-                    toolMap.put("function", functionMap);
-                    formattedTools.add(toolMap);
-                }
-
-                if (model.contains("claude")) {
-                    formattedTools = gptToClaudeTool(formattedTools);
-                }
-            }
+            // tools，同一工具集合与模型方言只生成一次
+            ToolSchema toolSchema = getToolSchema(tools);
 
             // 格式化消息
-            List<Map<String, Object>> formattedMessages = new ArrayList<>();
+            List<Object> formattedMessages = new ArrayList<>();
             if (Objects.nonNull(systemMsgs)) {
                 if ("struct_parse".equals(functionCallType)) {
-                    systemMsgs.setContent(systemMsgs.getContent() + "\n" + stringBuilder);
+                    systemMsgs.setContent(systemMsgs.getContent() + "\n" + toolSchema.getPrompt());
                 }
                 if (model.contains("claude")) {
                     params.put("system", systemMsgs.getContent());
                 } else {
-                    formattedMessages.addAll(formatMessages(List.of(systemMsgs), model.contains("claude")));
+                    formattedMessages.addAll(serializeMessages(List.of(systemMsgs), model.contains("claude")));
                 }
             }
-            formattedMessages.addAll(formatMessages(messages, model.contains("claude")));
+            formattedMessages.addAll(serializeMessages(messages, model.contains("claude")));
+            int promptTokens = countPromptTokens(messages, Objects.nonNull(systemMsgs) ? tokenCounter.countMessage(systemMsgs) : 0);
 
             params.put("model", model);
             if (StringUtils.isNotEmpty(llmErp)) {
@@ -452,96 +655,128 @@ public class LLM {
             params.put("messages", formattedMessages);
 
             if (!"struct_parse".equals(functionCallType)) {
-                params.put("tools", formattedTools);
+                params.put("tools", toolSchema.getTools());
                 params.put("tool_choice", toolChoice.getValue());
             }
 
             // 添加模型特定参数
             params.put("max_tokens", maxTokens);
-            params.put("temperature", temperature != null ? temperature : this.temperature);
+            double requestTemperature = temperature != null ? temperature : this.temperature;
+            params.put("temperature", requestTemperature);
             if (Objects.nonNull(extParams)) {
                 params.putAll(extParams);
             }
 
-            log.info("{} call llm request {}", context.getRequestId(), JSONObject.toJSONString(params));
-            if (!stream) {
-                params.put("stream", false);
-                // 调用 API
-                CompletableFuture<String> future = callOpenAI(params, timeout);
-                return future.thenApply(responseJson -> {
-                    try {
-                        // 解析响应
-                        log.info("{} call llm response {}", context.getRequestId(), responseJson);
-                        JsonNode jsonResponse = objectMapper.readTree(responseJson);
-                        JsonNode choices = jsonResponse.get("choices");
-
-                        if (choices == null || choices.isEmpty() || choices.get(0).get("message") == null) {
-                            log.error("{} Invalid response: {}", context.getRequestId(), responseJson);
-                            throw new IllegalArgumentException("Invalid or empty response from LLM");
+            log.info("{} call llm request model={} messages={} stream={}", context.getRequestId(), model,
+                    formattedMessages.size(), stream);
+            if (logRequestBody()) {
+                log.info("{} call llm request {}", context.getRequestId(), JSONObject.toJSONString(params));
+            }
+            if (cacheable) {
+                LLMResponseCache cache = LLMResponseCache.getInstance();
+                if (cache.accepts(requestTemperature)) {
+                    // 未实际发起请求（命中或等待同一请求）时，由这里补发工具调用回调
+                    AtomicBoolean requested = new AtomicBoolean();
+                    return cache.get(context.getRequestId(), LLMResponseCache.key(params), () -> {
+                        requested.set(true);
+                        return requestTool(context, params, stream, timeout, promptTokens, startTime, toolCallListener, null)
+                                .thenApply(JSON::toJSONString);
+                    }).thenApply(json -> {
+                        ToolCallResponse response = JSON.parseObject(json, ToolCallResponse.class);
+                        if (!requested.get() && Objects.nonNull(toolCallListener) && Objects.nonNull(response.getToolCalls())) {
+                            response.getToolCalls().forEach(toolCallListener);
                         }
+                        return response;
+                    });
+                }
+            }
+            return requestTool(context, params, stream, timeout, promptTokens, startTime, toolCallListener,
+                    context.getCancellationToken());
+        } catch (Exception e) {
+            log.error("{} Unexpected error in askTool: {}", context.getRequestId(), e.getMessage(), e);
+            CompletableFuture<ToolCallResponse> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
 
-                        // 提取响应内容
-                        JsonNode message = choices.get(0).get("message");
-                        String content = message.has("content") && !"null".equals(message.get("content").asText()) ? message.get("content").asText() : null;
+    private CompletableFuture<ToolCallResponse> requestTool(AgentContext context, Map<String, Object> params, boolean stream,
+                                                            int timeout, int promptTokens, long startTime,
+                                                            Consumer<ToolCall> toolCallListener,
+                                                            CancellationToken cancellationToken) {
+        boolean incremental = Objects.nonNull(toolCallListener) && !"struct_parse".equals(functionCallType) && !model.contains("claude");
+        if (!stream && !incremental) {
+            params.put("stream", false);
+            // 调用 API
+            CompletableFuture<String> future = callOpenAI(context.getRequestId(), params, timeout, promptTokens, cancellationToken);
+            return future.thenApply(responseJson -> {
+                try {
+                    // 解析响应
+                    log.info("{} call llm response {}", context.getRequestId(), responseJson);
+                    JsonNode jsonResponse = objectMapper.readTree(responseJson);
+                    JsonNode choices = jsonResponse.get("choices");
+
+                    if (choices == null || choices.isEmpty() || choices.get(0).get("message") == null) {
+                        log.error("{} Invalid response: {}", context.getRequestId(), responseJson);
+                        throw new IllegalArgumentException("Invalid or empty response from LLM");
+                    }
 
-                        // 提取工具调用
-                        List<ToolCall> toolCalls = new ArrayList<>();
-                        if ("struct_parse".equals(functionCallType)) {
-                            // 匹配方式: 直接匹配 ```json ... ``` 代码块
-                            String pattern = "```json\\s*([\\s\\S]*?)\\s*```";
-                            List<String> matches = findMatches(content, pattern);
-                            if (!matches.isEmpty()) {
-                                for (String match : matches) {
-                                    ToolCall oneToolCall = parseToolCall(context, match);
-                                    if (Objects.nonNull(oneToolCall)) {
-                                        toolCalls.add(oneToolCall);
-                                    }
+                    // 提取响应内容
+                    JsonNode message = choices.get(0).get("message");
+                    String content = message.has("content") && !"null".equals(message.get("content").asText()) ? message.get("content").asText() : null;
+
+                    // 提取工具调用
+                    List<ToolCall> toolCalls = new ArrayList<>();
+                    if ("struct_parse".equals(functionCallType)) {
+                        // 匹配方式: 直接匹配 ```json ... ``` 代码块
+                        String pattern = "```json\\s*([\\s\\S]*?)\\s*```";
+                        List<String> matches = findMatches(content, pattern);
+                        if (!matches.isEmpty()) {
+                            for (String match : matches) {
+                                ToolCall oneToolCall = parseToolCall(context, match);
+                                if (Objects.nonNull(oneToolCall)) {
+                                    toolCalls.add(oneToolCall);
                                 }
                             }
-                            int stopPos = content.indexOf("```json");
-                            content = content.substring(0, stopPos > 0 ? stopPos : content.length());
-                        } else { // function call
-                            if (message.has("tool_calls")) {
-                                JsonNode toolCallsNode = message.get("tool_calls");
-                                for (JsonNode toolCall : toolCallsNode) {
-                                    String id = toolCall.get("id").asText();
-                                    String type = toolCall.get("type").asText();
-
-                                    // 提取函数信息
-                                    JsonNode functionNode = toolCall.get("function");
-                                    String name = functionNode.get("name").asText();
-                                    String arguments = functionNode.get("arguments").asText();
-                                    toolCalls.add(new ToolCall(id, type, new ToolCall.Function(name, arguments)));
-                                }
+                        }
+                        int stopPos = content.indexOf("```json");
+                        content = content.substring(0, stopPos > 0 ? stopPos : content.length());
+                    } else { // function call
+                        if (message.has("tool_calls")) {
+                            JsonNode toolCallsNode = message.get("tool_calls");
+                            for (JsonNode toolCall : toolCallsNode) {
+                                String id = toolCall.get("id").asText();
+                                String type = toolCall.get("type").asText();
+
+                                // 提取函数信息
+                                JsonNode functionNode = toolCall.get("function");
+                                String name = functionNode.get("name").asText();
+                                String arguments = functionNode.get("arguments").asText();
+                                toolCalls.add(new ToolCall(id, type, new ToolCall.Function(name, arguments)));
                             }
                         }
-                        // 提取其他信息
-                        String finishReason = choices.get(0).get("finish_reason").asText();
-                        int totalTokens = jsonResponse.get("usage").get("total_tokens").asInt();
-
-                        long endTime = System.currentTimeMillis();
-                        long duration = endTime - startTime;
-                        return new ToolCallResponse(content, toolCalls, finishReason, totalTokens, duration);
-                    } catch (IOException e) {
-                        throw new CompletionException(e);
                     }
-                });
-            } else {
-                // 处理流式请求
-                params.put("stream", true);
-
-                if (model.contains("claude")) {
-                    return callClaudeFunctionCallStream(context, params);
+                    // 提取其他信息
+                    String finishReason = choices.get(0).get("finish_reason").asText();
+                    int totalTokens = jsonResponse.get("usage").get("total_tokens").asInt();
+
+                    long endTime = System.currentTimeMillis();
+                    long duration = endTime - startTime;
+                    return new ToolCallResponse(content, toolCalls, finishReason, totalTokens, duration);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
                 }
-                // 调用流式 API
-                return callOpenAIFunctionCallStream(context, params);
-            }
+            });
+        } else {
+            // 处理流式请求
+            params.put("stream", true);
 
-        } catch (Exception e) {
-            log.error("{} Unexpected error in askTool: {}", context.getRequestId(), e.getMessage(), e);
-            CompletableFuture<ToolCallResponse> future = new CompletableFuture<>();
-            future.completeExceptionally(e);
-            return future;
+            if (model.contains("claude")) {
+                return callClaudeFunctionCallStream(context, params, promptTokens, cancellationToken);
+            }
+            // 调用流式 API，非流式输出时只解析不推送
+            return callOpenAIFunctionCallStream(context, params, stream, incremental ? toolCallListener : null, promptTokens,
+                    cancellationToken);
         }
     }
 
@@ -549,44 +784,44 @@ public class LLM {
      * 调用 OpenAI API（抽象方法，实际实现需要在子类中提供）
      */
     protected CompletableFuture<String> callOpenAI(Map<String, Object> params) {
-        return callOpenAI(params, 300); // 默认超时时间为 300 秒
+        return callOpenAI(params, LLMClientFactory.DEFAULT_TIMEOUT); // 默认超时时间为 300 秒
     }
 
     /**
      * 调用 OpenAI API（抽象方法，实际实现需要在子类中提供）
      */
     protected CompletableFuture<String> callOpenAI(Map<String, Object> params, int timeout) {
-        CompletableFuture<String> future = new CompletableFuture<>();
-
-        try {
-            OkHttpClient client = new OkHttpClient.Builder()
-                    .connectTimeout(timeout, TimeUnit.SECONDS)
-                    .readTimeout(timeout, TimeUnit.SECONDS)
-                    .writeTimeout(timeout, TimeUnit.SECONDS)
-                    .build();
-
-            String apiEndpoint = baseUrl + interfaceUrl;
-            
-            String requestBodyJson = objectMapper.writeValueAsString(params);
-            log.info("API Request URL: {}", apiEndpoint);
-            log.info("API Request Body: {}", requestBodyJson);
-            log.info("API Request Headers: Authorization=Bearer {}", apiKey.substring(0, 10) + "...");
+        return callOpenAI(params, timeout, 0);
+    }
 
-            RequestBody body = RequestBody.create(
-                    MediaType.parse("application/json"),
-                    requestBodyJson
-            );
+    /**
+     * 调用 OpenAI API
+     *
+     * @param promptTokens 估算的输入 token 数，用于限流
+     */
+    protected CompletableFuture<String> callOpenAI(Map<String, Object> params, int timeout, int promptTokens) {
+        return callOpenAI(model, params, timeout, promptTokens, null);
+    }
 
-            Request.Builder requestBuilder = new Request.Builder()
-                    .url(apiEndpoint)
-                    .post(body);
+    /**
+     * 调用 OpenAI API
+     *
+     * @param requestId         用于端点、重试日志，无请求上下文时为模型名
+     * @param promptTokens      估算的输入 token 数，用于限流
+     * @param cancellationToken 请求取消时中断调用，可为空
+     */
+    protected CompletableFuture<String> callOpenAI(String requestId, Map<String, Object> params, int timeout, int promptTokens,
+                                                   CancellationToken cancellationToken) {
+        CompletableFuture<String> future = new CompletableFuture<>();
 
-            // 添加适当的认证头
-            requestBuilder.addHeader("Authorization", "Bearer " + apiKey);
+        try {
+            if (logRequestBody()) {
+                log.info("API Request Body: {}", objectMapper.writeValueAsString(params));
+            }
 
-            Request request = requestBuilder.build();
+            RequestBody body = new JsonRequestBody(objectMapper, params);
 
-            client.newCall(request).enqueue(new Callback() {
+            endpointPool.enqueue(requestId, body, timeout, promptTokens, false, cancellationToken, new Callback() {
                 @Override
                 public void onFailure(Call call, IOException e) {
                     future.completeExceptionally(e);
@@ -618,32 +853,25 @@ public class LLM {
      * 调用 OpenAI 流式 API（抽象方法，实际实现需要在子类中提供）
      */
     public CompletableFuture<ToolCallResponse> callOpenAIFunctionCallStream(AgentContext context, Map<String, Object> params) {
+        return callOpenAIFunctionCallStream(context, params, true, null, 0, context.getCancellationToken());
+    }
+
+    /**
+     * 调用 OpenAI 流式 API
+     *
+     * @param printContent      是否向前端推送思考内容
+     * @param toolCallListener  工具调用参数完整（index 前进或括号闭合）时回调，可为空
+     * @param promptTokens      估算的输入 token 数，用于限流
+     * @param cancellationToken 请求取消时中断调用，可为空
+     */
+    public CompletableFuture<ToolCallResponse> callOpenAIFunctionCallStream(AgentContext context, Map<String, Object> params,
+                                                                             boolean printContent, Consumer<ToolCall> toolCallListener,
+                                                                             int promptTokens, CancellationToken cancellationToken) {
         CompletableFuture<ToolCallResponse> future = new CompletableFuture<>();
         try {
-            OkHttpClient client = new OkHttpClient.Builder()
-                    .connectTimeout(300, TimeUnit.SECONDS)
-                    .readTimeout(300, TimeUnit.SECONDS)
-                    .writeTimeout(300, TimeUnit.SECONDS)
-                    .build();
-
-            String apiEndpoint = baseUrl + interfaceUrl;
-            RequestBody body = RequestBody.create(
-                    MediaType.parse("application/json"),
-                    objectMapper.writeValueAsString(params)
-            );
-            Request.Builder requestBuilder = new Request.Builder()
-                    .url(apiEndpoint)
-                    .post(body);
-            // 添加适当的认证头
-            requestBuilder.addHeader("Authorization", "Bearer " + apiKey);
-            Request request = requestBuilder.build();
-
-            GenieConfig genieConfig = SpringContextHolder.getApplicationContext().getBean(GenieConfig.class);
-            String[] interval = genieConfig.getMessageInterval().getOrDefault("llm", "1,3").split(",");
-            int firstInterval = "struct_parse".equals(functionCallType) ? Math.max(3, Integer.parseInt(interval[0])) : Integer.parseInt(interval[0]);
-            int sendInterval = Integer.parseInt(interval[1]);
+            RequestBody body = new JsonRequestBody(objectMapper, params);
 
-            client.newCall(request).enqueue(new Callback() {
+            endpointPool.enqueue(context.getRequestId(), body, 0, promptTokens, true, cancellationToken, new Callback() {
                 @Override
                 public void onFailure(Call call, IOException e) {
                     future.completeExceptionally(e);
@@ -661,100 +889,59 @@ public class LLM {
                         }
 
                         String messageId = StringUtil.getUUID();
-                        StringBuilder stringBuilder = new StringBuilder();
+                        StreamCoalescer coalescer = StreamCoalescer.create(context, StreamCoalescer.LLM, text ->
+                                context.getPrinter().send(messageId, context.getStreamMessageType(), text, false));
                         StringBuilder stringBuilderAll = new StringBuilder();
-                        int index = 1;
-                        Map<Integer, OpenAIToolCall> openToolCallsMap = new HashMap<>();
-                        String line;
-                        BufferedReader reader = new BufferedReader(
-                                new InputStreamReader(responseBody.byteStream())
-                        );
-                        while ((line = reader.readLine()) != null) {
-                            if (line.startsWith("data: ")) {
-                                String data = line.substring(6);
-                                if (data.equals("[DONE]")) {
-                                    break;
-                                }
-                                if (isFirstToken) {
-                                    isFirstToken = false;
-                                }
-                                try {
-                                    JsonNode chunk = objectMapper.readTree(data);
-                                    if (chunk.has("choices") && !chunk.get("choices").isEmpty()) {
-                                        for (JsonNode element : chunk.get("choices")) {
-                                            OpenAIChoice choice = objectMapper.convertValue(element, OpenAIChoice.class);
-                                            // content
-                                            if (Objects.nonNull(choice.delta.content)) {
-                                                String content = choice.delta.content;
-                                                // log.info("{} recv content data: >>{}<<", context.getRequestId(), content);
-                                                if (!isContent) { // 忽略json内容
-                                                    stringBuilderAll.append(content);
-                                                    continue;
-                                                }
-                                                stringBuilder.append(content);
-                                                stringBuilderAll.append(content);
-                                                if ("struct_parse".equals(functionCallType)) {
-                                                    if (stringBuilderAll.toString().contains("```json")) {
-                                                        isContent = false;
-                                                    }
-                                                }
-                                                if (index == firstInterval || index % sendInterval == 0) {
-                                                    context.getPrinter().send(messageId, context.getStreamMessageType(), stringBuilder.toString(), false);
-                                                    stringBuilder.setLength(0);
-                                                }
-                                                index++;
-                                            }
-                                            // tool call
-                                            if (Objects.nonNull(choice.delta.tool_calls)) {
-                                                List<OpenAIToolCall> openAIToolCalls = choice.delta.tool_calls;
-                                                // log.info("{} recv tool call data: {}", context.getRequestId(), openAIToolCalls);
-                                                for (OpenAIToolCall toolCall : openAIToolCalls) {
-                                                    OpenAIToolCall currentToolCall = openToolCallsMap.get(toolCall.index);
-                                                    if (Objects.isNull(currentToolCall)) {
-                                                        currentToolCall = new OpenAIToolCall();
-                                                    }
-                                                    // [{"index":0,"id":"call_j74R8JMFWTC4rW5wHJ0TtmNU","type":"function","function":{"name":"planning","arguments":""}}]
-                                                    if (Objects.nonNull(toolCall.id)) {
-                                                        currentToolCall.id = toolCall.id;
-                                                    }
-                                                    if (Objects.nonNull(toolCall.type)) {
-                                                        currentToolCall.type = toolCall.type;
-                                                    }
-                                                    if (Objects.nonNull(toolCall.function)) {
-                                                        if (Objects.nonNull(toolCall.function.name)) {
-                                                            currentToolCall.function = toolCall.function;
-                                                        }
-                                                        if (Objects.nonNull(toolCall.function.arguments)) {
-                                                            currentToolCall.function.arguments += toolCall.function.arguments;
-                                                        }
-                                                    }
-                                                    openToolCallsMap.put(toolCall.index, currentToolCall);
-                                                }
-                                            }
+                        // 已确定可输出的内容长度，struct_parse 模式下不含 json 代码块
+                        int visible = 0;
+                        StreamToolCalls streamToolCalls = new StreamToolCalls(context.getRequestId(), toolCallListener);
+                        SseFrameReader reader = new SseFrameReader(responseBody.source());
+                        LLMStreamParser parser = new LLMStreamParser();
+                        while (reader.next()) {
+                            if (reader.isDone()) {
+                                break;
+                            }
+                            if (isFirstToken) {
+                                isFirstToken = false;
+                            }
+                            try {
+                                LLMStreamParser.StreamChunk chunk = parser.parseOpenAI(reader.buffer(), 0, reader.length());
+                                // content
+                                String content = chunk.getContent();
+                                if (Objects.nonNull(content)) {
+                                    stringBuilderAll.append(content);
+                                    if (isContent) { // json内容之后不再输出
+                                        int fence = "struct_parse".equals(functionCallType) ? stringBuilderAll.indexOf("```json", visible) : -1;
+                                        int end = fence >= 0 ? fence : visibleEnd(stringBuilderAll);
+                                        isContent = fence < 0;
+                                        if (printContent && end > visible) {
+                                            coalescer.append(stringBuilderAll.subSequence(visible, end));
                                         }
+                                        visible = end;
                                     }
-                                } catch (Exception e) {
-                                    log.error("{} process response error", context.getRequestId(), e);
                                 }
+                                // tool call
+                                // [{"index":0,"id":"call_j74R8JMFWTC4rW5wHJ0TtmNU","type":"function","function":{"name":"planning","arguments":""}}]
+                                for (int i = 0; i < chunk.getToolCallCount(); i++) {
+                                    streamToolCalls.merge(chunk.getToolCall(i));
+                                }
+                            } catch (Exception e) {
+                                log.error("{} process response error", context.getRequestId(), e);
                             }
                         }
 
                         String contentAll = stringBuilderAll.toString();
                         if ("struct_parse".equals(functionCallType)) {
-                            int stopPos = stringBuilder.indexOf("```json");
-                            context.getPrinter().send(messageId, context.getStreamMessageType(),
-                                    stringBuilder.substring(0, stopPos >= 0 ? stopPos : stringBuilder.length()),
-                                    false);
-                            stopPos = stringBuilderAll.indexOf("```json");
+                            int stopPos = stringBuilderAll.indexOf("```json", visible);
                             contentAll = stringBuilderAll.substring(0, stopPos >= 0 ? stopPos : stringBuilderAll.length());
+                        }
+                        // 流结束，剩余增量立即发送
+                        if (printContent) {
+                            coalescer.append(contentAll.substring(Math.min(visible, contentAll.length())));
+                            coalescer.close();
                             if (!contentAll.isEmpty()) {
                                 context.getPrinter().send(messageId, context.getStreamMessageType(), contentAll, true);
                             }
-                        } else { // function_call
-                            if (!contentAll.isEmpty()) {
-                                context.getPrinter().send(messageId, context.getStreamMessageType(), stringBuilder.toString(), false);
-                                context.getPrinter().send(messageId, context.getStreamMessageType(), stringBuilderAll.toString(), true);
-                            }
                         }
 
                         List<ToolCall> toolCalls = new ArrayList<>();
@@ -771,16 +958,7 @@ public class LLM {
                                 }
                             }
                         } else { // function call
-                            for (OpenAIToolCall toolCall : openToolCallsMap.values()) {
-                                toolCalls.add(ToolCall.builder()
-                                        .id(toolCall.id)
-                                        .type(toolCall.type)
-                                        .function(ToolCall.Function.builder()
-                                                .name(toolCall.function.name)
-                                                .arguments(toolCall.function.arguments)
-                                                .build())
-                                        .build());
-                            }
+                            toolCalls.addAll(streamToolCalls.toToolCalls());
                         }
 
                         log.info("{} call llm stream response {} {}", context.getRequestId(), stringBuilderAll, JSON.toJSONString(toolCalls));
@@ -810,32 +988,22 @@ public class LLM {
      * 调用 OpenAI 流式 API（抽象方法，实际实现需要在子类中提供）
      */
     public CompletableFuture<ToolCallResponse> callClaudeFunctionCallStream(AgentContext context, Map<String, Object> params) {
+        return callClaudeFunctionCallStream(context, params, 0, context.getCancellationToken());
+    }
+
+    /**
+     * 调用 Claude 流式 API
+     *
+     * @param promptTokens      估算的输入 token 数，用于限流
+     * @param cancellationToken 请求取消时中断调用，可为空
+     */
+    public CompletableFuture<ToolCallResponse> callClaudeFunctionCallStream(AgentContext context, Map<String, Object> params,
+                                                                            int promptTokens, CancellationToken cancellationToken) {
         CompletableFuture<ToolCallResponse> future = new CompletableFuture<>();
         try {
-            OkHttpClient client = new OkHttpClient.Builder()
-                    .connectTimeout(300, TimeUnit.SECONDS)
-                    .readTimeout(300, TimeUnit.SECONDS)
-                    .writeTimeout(300, TimeUnit.SECONDS)
-                    .build();
+            RequestBody body = new JsonRequestBody(objectMapper, params);
 
-            String apiEndpoint = baseUrl + interfaceUrl;
-            RequestBody body = RequestBody.create(
-                    MediaType.parse("application/json"),
-                    objectMapper.writeValueAsString(params)
-            );
-            Request.Builder requestBuilder = new Request.Builder()
-                    .url(apiEndpoint)
-                    .post(body);
-            // 添加适当的认证头
-            requestBuilder.addHeader("Authorization", "Bearer " + apiKey);
-            Request request = requestBuilder.build();
-
-            GenieConfig genieConfig = SpringContextHolder.getApplicationContext().getBean(GenieConfig.class);
-            String[] interval = genieConfig.getMessageInterval().getOrDefault("llm", "1,3").split(",");
-            int firstInterval = "struct_parse".equals(functionCallType) ? Math.max(3, Integer.parseInt(interval[0])) : Integer.parseInt(interval[0]);
-            int sendInterval = Integer.parseInt(interval[1]);
-
-            client.newCall(request).enqueue(new Callback() {
+            endpointPool.enqueue(context.getRequestId(), body, 0, promptTokens, true, cancellationToken, new Callback() {
                 @Override
                 public void onFailure(Call call, IOException e) {
                     future.completeExceptionally(e);
@@ -853,90 +1021,68 @@ public class LLM {
                         }
 
                         String messageId = StringUtil.getUUID();
-                        StringBuilder stringBuilder = new StringBuilder();
+                        StreamCoalescer coalescer = StreamCoalescer.create(context, StreamCoalescer.LLM, text ->
+                                context.getPrinter().send(messageId, context.getStreamMessageType(), text, false));
                         StringBuilder stringBuilderAll = new StringBuilder();
                         StringBuilder stringBuilderTool = new StringBuilder();
+                        // 已确定可输出的内容长度，struct_parse 模式下不含 json 代码块
+                        int visible = 0;
 
-                        Integer index = 1;
-                        Map<Integer, OpenAIToolCall> openToolCallsMap = new HashMap<>();
-                        String line;
-                        BufferedReader reader = new BufferedReader(
-                                new InputStreamReader(responseBody.byteStream())
-                        );
+                        SseFrameReader reader = new SseFrameReader(responseBody.source());
+                        LLMStreamParser parser = new LLMStreamParser();
                         String id = "";
-                        while ((line = reader.readLine()) != null) {
-                            if (line.startsWith("data: ")) {
-                                String data = line.substring(6);
-                                if (data.equals("[DONE]")) {
-                                    break;
+                        while (reader.next()) {
+                            if (reader.isDone()) {
+                                break;
+                            }
+
+                            try {
+                                LLMStreamParser.StreamChunk chunk = parser.parseClaude(reader.buffer(), 0, reader.length());
+                                if (!chunk.isHasDelta()) {
+                                    continue;
                                 }
 
-                                try {
-                                    // log.info("{} recv data: >>{}<<", context.getRequestId(), data);
-                                    JsonNode chunk = objectMapper.readTree(data);
-                                    ClaudeResponse claudeResponse = objectMapper.convertValue(chunk, ClaudeResponse.class);
+                                if (isFirstToken) {
+                                    isFirstToken = false;
+                                }
 
-                                    if (Objects.isNull(claudeResponse.delta)) {
+                                // content
+                                if ("text_delta".equals(chunk.getDeltaType())) {
+                                    String content = chunk.getContent();
+                                    stringBuilderAll.append(content);
+                                    if (!isContent) { // 忽略json内容
                                         continue;
                                     }
-
-                                    if (isFirstToken) {
-                                        isFirstToken = false;
-                                    }
-
-                                    // content
-                                    if ("text_delta".equals(claudeResponse.delta.type)) {
-                                        String content = claudeResponse.delta.text;
-
-                                        if (!isContent) { // 忽略json内容
-                                            stringBuilderAll.append(content);
-                                            continue;
-                                        }
-                                        // log.info("{} recv content data: >>{}<<", context.getRequestId(), content);
-                                        stringBuilder.append(content);
-                                        stringBuilderAll.append(content);
-                                        if ("struct_parse".equals(functionCallType)) {
-                                            if (stringBuilderAll.toString().contains("```json")) {
-                                                isContent = false;
-                                            }
-                                        }
-                                        if (index == firstInterval || index % sendInterval == 0) {
-                                            context.getPrinter().send(messageId, context.getStreamMessageType(), stringBuilder.toString(), false);
-                                            stringBuilder.setLength(0);
-                                        }
-                                        index++;
-                                    }
-                                    // tool call
-                                    if ("input_json_delta".equals(claudeResponse.delta.type)) {
-                                        String content = claudeResponse.delta.partial_json;
-                                        // log.info("{} recv tool call data: >>{}<<", context.getRequestId(), content);
-                                        stringBuilderTool.append(content);
+                                    int fence = "struct_parse".equals(functionCallType) ? stringBuilderAll.indexOf("```json", visible) : -1;
+                                    int end = fence >= 0 ? fence : visibleEnd(stringBuilderAll);
+                                    isContent = fence < 0;
+                                    if (end > visible) {
+                                        coalescer.append(stringBuilderAll.subSequence(visible, end));
                                     }
-                                    // id
-                                    id = claudeResponse.id;
-
-                                } catch (Exception e) {
-                                    log.error("{} process response error", context.getRequestId(), e);
+                                    visible = end;
+                                }
+                                // tool call
+                                if ("input_json_delta".equals(chunk.getDeltaType())) {
+                                    stringBuilderTool.append(chunk.getPartialJson());
                                 }
+                                // id
+                                id = chunk.getId();
+
+                            } catch (Exception e) {
+                                log.error("{} process response error", context.getRequestId(), e);
                             }
                         }
 
                         String contentAll = stringBuilderAll.toString();
                         if ("struct_parse".equals(functionCallType)) {
-                            int stopPos = stringBuilder.indexOf("```json");
-                            context.getPrinter().send(messageId, context.getStreamMessageType(),
-                                    stringBuilder.substring(0, stopPos >= 0 ? stopPos : stringBuilder.length()),
-                                    false);
-                            stopPos = stringBuilderAll.indexOf("```json");
+                            int stopPos = stringBuilderAll.indexOf("```json", visible);
                             contentAll = stringBuilderAll.substring(0, stopPos >= 0 ? stopPos : stringBuilderAll.length());
-                            if (!contentAll.isEmpty()) {
-                                context.getPrinter().send(messageId, context.getStreamMessageType(), contentAll, true);
-                            }
-                        } else { // function call
-                            if (!contentAll.isEmpty()) {
-                                context.getPrinter().send(messageId, context.getStreamMessageType(), stringBuilder.toString(), false);
-                                context.getPrinter().send(messageId, context.getStreamMessageType(), stringBuilderAll.toString(), true);
-                            }
+                        }
+                        // 流结束，剩余增量立即发送
+                        coalescer.append(contentAll.substring(Math.min(visible, contentAll.length())));
+                        coalescer.close();
+                        if (!contentAll.isEmpty()) {
+                            context.getPrinter().send(messageId, context.getStreamMessageType(), contentAll, true);
                         }
                         List<ToolCall> toolCalls = new ArrayList<>();
                         if ("struct_parse".equals(functionCallType)) {
@@ -954,23 +1100,15 @@ public class LLM {
                         } else { // function_call
                             JsonNode arguments = objectMapper.readTree(stringBuilderTool.toString());
                             if (!stringBuilderTool.toString().isEmpty() && arguments.hasNonNull("function_name")) {
-                                OpenAIToolCall currentToolCall = new OpenAIToolCall();
-                                currentToolCall.id = id;
-                                currentToolCall.type = "function";
-                                currentToolCall.function = new OpenAIFunction();
-                                currentToolCall.function.name = arguments.get("function_name").asText();
-                                currentToolCall.function.arguments = stringBuilderTool.toString();
-                                openToolCallsMap.put(0, currentToolCall); // claude only call one function
-                                for (OpenAIToolCall toolCall : openToolCallsMap.values()) {
-                                    toolCalls.add(ToolCall.builder()
-                                            .id(toolCall.id)
-                                            .type(toolCall.type)
-                                            .function(ToolCall.Function.builder()
-                                                    .name(toolCall.function.name)
-                                                    .arguments(toolCall.function.arguments)
-                                                    .build())
-                                            .build());
-                                }
+                                // claude only call one function
+                                toolCalls.add(ToolCall.builder()
+                                        .id(id)
+                                        .type("function")
+                                        .function(ToolCall.Function.builder()
+                                                .name(arguments.get("function_name").asText())
+                                                .arguments(stringBuilderTool.toString())
+                                                .build())
+                                        .build());
                             }
                         }
 
@@ -1000,39 +1138,30 @@ public class LLM {
      * 调用 OpenAI 流式 API（抽象方法，实际实现需要在子类中提供）
      */
     protected CompletableFuture<String> callOpenAIStream(Map<String, Object> params) {
+        return callOpenAIStream(model, params, 0, null);
+    }
+
+    /**
+     * 调用 OpenAI 流式 API
+     *
+     * @param requestId         用于端点、重试日志，无请求上下文时为模型名
+     * @param promptTokens      估算的输入 token 数，用于限流
+     * @param cancellationToken 请求取消时中断调用，可为空
+     */
+    protected CompletableFuture<String> callOpenAIStream(String requestId, Map<String, Object> params, int promptTokens,
+                                                         CancellationToken cancellationToken) {
         // 这里是一个简化的流式请求实现示例
         CompletableFuture<String> future = new CompletableFuture<>();
         StringBuilder collectedMessages = new StringBuilder();
 
         try {
-            OkHttpClient client = new OkHttpClient.Builder()
-                    .connectTimeout(300, TimeUnit.SECONDS)
-                    .readTimeout(300, TimeUnit.SECONDS)
-                    .writeTimeout(300, TimeUnit.SECONDS)
-                    .build();
-
-            String apiEndpoint = baseUrl + interfaceUrl;
-            
-            String requestBodyJson = objectMapper.writeValueAsString(params);
-            log.info("API Request URL: {}", apiEndpoint);
-            log.info("API Request Body: {}", requestBodyJson);
-            log.info("API Request Headers: Authorization=Bearer {}", apiKey.substring(0, 10) + "...");
-
-            RequestBody body = RequestBody.create(
-                    MediaType.parse("application/json"),
-                    requestBodyJson
-            );
-
-            Request.Builder requestBuilder = new Request.Builder()
-                    .url(apiEndpoint)
-                    .post(body);
-
-            // 添加适当的认证头
-            requestBuilder.addHeader("Authorization", "Bearer " + apiKey);
+            if (logRequestBody()) {
+                log.info("API Request Body: {}", objectMapper.writeValueAsString(params));
+            }
 
-            Request request = requestBuilder.build();
+            RequestBody body = new JsonRequestBody(objectMapper, params);
 
-            client.newCall(request).enqueue(new Callback() {
+            endpointPool.enqueue(requestId, body, 0, promptTokens, true, cancellationToken, new Callback() {
                 @Override
                 public void onFailure(Call call, IOException e) {
                     future.completeExceptionally(e);
@@ -1049,32 +1178,21 @@ public class LLM {
                         }
 
                         if (responseBody != null) {
-                            String line;
-
-                            BufferedReader reader = new BufferedReader(
-                                    new InputStreamReader(responseBody.byteStream())
-                            );
-
-                            while ((line = reader.readLine()) != null) {
-                                if (line.startsWith("data: ")) {
-                                    String data = line.substring(6);
-                                    if (data.equals("[DONE]")) {
-                                        break;
-                                    }
+                            SseFrameReader reader = new SseFrameReader(responseBody.source());
+                            LLMStreamParser parser = new LLMStreamParser();
+                            while (reader.next()) {
+                                if (reader.isDone()) {
+                                    break;
+                                }
 
-                                    try {
-                                        JsonNode chunk = objectMapper.readTree(data);
-                                        if (chunk.has("choices") && !chunk.get("choices").isEmpty()) {
-                                            JsonNode choice = chunk.get("choices").get(0);
-                                            if (choice.has("delta") && choice.get("delta").has("content")) {
-                                                String content = choice.get("delta").get("content").asText();
-                                                collectedMessages.append(content);
-                                                log.info("recv data: {}", content);
-                                            }
-                                        }
-                                    } catch (Exception e) {
-                                        // 忽略非 JSON 数据
+                                try {
+                                    String content = parser.parseOpenAI(reader.buffer(), 0, reader.length()).getContent();
+                                    if (Objects.nonNull(content)) {
+                                        collectedMessages.append(content);
+                                        log.info("recv data: {}", content);
                                     }
+                                } catch (Exception e) {
+                                    // 忽略非 JSON 数据
                                 }
                             }
 
@@ -1103,6 +1221,22 @@ public class LLM {
     }
 
 
+    /**
+     * 可输出内容的结束位置：struct_parse 模式下末尾可能是 ```json 的前半部分，暂不输出
+     */
+    private int visibleEnd(StringBuilder content) {
+        if (!"struct_parse".equals(functionCallType)) {
+            return content.length();
+        }
+        String fence = "```json";
+        for (int keep = Math.min(fence.length() - 1, content.length()); keep > 0; keep--) {
+            if (content.indexOf(fence.substring(0, keep), content.length() - keep) >= 0) {
+                return content.length() - keep;
+            }
+        }
+        return content.length();
+    }
+
     /**
      * 查找匹配的工具调用
      */
@@ -1152,53 +1286,14 @@ public class LLM {
         private long duration;
     }
 
-    @Data
-    @JsonIgnoreProperties(ignoreUnknown = true)
-    public static class OpenAIChoice {
-        private Integer index;
-        private OpenAIDelta delta;
-        private Object logprobs;
-        private String finish_reason;
-    }
-
-    @Data
-    @JsonIgnoreProperties(ignoreUnknown = true)
-    public static class OpenAIDelta {
-        private String content;
-        private List<OpenAIToolCall> tool_calls;
-    }
-
-    @Data
-    @JsonIgnoreProperties(ignoreUnknown = true)
-    public static class OpenAIToolCall {
-        private Integer index;
-        private String id;
-        private String type;
-        private OpenAIFunction function;
-    }
-
-    @Data
-    @JsonIgnoreProperties(ignoreUnknown = true)
-    public static class OpenAIFunction {
-        private String name;
-        private String arguments;
-    }
-
-    @Data
-    @JsonIgnoreProperties(ignoreUnknown = true)
-    public static class ClaudeResponse {
-        private ClaudeDelta delta;
-        private String arguments;
-        private String id;
-    }
-
-    @Data
-    @JsonIgnoreProperties(ignoreUnknown = true)
-    public static class ClaudeDelta {
-        private String text;
-        private String partial_json;
-        private String type;
+    /**
+     * 预生成的工具定义：struct_parse 模式为拼入 system 的提示词，function_call 模式为序列化后的 tools
+     */
+    @Getter
+    @AllArgsConstructor
+    private static class ToolSchema {
+        private final String prompt;
+        private final RawJson tools;
     }
 
-
 }
\ No newline at end of file
@@ -0,0 +1,86 @@
+package com.jd.genie.agent.llm;
+
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LLM HTTP 客户端工厂
+ * 按 baseUrl 维护共享的 OkHttpClient，同一端点的所有调用复用连接池与调度器
+ */
+@Slf4j
+public class LLMClientFactory {
+    public static final int DEFAULT_TIMEOUT = 300;
+
+    // 流式调用会长时间占用连接，默认并发上限需要足够大
+    private static final int DEFAULT_MAX_REQUESTS = 512;
+    private static final int DEFAULT_MAX_REQUESTS_PER_HOST = 256;
+    private static final int DEFAULT_MAX_IDLE_CONNECTIONS = 32;
+    private static final int DEFAULT_KEEP_ALIVE_SECONDS = 300;
+
+    private static final Map<String, OkHttpClient> clients = new ConcurrentHashMap<>();
+
+    private LLMClientFactory() {
+    }
+
+    /**
+     * 获取端点共享的客户端，同一 baseUrl 以首次注册的配置为准
+     */
+    public static OkHttpClient getClient(LLMSettings settings) {
+        String baseUrl = Objects.nonNull(settings.getBaseUrl()) ? settings.getBaseUrl() : "";
+        return clients.computeIfAbsent(baseUrl, key -> createClient(key, settings));
+    }
+
+    /**
+     * 按超时时间派生客户端，派生客户端与原客户端共享连接池和调度器
+     */
+    public static OkHttpClient withTimeout(OkHttpClient client, int timeout) {
+        if (client.readTimeoutMillis() == TimeUnit.SECONDS.toMillis(timeout)) {
+            return client;
+        }
+        return client.newBuilder()
+                .connectTimeout(timeout, TimeUnit.SECONDS)
+                .readTimeout(timeout, TimeUnit.SECONDS)
+                .writeTimeout(timeout, TimeUnit.SECONDS)
+                .build();
+    }
+
+    private static OkHttpClient createClient(String baseUrl, LLMSettings settings) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(positiveOrDefault(settings.getMaxRequests(), DEFAULT_MAX_REQUESTS));
+        dispatcher.setMaxRequestsPerHost(positiveOrDefault(settings.getMaxRequestsPerHost(), DEFAULT_MAX_REQUESTS_PER_HOST));
+
+        ConnectionPool connectionPool = new ConnectionPool(
+                positiveOrDefault(settings.getMaxIdleConnections(), DEFAULT_MAX_IDLE_CONNECTIONS),
+                positiveOrDefault(settings.getKeepAliveSeconds(), DEFAULT_KEEP_ALIVE_SECONDS),
+                TimeUnit.SECONDS);
+
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(connectionPool)
+                .retryOnConnectionFailure(true)
+                .connectTimeout(DEFAULT_TIMEOUT, TimeUnit.SECONDS)
+                .readTimeout(DEFAULT_TIMEOUT, TimeUnit.SECONDS)
+                .writeTimeout(DEFAULT_TIMEOUT, TimeUnit.SECONDS);
+        // TLS 端点默认通过 ALPN 协商 HTTP/2，显式关闭时仅使用 HTTP/1.1
+        if (Boolean.FALSE.equals(settings.getHttp2())) {
+            builder.protocols(Collections.singletonList(Protocol.HTTP_1_1));
+        }
+
+        log.info("create llm http client for {} maxRequests={} maxRequestsPerHost={}",
+                baseUrl, dispatcher.getMaxRequests(), dispatcher.getMaxRequestsPerHost());
+        return builder.build();
+    }
+
+    private static int positiveOrDefault(Integer value, int defaultValue) {
+        return Objects.nonNull(value) && value > 0 ? value : defaultValue;
+    }
+}
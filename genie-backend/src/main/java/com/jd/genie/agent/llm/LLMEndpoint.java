@@ -0,0 +1,30 @@
+package com.jd.genie.agent.llm;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * LLM 端点配置，同一逻辑模型可配置多个副本
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LLMEndpoint {
+    /**
+     * 基础 URL
+     */
+    private String baseUrl;
+
+    /**
+     * API 密钥，为空时使用模型配置的 apiKey
+     */
+    private String apiKey;
+
+    /**
+     * 接口 URL，为空时使用模型配置的 interfaceUrl
+     */
+    private String interfaceUrl;
+}
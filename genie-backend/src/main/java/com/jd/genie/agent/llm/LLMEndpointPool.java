@@ -0,0 +1,543 @@
+package com.jd.genie.agent.llm;
+
+import com.jd.genie.agent.util.CancellationToken;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * 逻辑模型的多端点调度，按 model + 端点列表共享
+ * 1. 健康检查：连续失败 3 次熔断 30 秒，到期后放行一次探测，成功即恢复
+ * 2. 负载均衡：在健康且本次请求未尝试过的端点中随机取两个，选 延迟EWMA × (在途数+1) 较小者
+ * 3. 重试：网络异常、408/429/5xx 在交给业务回调之前判定，换端点并按指数退避(全抖动)重试，流式响应尚未输出，同样安全
+ * 4. 对冲(hedge)：超过近期 p95 响应头延迟仍未返回时向另一端点再发一次，先返回响应头者生效，其余取消；
+ *    默认只对冲非流式请求，流式请求需另外开启 hedgeStream
+ * 5. 取消：请求取消时中断全部在途尝试（含正在读取的流式响应），不再重试
+ * 每个端点仍各自连接池与限流
+ */
+@Slf4j
+public class LLMEndpointPool {
+    private static final String DEFAULT_INTERFACE_URL = "/v1/chat/completions";
+    private static final int DEFAULT_MAX_RETRIES = 2;
+    private static final int FAILURE_THRESHOLD = 3;
+    private static final long OPEN_DURATION_MS = 30_000;
+    private static final long BACKOFF_BASE_MS = 500;
+    private static final long BACKOFF_MAX_MS = 8_000;
+    // 对冲延迟至少需要的样本数，样本不足时不对冲
+    private static final int HEDGE_MIN_SAMPLES = 20;
+    private static final double EWMA_ALPHA = 0.2;
+
+    private static final Map<String, LLMEndpointPool> pools = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            new BasicThreadFactory.Builder().namingPattern("genie-llm-retry-%d").daemon(true).build());
+
+    private final String name;
+    private final List<Endpoint> endpoints = new ArrayList<>();
+    private final int maxRetries;
+    private final boolean hedge;
+    private final boolean hedgeStream;
+    // 流式与非流式的响应头延迟差异很大，分开统计
+    private final LatencyWindow streamLatency = new LatencyWindow(128);
+    private final LatencyWindow blockingLatency = new LatencyWindow(128);
+
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder hedged = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+
+    private LLMEndpointPool(String name, LLMSettings settings) {
+        this.name = name;
+        this.maxRetries = Objects.nonNull(settings.getMaxRetries()) ? Math.max(0, settings.getMaxRetries()) : DEFAULT_MAX_RETRIES;
+        String interfaceUrl = StringUtils.isNotEmpty(settings.getInterfaceUrl()) ? settings.getInterfaceUrl() : DEFAULT_INTERFACE_URL;
+        if (Objects.isNull(settings.getEndpoints()) || settings.getEndpoints().isEmpty()) {
+            endpoints.add(new Endpoint(settings, interfaceUrl));
+        } else {
+            for (LLMEndpoint endpoint : settings.getEndpoints()) {
+                LLMSettings endpointSettings = settings.toBuilder()
+                        .baseUrl(endpoint.getBaseUrl())
+                        .apiKey(StringUtils.isNotEmpty(endpoint.getApiKey()) ? endpoint.getApiKey() : settings.getApiKey())
+                        .endpoints(null)
+                        .build();
+                endpoints.add(new Endpoint(endpointSettings,
+                        StringUtils.isNotEmpty(endpoint.getInterfaceUrl()) ? endpoint.getInterfaceUrl() : interfaceUrl));
+            }
+        }
+        this.hedge = Boolean.TRUE.equals(settings.getHedge()) && endpoints.size() > 1;
+        this.hedgeStream = hedge && Boolean.TRUE.equals(settings.getHedgeStream());
+        if (endpoints.size() > 1) {
+            log.info("llm endpoint pool {} endpoints={} maxRetries={} hedge={} hedgeStream={}", name, endpoints.size(),
+                    maxRetries, hedge, hedgeStream);
+        }
+    }
+
+    /**
+     * 获取逻辑模型的端点池，同一 model + 端点列表以首次注册的配置为准
+     */
+    public static LLMEndpointPool get(LLMSettings settings) {
+        String urls = Objects.isNull(settings.getEndpoints()) || settings.getEndpoints().isEmpty()
+                ? Objects.toString(settings.getBaseUrl(), "")
+                : settings.getEndpoints().stream().map(LLMEndpoint::getBaseUrl).collect(Collectors.joining(","));
+        String key = Objects.toString(settings.getModel(), "") + "|" + urls;
+        return pools.computeIfAbsent(key, k -> new LLMEndpointPool(k, settings));
+    }
+
+    /**
+     * 端点运行指标
+     */
+    public static Map<String, Map<String, Object>> stats() {
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        for (LLMEndpointPool pool : pools.values()) {
+            stats.put(pool.name, pool.stat());
+        }
+        return stats;
+    }
+
+    /**
+     * 选择端点发起调用，失败时换端点重试，开启对冲时慢请求会再发一次
+     * callback 只会被调用一次：收到最终生效的响应，或重试耗尽后的失败
+     *
+     * @param requestId    请求 id，仅用于日志
+     * @param body         请求体，需可重复写出
+     * @param timeout      超时秒数，小于等于 0 时使用端点默认超时
+     * @param promptTokens 估算的输入 token 数，用于限流
+     * @param stream       是否流式响应，流式与非流式分别统计对冲延迟
+     * @param cancellationToken 请求级取消令牌，可为空
+     */
+    public void enqueue(String requestId, RequestBody body, int timeout, int promptTokens, boolean stream,
+                        CancellationToken cancellationToken, Callback callback) {
+        new Exchange(requestId, body, timeout, promptTokens, stream, callback).start(cancellationToken);
+    }
+
+    private Map<String, Object> stat() {
+        Map<String, Object> stat = new LinkedHashMap<>();
+        stat.put("retried", retried.sum());
+        stat.put("hedged", hedged.sum());
+        stat.put("hedgeWins", hedgeWins.sum());
+        stat.put("streamP95", streamLatency.percentile(0.95));
+        stat.put("blockingP95", blockingLatency.percentile(0.95));
+        Map<String, Object> endpointStats = new LinkedHashMap<>();
+        for (Endpoint endpoint : endpoints) {
+            endpointStats.put(endpoint.url, endpoint.stat());
+        }
+        stat.put("endpoints", endpointStats);
+        return stat;
+    }
+
+    /**
+     * 两选一：优先健康且未尝试过的端点，全部尝试过则放宽到健康端点，全部熔断时选最早恢复的
+     */
+    private Endpoint choose(Set<Endpoint> tried) {
+        if (endpoints.size() == 1) {
+            return endpoints.get(0);
+        }
+        long now = System.currentTimeMillis();
+        List<Endpoint> candidates = new ArrayList<>();
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.isAvailable(now) && !tried.contains(endpoint)) {
+                candidates.add(endpoint);
+            }
+        }
+        if (candidates.isEmpty()) {
+            for (Endpoint endpoint : endpoints) {
+                if (endpoint.isAvailable(now)) {
+                    candidates.add(endpoint);
+                }
+            }
+        }
+        if (candidates.isEmpty()) {
+            Endpoint earliest = endpoints.get(0);
+            for (Endpoint endpoint : endpoints) {
+                if (endpoint.openUntil < earliest.openUntil) {
+                    earliest = endpoint;
+                }
+            }
+            return earliest;
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(candidates.size());
+        int second = random.nextInt(candidates.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        Endpoint a = candidates.get(first);
+        Endpoint b = candidates.get(second);
+        return a.score() <= b.score() ? a : b;
+    }
+
+    private static boolean isRetryable(int code) {
+        return code == 408 || code == 429 || code >= 500;
+    }
+
+    private static long backoff(int retry) {
+        long cap = Math.min(BACKOFF_MAX_MS, BACKOFF_BASE_MS << Math.min(retry, 16));
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    /**
+     * 一次逻辑调用，可能包含多个端点上的尝试
+     */
+    private class Exchange {
+        private final String requestId;
+        private final RequestBody body;
+        private final int timeout;
+        private final int promptTokens;
+        private final boolean stream;
+        private final Callback callback;
+
+        private final Set<Endpoint> tried = new HashSet<>();
+        private final List<Call> calls = new ArrayList<>();
+        private int attempts;
+        private int retries;
+        // 在途及等待退避的尝试数
+        private int outstanding;
+        private boolean done;
+        private CancellationToken.Registration registration;
+        private boolean released;
+
+        private Exchange(String requestId, RequestBody body, int timeout, int promptTokens, boolean stream, Callback callback) {
+            this.requestId = requestId;
+            this.body = body;
+            this.timeout = timeout;
+            this.promptTokens = promptTokens;
+            this.stream = stream;
+            this.callback = callback;
+        }
+
+        private void start(CancellationToken cancellationToken) {
+            synchronized (this) {
+                outstanding++;
+            }
+            attempt(false);
+            if (cancellationToken != null) {
+                CancellationToken.Registration cancelRegistration = cancellationToken.onCancel(this::cancel);
+                boolean finished;
+                synchronized (this) {
+                    finished = released;
+                    if (!finished) {
+                        registration = cancelRegistration;
+                    }
+                }
+                if (finished) {
+                    cancelRegistration.close();
+                }
+            }
+            long delay = 0;
+            if (stream ? hedgeStream : hedge) {
+                delay = (stream ? streamLatency : blockingLatency).hedgeDelay();
+            }
+            if (delay > 0) {
+                scheduler.schedule(this::hedge, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void hedge() {
+            synchronized (this) {
+                // 已完成或已进入重试时不再对冲
+                if (done || attempts != 1 || retries > 0) {
+                    return;
+                }
+                outstanding++;
+            }
+            hedged.increment();
+            log.info("{} llm {} hedge request after p95 latency", requestId, name);
+            attempt(true);
+        }
+
+        private void attempt(boolean hedging) {
+            Endpoint endpoint;
+            Call call;
+            int attempt;
+            synchronized (this) {
+                if (done) {
+                    outstanding--;
+                    return;
+                }
+                endpoint = choose(tried);
+                tried.add(endpoint);
+                attempt = ++attempts;
+                Request request = new Request.Builder()
+                        .url(endpoint.url)
+                        .post(body)
+                        .addHeader("Authorization", "Bearer " + endpoint.apiKey)
+                        .build();
+                OkHttpClient client = timeout > 0 ? LLMClientFactory.withTimeout(endpoint.client, timeout) : endpoint.client;
+                call = client.newCall(request);
+                calls.add(call);
+            }
+            log.info("{} llm request url={} attempt={}", requestId, endpoint.url, attempt);
+            endpoint.inFlight.incrementAndGet();
+            endpoint.limiter.enqueue(call, promptTokens, new AttemptCallback(endpoint, hedging));
+        }
+
+        /**
+         * 尝试失败：还有其他尝试在途时等待其结果，否则退避后换端点重试，重试耗尽时回调失败
+         */
+        private void onAttemptFailed(Call call, IOException e) {
+            long delay;
+            synchronized (this) {
+                outstanding--;
+                if (done || call.isCanceled()) {
+                    return;
+                }
+                if (outstanding > 0) {
+                    return;
+                }
+                if (retries >= maxRetries) {
+                    done = true;
+                    delay = -1;
+                } else {
+                    delay = backoff(retries++);
+                    outstanding++;
+                }
+            }
+            if (delay < 0) {
+                release();
+                callback.onFailure(call, e);
+                return;
+            }
+            retried.increment();
+            log.warn("{} llm {} request failed, retry in {}ms: {}", requestId, name, delay, e.getMessage());
+            scheduler.schedule(() -> attempt(false), delay, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * 可重试的失败在确认仍有重试机会时才吞掉，否则交给业务回调处理错误响应
+         */
+        private synchronized boolean canRetry() {
+            return !done && (outstanding > 1 || retries < maxRetries);
+        }
+
+        /**
+         * 请求取消：中断全部尝试；尚未交给业务回调时以失败结束，已在读取的响应由读取方感知中断
+         */
+        private void cancel() {
+            List<Call> inFlight;
+            boolean notify;
+            synchronized (this) {
+                notify = !done;
+                done = true;
+                inFlight = new ArrayList<>(calls);
+            }
+            log.info("{} llm {} request cancelled, abort {} calls", requestId, name, inFlight.size());
+            for (Call call : inFlight) {
+                call.cancel();
+            }
+            if (notify) {
+                release();
+                callback.onFailure(inFlight.get(inFlight.size() - 1), new IOException("Canceled"));
+            }
+        }
+
+        /**
+         * 交易结束，注销取消回调
+         */
+        private void release() {
+            CancellationToken.Registration cancelRegistration;
+            synchronized (this) {
+                released = true;
+                cancelRegistration = registration;
+                registration = null;
+            }
+            if (cancelRegistration != null) {
+                cancelRegistration.close();
+            }
+        }
+
+        /**
+         * 先返回者生效，取消其余尝试
+         */
+        private boolean win(Call winner) {
+            List<Call> losers = new ArrayList<>();
+            synchronized (this) {
+                outstanding--;
+                if (done) {
+                    return false;
+                }
+                done = true;
+                for (Call call : calls) {
+                    if (call != winner) {
+                        losers.add(call);
+                    }
+                }
+            }
+            for (Call loser : losers) {
+                loser.cancel();
+            }
+            return true;
+        }
+
+        private class AttemptCallback implements Callback {
+            private final Endpoint endpoint;
+            private final boolean hedging;
+            private final long startTime = System.currentTimeMillis();
+
+            private AttemptCallback(Endpoint endpoint, boolean hedging) {
+                this.endpoint = endpoint;
+                this.hedging = hedging;
+            }
+
+            @Override
+            public void onFailure(Call call, IOException e) {
+                endpoint.inFlight.decrementAndGet();
+                // 被取消的尝试不计入端点健康
+                if (!call.isCanceled()) {
+                    endpoint.onFailure();
+                }
+                onAttemptFailed(call, e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                try {
+                    int code = response.code();
+                    if (isRetryable(code)) {
+                        endpoint.onFailure();
+                        if (canRetry()) {
+                            response.close();
+                            onAttemptFailed(call, new IOException("Unexpected response code: " + code + " from " + endpoint.url));
+                            return;
+                        }
+                    } else if (response.isSuccessful()) {
+                        long latency = System.currentTimeMillis() - startTime;
+                        endpoint.onSuccess(latency);
+                        (stream ? streamLatency : blockingLatency).add(latency);
+                    }
+                    if (!win(call)) {
+                        response.close();
+                        return;
+                    }
+                    if (hedging) {
+                        hedgeWins.increment();
+                    }
+                    try {
+                        callback.onResponse(call, response);
+                    } finally {
+                        release();
+                    }
+                } finally {
+                    endpoint.inFlight.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * 单个端点：连接池、限流与健康状态
+     */
+    private static class Endpoint {
+        private final String url;
+        private final String apiKey;
+        private final OkHttpClient client;
+        private final LLMRateLimiter limiter;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile double ewma;
+        private volatile long openUntil;
+        private int consecutiveFailures;
+        private final LongAdder failures = new LongAdder();
+
+        private Endpoint(LLMSettings settings, String interfaceUrl) {
+            this.url = settings.getBaseUrl() + interfaceUrl;
+            this.apiKey = settings.getApiKey();
+            // 同一 baseUrl 共享连接池，同一 baseUrl + model 共享限流
+            this.client = LLMClientFactory.getClient(settings);
+            this.limiter = LLMRateLimiter.get(settings);
+        }
+
+        private boolean isAvailable(long now) {
+            return now >= openUntil;
+        }
+
+        private double score() {
+            return Math.max(ewma, 1) * (inFlight.get() + 1);
+        }
+
+        private synchronized void onSuccess(long latency) {
+            consecutiveFailures = 0;
+            openUntil = 0;
+            ewma = ewma == 0 ? latency : ewma + EWMA_ALPHA * (latency - ewma);
+        }
+
+        private synchronized void onFailure() {
+            failures.increment();
+            if (++consecutiveFailures >= FAILURE_THRESHOLD) {
+                if (System.currentTimeMillis() >= openUntil) {
+                    log.warn("llm endpoint {} unhealthy after {} consecutive failures, open for {}ms", url,
+                            consecutiveFailures, OPEN_DURATION_MS);
+                }
+                openUntil = System.currentTimeMillis() + OPEN_DURATION_MS;
+            }
+        }
+
+        private Map<String, Object> stat() {
+            Map<String, Object> stat = new LinkedHashMap<>();
+            stat.put("healthy", isAvailable(System.currentTimeMillis()));
+            stat.put("inFlight", inFlight.get());
+            stat.put("latency", (long) ewma);
+            stat.put("failures", failures.sum());
+            return stat;
+        }
+    }
+
+    /**
+     * 最近 N 次成功请求的响应头延迟
+     */
+    private static class LatencyWindow {
+        private final long[] samples;
+        private int size;
+        private int next;
+
+        private LatencyWindow(int capacity) {
+            this.samples = new long[capacity];
+        }
+
+        private synchronized void add(long latency) {
+            samples[next] = latency;
+            next = (next + 1) % samples.length;
+            size = Math.min(size + 1, samples.length);
+        }
+
+        private synchronized long percentile(double p) {
+            if (size == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            return sorted[Math.min(size - 1, (int) Math.ceil(p * size) - 1)];
+        }
+
+        private long hedgeDelay() {
+            synchronized (this) {
+                if (size < HEDGE_MIN_SAMPLES) {
+                    return 0;
+                }
+            }
+            return Math.max(1, percentile(0.95));
+        }
+    }
+}
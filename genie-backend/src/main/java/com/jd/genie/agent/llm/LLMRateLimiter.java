@@ -0,0 +1,335 @@
+package com.jd.genie.agent.llm;
+
+import com.jd.genie.agent.util.OkHttpUtil;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Response;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LLM 端点限流器，按 baseUrl + model 共享
+ * 1. 令牌桶：requestsPerSecond 限制请求速率，tokensPerMinute 按 TokenCounter 估算的输入 token 限制吞吐
+ * 2. 自适应并发(AIMD)：429/5xx/网络异常时并发上限减半并遵循 Retry-After；首包延迟接近基线时逐步加一，明显变慢时保持
+ * 等待的调用按到达顺序排队，不占用线程，也不会因限流直接失败；未配置任何限制时直接放行
+ * 限额为单实例配置，多实例共享上游配额时按实例数分摊
+ */
+@Slf4j
+public class LLMRateLimiter {
+    // 首包延迟超过基线的倍数视为上游排队，不再增加并发
+    private static final double LATENCY_TOLERANCE = 2.0;
+    // 两次降低并发的最小间隔，同一批失败只减半一次
+    private static final long DECREASE_INTERVAL_MS = 1000;
+    private static final long MAX_RETRY_AFTER_MS = 60_000;
+
+    private static final Map<String, LLMRateLimiter> limiters = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            new BasicThreadFactory.Builder().namingPattern("genie-llm-limiter-%d").daemon(true).build());
+
+    private final String name;
+    private final TokenBucket requestBucket;
+    private final TokenBucket tokenBucket;
+    private final int maxConcurrency;
+    private final int minConcurrency;
+    private final boolean enabled;
+
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
+    private double limit;
+    private int inFlight;
+    private long baseLatency;
+    private long lastDecrease;
+    private long pausedUntil;
+    private boolean wakeupScheduled;
+
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder overloaded = new LongAdder();
+
+    private LLMRateLimiter(String name, LLMSettings settings) {
+        this.name = name;
+        Double rps = settings.getRequestsPerSecond();
+        Integer tpm = settings.getTokensPerMinute();
+        this.requestBucket = Objects.nonNull(rps) && rps > 0 ? new TokenBucket(Math.max(1, rps), rps / 1000) : null;
+        this.tokenBucket = Objects.nonNull(tpm) && tpm > 0 ? new TokenBucket(tpm, tpm / 60_000.0) : null;
+        this.maxConcurrency = Objects.nonNull(settings.getMaxConcurrency()) ? settings.getMaxConcurrency() : 0;
+        this.minConcurrency = Objects.nonNull(settings.getMinConcurrency()) && settings.getMinConcurrency() > 0
+                ? Math.min(settings.getMinConcurrency(), Math.max(1, maxConcurrency)) : 1;
+        this.limit = maxConcurrency;
+        this.enabled = requestBucket != null || tokenBucket != null || maxConcurrency > 0;
+        if (enabled) {
+            log.info("llm limiter {} requestsPerSecond={} tokensPerMinute={} concurrency={}-{}", name, rps, tpm,
+                    minConcurrency, maxConcurrency);
+        }
+    }
+
+    /**
+     * 获取端点限流器，同一 baseUrl + model 以首次注册的配置为准
+     */
+    public static LLMRateLimiter get(LLMSettings settings) {
+        String key = Objects.toString(settings.getBaseUrl(), "") + "|" + Objects.toString(settings.getModel(), "");
+        return limiters.computeIfAbsent(key, k -> new LLMRateLimiter(k, settings));
+    }
+
+    /**
+     * 限流运行指标
+     */
+    public static Map<String, Map<String, Object>> stats() {
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        for (LLMRateLimiter limiter : limiters.values()) {
+            if (limiter.enabled) {
+                stats.put(limiter.name, limiter.stat());
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * 取得许可后发起调用，callback 返回（流式响应读取完毕）或失败时归还并发名额
+     *
+     * @param tokens 本次请求估算的输入 token 数
+     */
+    public void enqueue(Call call, int tokens, Callback callback) {
+        if (!enabled) {
+            OkHttpUtil.enqueue(call, callback);
+            return;
+        }
+        Waiter waiter = new Waiter(Math.max(0, tokens));
+        synchronized (this) {
+            if (!waiters.isEmpty() || !canDispatch(waiter, System.currentTimeMillis())) {
+                throttled.increment();
+            }
+            waiters.addLast(waiter);
+        }
+        waiter.future.thenAccept(permit -> OkHttpUtil.enqueue(call, new PermitCallback(permit, callback)));
+        dispatch();
+    }
+
+    private synchronized Map<String, Object> stat() {
+        Map<String, Object> stat = new LinkedHashMap<>();
+        stat.put("limit", maxConcurrency > 0 ? (int) limit : -1);
+        stat.put("inFlight", inFlight);
+        stat.put("queued", waiters.size());
+        stat.put("baseLatency", baseLatency);
+        stat.put("throttled", throttled.sum());
+        stat.put("overloaded", overloaded.sum());
+        return stat;
+    }
+
+    private boolean canDispatch(Waiter waiter, long now) {
+        return (maxConcurrency <= 0 || inFlight < (int) limit) && now >= pausedUntil
+                && waitTime(waiter, now) == 0;
+    }
+
+    private long waitTime(Waiter waiter, long now) {
+        long wait = 0;
+        if (requestBucket != null) {
+            wait = requestBucket.waitTime(1, now);
+        }
+        if (tokenBucket != null) {
+            wait = Math.max(wait, tokenBucket.waitTime(waiter.tokens, now));
+        }
+        return wait;
+    }
+
+    /**
+     * 按到达顺序放行队首请求，受令牌桶限制时定时唤醒，受并发限制时等待归还
+     */
+    private void dispatch() {
+        List<Waiter> ready = new ArrayList<>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            long delay = 0;
+            while (!waiters.isEmpty()) {
+                if (maxConcurrency > 0 && inFlight >= (int) limit) {
+                    break;
+                }
+                if (now < pausedUntil) {
+                    delay = pausedUntil - now;
+                    break;
+                }
+                Waiter head = waiters.peekFirst();
+                long wait = waitTime(head, now);
+                if (wait > 0) {
+                    delay = wait;
+                    break;
+                }
+                if (requestBucket != null) {
+                    requestBucket.take(1);
+                }
+                if (tokenBucket != null) {
+                    tokenBucket.take(head.tokens);
+                }
+                waiters.pollFirst();
+                inFlight++;
+                ready.add(head);
+            }
+            if (delay > 0 && !wakeupScheduled) {
+                wakeupScheduled = true;
+                scheduler.schedule(() -> {
+                    synchronized (this) {
+                        wakeupScheduled = false;
+                    }
+                    dispatch();
+                }, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+        for (Waiter waiter : ready) {
+            waiter.future.complete(new Permit(System.currentTimeMillis()));
+        }
+    }
+
+    private void release() {
+        synchronized (this) {
+            inFlight--;
+        }
+        dispatch();
+    }
+
+    /**
+     * 请求成功：首包延迟不超过基线的容忍倍数时加性增加并发
+     */
+    private synchronized void onSuccess(long latency) {
+        // 基线取观测到的最小延迟，并缓慢向当前值靠拢，避免长期停留在偶然的极小值
+        baseLatency = baseLatency == 0 ? latency : Math.min(latency, baseLatency + (latency - baseLatency) / 100);
+        if (maxConcurrency > 0 && latency <= baseLatency * LATENCY_TOLERANCE) {
+            limit = Math.min(maxConcurrency, limit + 1 / Math.max(1, limit));
+        }
+    }
+
+    /**
+     * 上游过载(429/5xx/网络异常)：并发上限乘性减半，并在 Retry-After 期间暂停放行
+     */
+    private synchronized void onOverload(long retryAfterMs) {
+        overloaded.increment();
+        long now = System.currentTimeMillis();
+        if (retryAfterMs > 0) {
+            pausedUntil = Math.max(pausedUntil, now + Math.min(retryAfterMs, MAX_RETRY_AFTER_MS));
+        }
+        if (maxConcurrency > 0 && now - lastDecrease >= DECREASE_INTERVAL_MS) {
+            limit = Math.max(minConcurrency, limit / 2);
+            lastDecrease = now;
+            log.warn("llm limiter {} overloaded, concurrency limit decreased to {}", name, (int) limit);
+        }
+    }
+
+    private static long retryAfter(Response response) {
+        String retryAfter = response.header("Retry-After");
+        if (retryAfter == null) {
+            return 0;
+        }
+        try {
+            return (long) (Double.parseDouble(retryAfter.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            // HTTP-date 格式不处理，仅做并发减半
+            return 0;
+        }
+    }
+
+    private static class Waiter {
+        private final int tokens;
+        private final CompletableFuture<Permit> future = new CompletableFuture<>();
+
+        private Waiter(int tokens) {
+            this.tokens = tokens;
+        }
+    }
+
+    private static class Permit {
+        private final long startTime;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(long startTime) {
+            this.startTime = startTime;
+        }
+    }
+
+    /**
+     * 包装回调：响应头到达时反馈延迟与状态码，回调结束后归还名额
+     */
+    private class PermitCallback implements Callback {
+        private final Permit permit;
+        private final Callback delegate;
+
+        private PermitCallback(Permit permit, Callback delegate) {
+            this.permit = permit;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void onFailure(Call call, IOException e) {
+            if (permit.released.compareAndSet(false, true)) {
+                // 主动取消(对冲落败等)不是上游过载
+                if (!call.isCanceled()) {
+                    onOverload(0);
+                }
+                release();
+            }
+            delegate.onFailure(call, e);
+        }
+
+        @Override
+        public void onResponse(Call call, Response response) throws IOException {
+            int code = response.code();
+            if (code == 429 || code >= 500) {
+                onOverload(retryAfter(response));
+            } else if (response.isSuccessful()) {
+                onSuccess(System.currentTimeMillis() - permit.startTime);
+            }
+            try {
+                delegate.onResponse(call, response);
+            } finally {
+                if (permit.released.compareAndSet(false, true)) {
+                    release();
+                }
+            }
+        }
+    }
+
+    /**
+     * 令牌桶，capacity 为突发上限，rate 为每毫秒补充的令牌数；单次需求超过容量时按容量计
+     */
+    private static class TokenBucket {
+        private final double capacity;
+        private final double rate;
+        private double available;
+        private long lastRefill;
+
+        private TokenBucket(double capacity, double rate) {
+            this.capacity = capacity;
+            this.rate = rate;
+            this.available = capacity;
+            this.lastRefill = System.currentTimeMillis();
+        }
+
+        private long waitTime(double need, long now) {
+            if (now > lastRefill) {
+                available = Math.min(capacity, available + (now - lastRefill) * rate);
+                lastRefill = now;
+            }
+            double required = Math.min(need, capacity);
+            if (available >= required) {
+                return 0;
+            }
+            return (long) Math.ceil((required - available) / rate);
+        }
+
+        private void take(double need) {
+            available -= Math.min(need, capacity);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.jd.genie.agent.llm;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.jd.genie.agent.util.SpringContextHolder;
+import com.jd.genie.config.GenieConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * LLM 响应精确匹配缓存，仅由调用方显式开启，且只缓存低温度（近似确定性）请求
+ * key 为规范化请求（model、messages、tools、temperature 等参数，忽略 stream）的 SHA-256
+ * 1. 内存层：LRU，按条数与 TTL 淘汰
+ * 2. 磁盘层（可选）：配置 disk_dir 后每个 key 一个文件，按修改时间判断 TTL，过期文件读取时删除
+ * 同一 key 并发未命中时只发起一次请求；失败结果不缓存
+ * 配置 autobots.autoagent.llm_cache: {"max_size":"1000","ttl":"3600","max_temperature":"0.1","disk_dir":""}，max_size 为 0 时关闭
+ */
+@Slf4j
+public class LLMResponseCache {
+    private static final int DEFAULT_MAX_SIZE = 1000;
+    private static final long DEFAULT_TTL_SECONDS = 3600;
+    private static final double DEFAULT_MAX_TEMPERATURE = 0.1;
+    private static final ObjectWriter KEY_WRITER = new ObjectMapper().writer()
+            .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    private static volatile LLMResponseCache instance;
+
+    private final int maxSize;
+    private final long ttlMillis;
+    private final double maxTemperature;
+    private final Path diskDir;
+    private final Map<String, Entry> memory;
+    private final Map<String, CompletableFuture<String>> loading = new ConcurrentHashMap<>();
+
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder bypassed = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private LLMResponseCache(Map<String, String> config) {
+        this.maxSize = parseInt(config.get("max_size"), DEFAULT_MAX_SIZE);
+        this.ttlMillis = parseLong(config.get("ttl"), DEFAULT_TTL_SECONDS) * 1000;
+        this.maxTemperature = parseDouble(config.get("max_temperature"), DEFAULT_MAX_TEMPERATURE);
+        this.diskDir = initDiskDir(config.get("disk_dir"));
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+        log.info("llm response cache maxSize={} ttl={}ms maxTemperature={} diskDir={}", maxSize, ttlMillis,
+                maxTemperature, diskDir);
+    }
+
+    public static LLMResponseCache getInstance() {
+        if (instance == null) {
+            synchronized (LLMResponseCache.class) {
+                if (instance == null) {
+                    GenieConfig genieConfig = SpringContextHolder.getApplicationContext().getBean(GenieConfig.class);
+                    Map<String, String> config = genieConfig.getLlmCacheConfig();
+                    instance = new LLMResponseCache(Objects.nonNull(config) ? config : Map.of());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 请求是否可缓存：缓存已开启且温度不高于 max_temperature
+     */
+    public boolean accepts(double temperature) {
+        if (maxSize <= 0) {
+            return false;
+        }
+        if (temperature > maxTemperature) {
+            bypassed.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 规范化请求参数并计算 key：参数按名称排序，忽略 stream，直接写入摘要不生成完整 JSON
+     */
+    public static String key(Map<String, Object> params) {
+        Map<String, Object> normalized = new TreeMap<>(params);
+        normalized.remove("stream");
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (OutputStream out = new DigestOutputStream(OutputStream.nullOutputStream(), digest)) {
+                KEY_WRITER.writeValue(out, normalized);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new IllegalStateException("llm cache key failed", e);
+        }
+    }
+
+    /**
+     * 依次查内存层、磁盘层，未命中时调用 loader，成功后写入缓存；同一 key 的并发请求共享一次调用
+     */
+    public CompletableFuture<String> get(String requestId, String key, Supplier<CompletableFuture<String>> loader) {
+        String cached = lookup(key);
+        if (cached != null) {
+            log.info("{} llm cache hit {}", requestId, key);
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<String> future = new CompletableFuture<>();
+        CompletableFuture<String> existing = loading.putIfAbsent(key, future);
+        if (existing != null) {
+            coalesced.increment();
+            log.info("{} llm cache wait in-flight {}", requestId, key);
+            return existing;
+        }
+        misses.increment();
+        CompletableFuture<String> loaded;
+        try {
+            loaded = loader.get();
+        } catch (Exception e) {
+            loaded = CompletableFuture.failedFuture(e);
+        }
+        loaded.whenComplete((value, error) -> {
+            if (error == null && value != null) {
+                put(key, value);
+            }
+            loading.remove(key, future);
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(value);
+            }
+        });
+        return future;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (memory) {
+            stats.put("size", memory.size());
+        }
+        stats.put("memoryHits", memoryHits.sum());
+        stats.put("diskHits", diskHits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("coalesced", coalesced.sum());
+        stats.put("bypassed", bypassed.sum());
+        stats.put("evictions", evictions.sum());
+        return stats;
+    }
+
+    private String lookup(String key) {
+        long now = System.currentTimeMillis();
+        synchronized (memory) {
+            Entry entry = memory.get(key);
+            if (entry != null) {
+                if (entry.expireAt > now) {
+                    memoryHits.increment();
+                    return entry.value;
+                }
+                memory.remove(key);
+            }
+        }
+        Entry entry = readDisk(key, now);
+        if (entry == null) {
+            return null;
+        }
+        diskHits.increment();
+        synchronized (memory) {
+            memory.put(key, entry);
+        }
+        return entry.value;
+    }
+
+    private void put(String key, String value) {
+        synchronized (memory) {
+            memory.put(key, new Entry(value, System.currentTimeMillis() + ttlMillis));
+        }
+        writeDisk(key, value);
+    }
+
+    private Entry readDisk(String key, long now) {
+        if (diskDir == null) {
+            return null;
+        }
+        Path file = diskDir.resolve(key);
+        try {
+            if (!Files.exists(file)) {
+                return null;
+            }
+            long expireAt = Files.getLastModifiedTime(file).toMillis() + ttlMillis;
+            if (expireAt <= now) {
+                Files.deleteIfExists(file);
+                return null;
+            }
+            return new Entry(Files.readString(file, StandardCharsets.UTF_8), expireAt);
+        } catch (IOException e) {
+            log.warn("llm cache read {} failed: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeDisk(String key, String value) {
+        if (diskDir == null) {
+            return;
+        }
+        try {
+            // 先写临时文件再原子替换，避免读到写了一半的内容
+            Path tmp = Files.createTempFile(diskDir, key, ".tmp");
+            Files.writeString(tmp, value, StandardCharsets.UTF_8);
+            Files.move(tmp, diskDir.resolve(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("llm cache write {} failed: {}", key, e.getMessage());
+        }
+    }
+
+    private static Path initDiskDir(String dir) {
+        if (StringUtils.isEmpty(dir)) {
+            return null;
+        }
+        try {
+            return Files.createDirectories(Paths.get(dir));
+        } catch (IOException e) {
+            log.warn("llm cache disk dir {} unavailable, memory only: {}", dir, e.getMessage());
+            return null;
+        }
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        return StringUtils.isNotEmpty(value) ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+
+    private static long parseLong(String value, long defaultValue) {
+        return StringUtils.isNotEmpty(value) ? Long.parseLong(value.trim()) : defaultValue;
+    }
+
+    private static double parseDouble(String value, double defaultValue) {
+        return StringUtils.isNotEmpty(value) ? Double.parseDouble(value.trim()) : defaultValue;
+    }
+
+    private static class Entry {
+        private final String value;
+        private final long expireAt;
+
+        private Entry(String value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+}
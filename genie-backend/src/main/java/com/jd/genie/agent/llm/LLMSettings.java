@@ -5,13 +5,14 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
 import java.util.Map;
 
 /**
  * LLM 配置类
  */
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class LLMSettings {
@@ -70,4 +71,74 @@ public class LLMSettings {
      */
     private Map<String, Object> extParams;
 
+    /**
+     * 同一 baseUrl 下最大并发请求数
+     */
+    private Integer maxRequests;
+
+    /**
+     * 单个 host 最大并发请求数
+     */
+    private Integer maxRequestsPerHost;
+
+    /**
+     * 连接池最大空闲连接数
+     */
+    private Integer maxIdleConnections;
+
+    /**
+     * 空闲连接保活时间（秒）
+     */
+    private Integer keepAliveSeconds;
+
+    /**
+     * 是否允许协商 HTTP/2，默认开启
+     */
+    private Boolean http2;
+
+    /**
+     * token 计数使用的分词器，如 o200k_base、cl100k_base、char；为空时按模型名推断
+     */
+    private String tokenizer;
+
+    /**
+     * 每秒请求数上限（单实例），为空或不大于 0 时不限制
+     */
+    private Double requestsPerSecond;
+
+    /**
+     * 每分钟输入 token 上限（单实例，按 TokenCounter 估算），为空或不大于 0 时不限制
+     */
+    private Integer tokensPerMinute;
+
+    /**
+     * 自适应并发上限，为空或不大于 0 时不限制并发
+     */
+    private Integer maxConcurrency;
+
+    /**
+     * 自适应并发下限，默认 1
+     */
+    private Integer minConcurrency;
+
+    /**
+     * 同一逻辑模型的多个端点，为空时仅使用 baseUrl/apiKey；按健康状态与延迟选择，失败时切换
+     */
+    private List<LLMEndpoint> endpoints;
+
+    /**
+     * 连接失败、429/5xx 时的最大重试次数（不含首次请求），默认 2
+     */
+    private Integer maxRetries;
+
+    /**
+     * 非流式请求是否对冲：超过近期 p95 响应头延迟仍未返回时向另一端点再发一次，先返回者生效
+     */
+    private Boolean hedge;
+
+    /**
+     * 流式请求是否也对冲（需同时开启 hedge），默认关闭。ask/askTool 默认流式，开启后慢请求可能重复发送，上游 token 消耗最多翻倍
+     */
+    private Boolean hedgeStream;
+
 }
\ No newline at end of file
@@ -0,0 +1,214 @@
+package com.jd.genie.agent.llm;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * LLM 流式响应解析器
+ * 基于 Jackson JsonParser 逐 token 读取 chunk，只提取 delta 内容、工具调用增量和结束原因，不构建 JSON 树
+ * 解析结果写入可复用的 {@link StreamChunk}，实例非线程安全，每个流单独创建
+ */
+public class LLMStreamParser {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final StreamChunk chunk = new StreamChunk();
+
+    /**
+     * 解析 OpenAI 格式 chunk: choices[*].delta.content / delta.tool_calls / finish_reason
+     */
+    public StreamChunk parseOpenAI(byte[] data, int offset, int length) throws IOException {
+        chunk.reset();
+        try (JsonParser parser = JSON_FACTORY.createParser(data, offset, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return chunk;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if ("choices".equals(field) && token == JsonToken.START_ARRAY) {
+                    while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+                        if (token == JsonToken.START_OBJECT) {
+                            readChoice(parser);
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return chunk;
+    }
+
+    /**
+     * 解析 Claude 格式 chunk: id / delta.type / delta.text / delta.partial_json
+     */
+    public StreamChunk parseClaude(byte[] data, int offset, int length) throws IOException {
+        chunk.reset();
+        try (JsonParser parser = JSON_FACTORY.createParser(data, offset, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return chunk;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if ("id".equals(field)) {
+                    chunk.id = parser.getValueAsString();
+                } else if ("delta".equals(field) && token == JsonToken.START_OBJECT) {
+                    chunk.hasDelta = true;
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String deltaField = parser.currentName();
+                        parser.nextToken();
+                        if ("type".equals(deltaField)) {
+                            chunk.deltaType = parser.getValueAsString();
+                        } else if ("text".equals(deltaField)) {
+                            chunk.content = parser.getValueAsString();
+                        } else if ("partial_json".equals(deltaField)) {
+                            chunk.partialJson = parser.getValueAsString();
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return chunk;
+    }
+
+    private void readChoice(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if ("delta".equals(field) && token == JsonToken.START_OBJECT) {
+                chunk.hasDelta = true;
+                readDelta(parser);
+            } else if ("finish_reason".equals(field)) {
+                chunk.finishReason = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void readDelta(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if ("content".equals(field)) {
+                chunk.appendContent(parser.getValueAsString());
+            } else if ("tool_calls".equals(field) && token == JsonToken.START_ARRAY) {
+                while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+                    if (token == JsonToken.START_OBJECT) {
+                        readToolCall(parser, chunk.nextToolCall());
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void readToolCall(JsonParser parser, ToolCallDelta toolCall) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if ("index".equals(field)) {
+                toolCall.index = parser.getValueAsInt(0);
+            } else if ("id".equals(field)) {
+                toolCall.id = parser.getValueAsString();
+            } else if ("type".equals(field)) {
+                toolCall.type = parser.getValueAsString();
+            } else if ("function".equals(field) && token == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String functionField = parser.currentName();
+                    parser.nextToken();
+                    if ("name".equals(functionField)) {
+                        toolCall.name = parser.getValueAsString();
+                    } else if ("arguments".equals(functionField)) {
+                        toolCall.arguments = parser.getValueAsString();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * 单个 chunk 的解析结果，下一次解析时复用
+     */
+    @Getter
+    public static class StreamChunk {
+        private boolean hasDelta;
+        private String id;
+        private String content;
+        private String deltaType;
+        private String partialJson;
+        private String finishReason;
+        private int toolCallCount;
+        private final List<ToolCallDelta> toolCalls = new ArrayList<>();
+
+        public ToolCallDelta getToolCall(int i) {
+            return toolCalls.get(i);
+        }
+
+        private void appendContent(String text) {
+            if (text == null) {
+                return;
+            }
+            content = content == null ? text : content + text;
+        }
+
+        private ToolCallDelta nextToolCall() {
+            if (toolCallCount == toolCalls.size()) {
+                toolCalls.add(new ToolCallDelta());
+            }
+            ToolCallDelta toolCall = toolCalls.get(toolCallCount++);
+            toolCall.reset();
+            return toolCall;
+        }
+
+        private void reset() {
+            hasDelta = false;
+            id = null;
+            content = null;
+            deltaType = null;
+            partialJson = null;
+            finishReason = null;
+            toolCallCount = 0;
+        }
+    }
+
+    /**
+     * 工具调用增量
+     */
+    @Getter
+    public static class ToolCallDelta {
+        private int index;
+        private String id;
+        private String type;
+        private String name;
+        private String arguments;
+
+        private void reset() {
+            index = 0;
+            id = null;
+            type = null;
+            name = null;
+            arguments = null;
+        }
+    }
+}
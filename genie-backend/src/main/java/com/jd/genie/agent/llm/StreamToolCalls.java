@@ -0,0 +1,129 @@
+package com.jd.genie.agent.llm;
+
+import com.jd.genie.agent.dto.tool.ToolCall;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * 流式工具调用累积：按 index 合并增量，参数完整（index 已前进或参数 JSON 括号闭合）时回调 listener，每个调用只回调一次
+ * 实例非线程安全，每个流单独创建
+ */
+@Slf4j
+class StreamToolCalls {
+    private final String requestId;
+    private final Consumer<ToolCall> listener;
+    private final Map<Integer, StreamToolCall> calls = new TreeMap<>();
+
+    /**
+     * @param listener 参数完整时回调，可为空
+     */
+    StreamToolCalls(String requestId, Consumer<ToolCall> listener) {
+        this.requestId = requestId;
+        this.listener = listener;
+    }
+
+    /**
+     * 合并一个增量，并派发参数已完整的调用
+     */
+    void merge(LLMStreamParser.ToolCallDelta delta) {
+        calls.computeIfAbsent(delta.getIndex(), k -> new StreamToolCall()).merge(delta);
+        if (Objects.nonNull(listener)) {
+            dispatchCompleted(delta.getIndex());
+        }
+    }
+
+    /**
+     * 按 index 顺序返回全部工具调用
+     */
+    List<ToolCall> toToolCalls() {
+        List<ToolCall> toolCalls = new ArrayList<>(calls.size());
+        for (StreamToolCall call : calls.values()) {
+            toolCalls.add(call.toToolCall());
+        }
+        return toolCalls;
+    }
+
+    private void dispatchCompleted(int currentIndex) {
+        for (Map.Entry<Integer, StreamToolCall> entry : calls.entrySet()) {
+            StreamToolCall call = entry.getValue();
+            if (call.dispatched || Objects.isNull(call.id) || Objects.isNull(call.name)) {
+                continue;
+            }
+            if (entry.getKey() < currentIndex || call.closed) {
+                call.dispatched = true;
+                try {
+                    listener.accept(call.toToolCall());
+                } catch (Exception e) {
+                    log.error("{} dispatch tool call {} error", requestId, call.name, e);
+                }
+            }
+        }
+    }
+
+    private static class StreamToolCall {
+        private String id;
+        private String type;
+        private String name;
+        private final StringBuilder arguments = new StringBuilder();
+        // 参数 JSON 的括号深度，忽略字符串内的括号
+        private int depth;
+        private boolean inString;
+        private boolean escaped;
+        private boolean closed;
+        private boolean dispatched;
+
+        private void merge(LLMStreamParser.ToolCallDelta delta) {
+            if (Objects.nonNull(delta.getId())) {
+                id = delta.getId();
+            }
+            if (Objects.nonNull(delta.getType())) {
+                type = delta.getType();
+            }
+            if (Objects.nonNull(delta.getName())) {
+                name = delta.getName();
+            }
+            if (Objects.nonNull(delta.getArguments())) {
+                arguments.append(delta.getArguments());
+                scan(delta.getArguments());
+            }
+        }
+
+        private void scan(String text) {
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (inString) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (c == '\\') {
+                        escaped = true;
+                    } else if (c == '"') {
+                        inString = false;
+                    }
+                } else if (c == '"') {
+                    inString = true;
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if ((c == '}' || c == ']') && --depth == 0) {
+                    closed = true;
+                }
+            }
+        }
+
+        private ToolCall toToolCall() {
+            return ToolCall.builder()
+                    .id(id)
+                    .type(type)
+                    .function(ToolCall.Function.builder()
+                            .name(name)
+                            .arguments(arguments.toString())
+                            .build())
+                    .build();
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.jd.genie.agent.llm;
 
+import com.jd.genie.agent.dto.Message;
+import com.jd.genie.agent.dto.tool.ToolCall;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.List;
@@ -21,14 +23,25 @@ public class TokenCounter {
     private static final int HIGH_DETAIL_TARGET_SHORT_SIDE = 768;
     private static final int TILE_SIZE = 512;
 
+    private final Tokenizer tokenizer;
+
     public TokenCounter() {
+        this(TokenizerFactory.getTokenizer(TokenizerFactory.DEFAULT_TOKENIZER));
+    }
+
+    public TokenCounter(Tokenizer tokenizer) {
+        this.tokenizer = tokenizer;
+    }
+
+    public String getTokenizerName() {
+        return tokenizer.getName();
     }
 
     /**
      * 计算文本的 token 数量
      */
     public int countText(String text) {
-        return text == null ? 0 : text.length();
+        return text == null || text.isEmpty() ? 0 : tokenizer.countTokens(text);
     }
 
     /**
@@ -156,6 +169,34 @@ public class TokenCounter {
         return tokens;
     }
 
+    /**
+     * 计算 Message 的 token 数量，结果缓存在 Message 上，历史消息每轮只需计算一次
+     * 计数口径与 formatMessages 后的 countMessageTokens 一致（图片按默认尺寸估算）
+     */
+    public int countMessage(Message message) {
+        Integer cached = message.cachedTokens(tokenizer.getName());
+        if (cached != null) {
+            return cached;
+        }
+        int tokens = BASE_MESSAGE_TOKENS;
+        tokens += countText(message.getRole() != null ? message.getRole().getValue() : "");
+        tokens += countText(message.getContent());
+        if (message.getBase64Image() != null && !message.getBase64Image().isEmpty()) {
+            tokens += countImage(Map.of());
+        }
+        if (message.getToolCalls() != null) {
+            for (ToolCall toolCall : message.getToolCalls()) {
+                if (toolCall.getFunction() != null) {
+                    tokens += countText(toolCall.getFunction().getName());
+                    tokens += countText(toolCall.getFunction().getArguments());
+                }
+            }
+        }
+        tokens += countText(message.getToolCallId());
+        message.cacheTokens(tokenizer.getName(), tokens);
+        return tokens;
+    }
+
     /**
      * 计算消息列表的总 token 数量
      */
@@ -0,0 +1,18 @@
+package com.jd.genie.agent.llm;
+
+/**
+ * 分词器 SPI
+ * 内置 o200k_base、cl100k_base（BPE）与 char（按字符计数）；
+ * 其他实现可通过 META-INF/services/com.jd.genie.agent.llm.Tokenizer 注册，并在 LLMSettings.tokenizer 中按名称引用
+ */
+public interface Tokenizer {
+    /**
+     * 分词器名称，与 LLMSettings.tokenizer 配置对应
+     */
+    String getName();
+
+    /**
+     * 计算文本的 token 数量
+     */
+    int countTokens(String text);
+}
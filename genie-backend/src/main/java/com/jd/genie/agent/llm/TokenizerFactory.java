@@ -0,0 +1,84 @@
+package com.jd.genie.agent.llm;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 分词器工厂
+ * 按名称缓存分词器实例，词表只加载一次；未配置时按模型名推断，无法识别的模型使用 cl100k_base 近似
+ */
+@Slf4j
+public class TokenizerFactory {
+    public static final String CHAR = "char";
+    public static final String DEFAULT_TOKENIZER = BpeTokenizer.CL100K_BASE;
+
+    private static final Map<String, Tokenizer> tokenizers = new ConcurrentHashMap<>();
+
+    static {
+        tokenizers.put(CHAR, new CharTokenizer());
+        for (Tokenizer tokenizer : ServiceLoader.load(Tokenizer.class)) {
+            log.info("register tokenizer {}: {}", tokenizer.getName(), tokenizer.getClass().getName());
+            tokenizers.put(tokenizer.getName(), tokenizer);
+        }
+    }
+
+    private TokenizerFactory() {
+    }
+
+    /**
+     * 获取模型配置对应的分词器
+     */
+    public static Tokenizer getTokenizer(LLMSettings settings) {
+        String name = settings.getTokenizer();
+        if (StringUtils.isEmpty(name)) {
+            name = inferTokenizer(settings.getModel());
+        }
+        return getTokenizer(name);
+    }
+
+    /**
+     * 按名称获取分词器，名称未知或词表加载失败时回退为默认分词器
+     */
+    public static Tokenizer getTokenizer(String name) {
+        Tokenizer tokenizer = tokenizers.computeIfAbsent(name, key -> {
+            Tokenizer bpe = BpeTokenizer.load(key);
+            if (Objects.isNull(bpe)) {
+                log.warn("tokenizer {} not found, fall back to {}", key, DEFAULT_TOKENIZER);
+            }
+            return bpe;
+        });
+        if (Objects.nonNull(tokenizer)) {
+            return tokenizer;
+        }
+        return DEFAULT_TOKENIZER.equals(name) ? tokenizers.get(CHAR) : getTokenizer(DEFAULT_TOKENIZER);
+    }
+
+    private static String inferTokenizer(String model) {
+        String lower = StringUtils.defaultString(model).toLowerCase();
+        if (lower.contains("gpt-4o") || lower.contains("gpt-4.1") || lower.contains("gpt-5")
+                || lower.matches(".*\\bo[134]\\b.*")) {
+            return BpeTokenizer.O200K_BASE;
+        }
+        return DEFAULT_TOKENIZER;
+    }
+
+    /**
+     * 按字符计数，与早期 TokenCounter 行为一致
+     */
+    private static class CharTokenizer implements Tokenizer {
+        @Override
+        public String getName() {
+            return CHAR;
+        }
+
+        @Override
+        public int countTokens(String text) {
+            return text == null ? 0 : text.length();
+        }
+    }
+}
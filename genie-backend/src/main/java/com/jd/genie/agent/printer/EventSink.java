@@ -0,0 +1,30 @@
+package com.jd.genie.agent.printer;
+
+/**
+ * SSEPrinter 的写出目标：servlet 连接（SseSession）或响应式流（SseFluxSink）
+ * 写出只在 SSEPrinter 的写出任务中按顺序调用
+ */
+public interface EventSink {
+    /**
+     * 写出一个事件，失败时由实现处理，不抛出异常
+     */
+    void send(Object payload);
+
+    /**
+     * 输出结束
+     */
+    void complete();
+
+    /**
+     * 下游是否可以接收事件；不可接收时事件留在出站队列，待 onReady 通知后继续写出
+     */
+    default boolean isReady() {
+        return true;
+    }
+
+    /**
+     * 注册下游恢复接收时的通知
+     */
+    default void onReady(Runnable listener) {
+    }
+}
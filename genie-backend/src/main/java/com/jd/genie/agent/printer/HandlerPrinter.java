@@ -0,0 +1,77 @@
+package com.jd.genie.agent.printer;
+
+import com.jd.genie.handler.AgentResponseHandler;
+import com.jd.genie.model.multi.EventResult;
+import com.jd.genie.model.req.AgentRequest;
+import com.jd.genie.model.response.AgentResponse;
+import com.jd.genie.model.response.GptProcessResult;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 进程内输出：智能体消息直接经 AgentResponseHandler 转换后写入前端 SSE 连接，不再回环请求 /AutoAgent
+ * 多个子任务可能并发输出，转换与写出都在连接的写出任务中按入队顺序执行，转换状态(agentRespList/eventResult)无需加锁
+ */
+@Slf4j
+public class HandlerPrinter extends SSEPrinter {
+    private final EventSink sink;
+    private final AgentRequest request;
+    private final AgentResponseHandler handler;
+    private final Function<String, GptProcessResult> errorResult;
+    private final List<AgentResponse> agentRespList = new ArrayList<>();
+    private final EventResult eventResult = new EventResult();
+    private final long startTime = System.currentTimeMillis();
+    private boolean finished;
+
+    /**
+     * @param sink        前端 SSE 会话或响应式流
+     * @param request     前端请求，转换结果使用其 requestId
+     * @param handler     智能体类型对应的转换器
+     * @param errorResult 未正常结束时的兜底结果
+     */
+    public HandlerPrinter(EventSink sink, AgentRequest request, AgentResponseHandler handler,
+                          Function<String, GptProcessResult> errorResult) {
+        super(sink, request, request.getAgentType());
+        this.sink = sink;
+        this.request = request;
+        this.handler = handler;
+        this.errorResult = errorResult;
+    }
+
+    @Override
+    protected void write(AgentResponse response) throws IOException {
+        if (finished) {
+            return;
+        }
+        GptProcessResult result = handler.handle(request, response, agentRespList, eventResult);
+        sink.send(result);
+        if (result.isFinished()) {
+            // 记录任务执行时间
+            log.info("{} task total cost time:{}ms", request.getRequestId(), System.currentTimeMillis() - startTime);
+            finish();
+        }
+    }
+
+    @Override
+    protected void closeConnection() {
+        if (finished) {
+            return;
+        }
+        // 智能体结束但没有输出最终结果
+        try {
+            sink.send(errorResult.apply("任务执行失败，请联系管理员！"));
+        } catch (Exception e) {
+            log.error("{} send error result failed", request.getRequestId(), e);
+        }
+        finish();
+    }
+
+    private void finish() {
+        finished = true;
+        sink.complete();
+    }
+}
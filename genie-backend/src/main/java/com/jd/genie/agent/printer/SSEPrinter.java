@@ -2,30 +2,98 @@ package com.jd.genie.agent.printer;
 
 import com.alibaba.fastjson.JSON;
 import com.jd.genie.agent.enums.AgentType;
+import com.jd.genie.agent.util.SpringContextHolder;
 import com.jd.genie.agent.util.StringUtil;
+import com.jd.genie.agent.util.ThreadUtil;
+import com.jd.genie.config.GenieConfig;
 import com.jd.genie.model.req.AgentRequest;
 import com.jd.genie.model.response.AgentResponse;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.springframework.beans.BeanUtils;
-import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.context.ApplicationContext;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * SSE 输出：事件进入连接的出站队列，由 sse 线程池中的写出任务按顺序写入连接，调用方（智能体、工具、OkHttp 回调线程）不阻塞
+ * 1. 每个连接同时最多一个写出任务；线程池拒绝时稍后重试，不在调用方线程写出
+ * 2. 队满时流式增量(isFinal=false)合并到队列中同一消息的增量，无法合并时丢弃（最终消息包含完整内容）；
+ * 完整消息入队时移除被其取代的排队消息（同一消息的增量、较早的 plan），result/task 等不丢弃；
+ * 队列超过 HARD_LIMIT_FACTOR 倍队列长度时放弃排队事件并结束输出，单连接内存有界
+ * 3. close 在队列写完后结束输出；写出失败后丢弃后续事件
+ * 4. 写出目标暂不可接收（响应式下游没有请求量）时暂停写出，事件留在队列中按 2 合并，目标恢复后继续
+ * servlet 接口写出到 SseSession（编号并缓冲，断线重连后可补发），响应式接口写出到 SseFluxSink
+ */
 @Slf4j
 @Setter
 public class SSEPrinter implements Printer {
-    private SseEmitter emitter;
+    private static final int DEFAULT_QUEUE_SIZE = 256;
+    private static final int HARD_LIMIT_FACTOR = 4;
+    private static final long DRAIN_RETRY_MS = 50;
+    private static final ScheduledExecutorService retryTimer = Executors.newSingleThreadScheduledExecutor(
+            new BasicThreadFactory.Builder().namingPattern("genie-sse-retry-%d").daemon(true).build());
+    private static final AtomicInteger queued = new AtomicInteger();
+    private static final AtomicInteger maxDepth = new AtomicInteger();
+    private static final LongAdder written = new LongAdder();
+    private static final LongAdder coalesced = new LongAdder();
+    private static final LongAdder dropped = new LongAdder();
+    private static final LongAdder superseded = new LongAdder();
+    private static final LongAdder overflowed = new LongAdder();
+    private static final LongAdder drainRetries = new LongAdder();
+    private static final LongAdder paused = new LongAdder();
+
+    private EventSink sink;
     private AgentRequest request;
     private Integer agentType;
 
-    public SSEPrinter(SseEmitter emitter, AgentRequest request, Integer agentType) {
-        this.emitter = emitter;
+    private final Deque<AgentResponse> outbound = new ArrayDeque<>();
+    private final int queueSize;
+    private boolean draining;
+    private boolean closing;
+    private boolean closed;
+    private volatile boolean broken;
+
+    public SSEPrinter(EventSink sink, AgentRequest request, Integer agentType) {
+        this.sink = sink;
         this.request = request;
         this.agentType = agentType;
+        ApplicationContext applicationContext = SpringContextHolder.getApplicationContext();
+        this.queueSize = Objects.nonNull(applicationContext)
+                ? applicationContext.getBean(GenieConfig.class).getSseQueueSize() : DEFAULT_QUEUE_SIZE;
+        sink.onReady(this::resumeDrain);
+    }
+
+    /**
+     * 出站队列指标：当前排队总数、单连接最大深度、写出、合并、取代、丢弃数、超过上限结束的连接数、
+     * 线程池满重试次数、因下游无请求量暂停写出的次数
+     */
+    public static Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queued", queued.get());
+        stats.put("maxDepth", maxDepth.get());
+        stats.put("written", written.sum());
+        stats.put("coalesced", coalesced.sum());
+        stats.put("superseded", superseded.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("overflowed", overflowed.sum());
+        stats.put("drainRetries", drainRetries.sum());
+        stats.put("paused", paused.sum());
+        return stats;
     }
 
     @Override
@@ -113,13 +181,209 @@ public class SSEPrinter implements Printer {
                     break;
             }
 
-            emitter.send(response);
+            emit(response);
 
         } catch (Exception e) {
             log.error("sse send error ", e);
         }
     }
 
+    /**
+     * 组装好的消息进入出站队列
+     */
+    protected void emit(AgentResponse response) {
+        synchronized (outbound) {
+            if (closing || broken) {
+                dropped.increment();
+                return;
+            }
+            if (outbound.size() >= queueSize && Boolean.FALSE.equals(response.getIsFinal())) {
+                if (coalesce(response)) {
+                    coalesced.increment();
+                } else {
+                    dropped.increment();
+                }
+                return;
+            }
+            if (outbound.size() >= queueSize) {
+                supersede(response);
+            }
+            if (outbound.size() >= queueSize * HARD_LIMIT_FACTOR) {
+                overflow();
+            } else {
+                outbound.addLast(response);
+                queued.incrementAndGet();
+            }
+            maxDepth.accumulateAndGet(outbound.size(), Math::max);
+            if (draining) {
+                return;
+            }
+            draining = true;
+        }
+        scheduleDrain();
+    }
+
+    /**
+     * 写出一条消息，在写出任务中按入队顺序调用
+     */
+    protected void write(AgentResponse response) throws IOException {
+        sink.send(response);
+    }
+
+    /**
+     * 结束输出，在队列写完后于写出任务中调用
+     */
+    protected void closeConnection() {
+        sink.complete();
+    }
+
+    /**
+     * 完整消息取代队列中同一消息的增量；plan 为完整快照，取代较早的 plan
+     */
+    private void supersede(AgentResponse response) {
+        if (Boolean.FALSE.equals(response.getIsFinal())) {
+            return;
+        }
+        boolean plan = "plan".equals(response.getMessageType());
+        Iterator<AgentResponse> iterator = outbound.iterator();
+        while (iterator.hasNext()) {
+            AgentResponse queuedResponse = iterator.next();
+            boolean sameMessage = Objects.nonNull(response.getMessageId())
+                    && Objects.equals(queuedResponse.getMessageId(), response.getMessageId())
+                    && Objects.equals(queuedResponse.getMessageType(), response.getMessageType())
+                    && Boolean.FALSE.equals(queuedResponse.getIsFinal());
+            if (sameMessage || (plan && "plan".equals(queuedResponse.getMessageType()))) {
+                iterator.remove();
+                queued.decrementAndGet();
+                superseded.increment();
+            }
+        }
+    }
+
+    /**
+     * 客户端长时间不读取，放弃排队事件并结束输出，在持有队列锁时调用
+     */
+    private void overflow() {
+        log.error("{} sse outbound queue exceeded {}, close stream", request.getRequestId(), queueSize * HARD_LIMIT_FACTOR);
+        overflowed.increment();
+        dropped.add(outbound.size() + 1);
+        queued.addAndGet(-outbound.size());
+        outbound.clear();
+        broken = true;
+        closing = true;
+    }
+
+    private void scheduleDrain() {
+        ThreadUtil.execute(ThreadUtil.SSE, this::drain).exceptionally(e -> {
+            // sse 线程池已满，稍后重试；draining 保持为 true，期间的事件继续入队
+            drainRetries.increment();
+            retryTimer.schedule(this::scheduleDrain, DRAIN_RETRY_MS, TimeUnit.MILLISECONDS);
+            return null;
+        });
+    }
+
+    /**
+     * 写出目标恢复接收，继续写出暂停时留在队列中的事件
+     */
+    private void resumeDrain() {
+        synchronized (outbound) {
+            if (draining || outbound.isEmpty()) {
+                return;
+            }
+            draining = true;
+        }
+        scheduleDrain();
+    }
+
+    private void drain() {
+        while (true) {
+            AgentResponse response;
+            synchronized (outbound) {
+                if (!outbound.isEmpty() && !broken && !sink.isReady()) {
+                    // 与 resumeDrain 在同一把锁内判断，不会错过恢复通知
+                    paused.increment();
+                    draining = false;
+                    return;
+                }
+                response = outbound.pollFirst();
+                if (response == null) {
+                    if (!closing || closed) {
+                        draining = false;
+                        return;
+                    }
+                    closed = true;
+                } else {
+                    queued.decrementAndGet();
+                }
+            }
+            if (response == null) {
+                try {
+                    closeConnection();
+                } catch (Exception e) {
+                    log.error("{} sse close error", request.getRequestId(), e);
+                }
+                continue;
+            }
+            if (broken) {
+                dropped.increment();
+                continue;
+            }
+            try {
+                write(response);
+                written.increment();
+            } catch (IOException e) {
+                // 客户端断开，后续事件不再写出
+                broken = true;
+                log.warn("{} sse write failed, discard following events: {}", request.getRequestId(), e.getMessage());
+            } catch (Exception e) {
+                log.error("{} sse send error", request.getRequestId(), e);
+            }
+        }
+    }
+
+    /**
+     * 把增量合并到队列中同一消息最近的一条增量，中间隔着同一消息的完整消息时不合并
+     */
+    private boolean coalesce(AgentResponse delta) {
+        Iterator<AgentResponse> iterator = outbound.descendingIterator();
+        while (iterator.hasNext()) {
+            AgentResponse queuedResponse = iterator.next();
+            if (!Objects.equals(queuedResponse.getMessageId(), delta.getMessageId())
+                    || !Objects.equals(queuedResponse.getMessageType(), delta.getMessageType())) {
+                continue;
+            }
+            return Boolean.FALSE.equals(queuedResponse.getIsFinal()) && merge(queuedResponse, delta);
+        }
+        return false;
+    }
+
+    private static boolean merge(AgentResponse target, AgentResponse delta) {
+        if (Objects.nonNull(delta.getResult()) && Objects.nonNull(target.getResult())) {
+            target.setResult(target.getResult() + delta.getResult());
+            return true;
+        }
+        if (Objects.nonNull(delta.getToolThought()) && Objects.nonNull(target.getToolThought())) {
+            target.setToolThought(target.getToolThought() + delta.getToolThought());
+            return true;
+        }
+        if (Objects.nonNull(delta.getPlanThought()) && Objects.nonNull(target.getPlanThought())) {
+            target.setPlanThought(target.getPlanThought() + delta.getPlanThought());
+            return true;
+        }
+        if (Objects.nonNull(delta.getResultMap()) && Objects.nonNull(target.getResultMap())) {
+            // deep_search 增量在 answer，报告增量在 data
+            for (String key : new String[]{"answer", "data"}) {
+                Object value = delta.getResultMap().get(key);
+                Object targetValue = target.getResultMap().get(key);
+                if (value instanceof String && targetValue instanceof String) {
+                    target.getResultMap().put(key, targetValue + (String) value);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     @Override
     public void send(String messageType, Object message, String digitalEmployee) {
         send(null, messageType, message, digitalEmployee, true);
@@ -135,9 +399,22 @@ public class SSEPrinter implements Printer {
         send(messageId, messageType, message, null, isFinal);
     }
 
+    /**
+     * 队列写完后结束连接
+     */
     @Override
     public void close() {
-        emitter.complete();
+        synchronized (outbound) {
+            if (closing) {
+                return;
+            }
+            closing = true;
+            if (draining) {
+                return;
+            }
+            draining = true;
+        }
+        scheduleDrain();
     }
 
     @Override
@@ -0,0 +1,189 @@
+package com.jd.genie.agent.printer;
+
+import com.jd.genie.agent.agent.AgentContext;
+import com.jd.genie.agent.util.SpringContextHolder;
+import com.jd.genie.config.GenieConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.springframework.context.ApplicationContext;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * 流式输出合并：增量内容先缓冲，距最早未发送内容满 maxLatencyMs 或缓冲达到 maxChars 时发送，以先到者为准
+ * 1. 首个增量立即发送，保证首字延迟
+ * 2. 生产者阻塞在读取上游时由定时线程按时发送；发送在同一把锁内执行，保证增量顺序
+ * 3. close 立即发送剩余内容，之后的 append 忽略
+ * 配置格式 "maxLatencyMs,maxChars"，按生产者取 autobots.autoagent.stream_flush，请求中的 streamFlush 优先；
+ * 请求中的配置在接收请求时经 normalize 校验并限制在 MAX_LATENCY_MS、MAX_CHARS 以内
+ */
+@Slf4j
+public class StreamCoalescer {
+    public static final String LLM = "llm";
+    public static final String SEARCH = "search";
+    public static final String REPORT = "report";
+
+    private static final Map<String, String> DEFAULT_CONFIG = Map.of(
+            LLM, "50,256",
+            SEARCH, "100,1024",
+            REPORT, "50,2048");
+    private static final String DEFAULT = "50,256";
+    private static final long MAX_LATENCY_MS = 1000;
+    private static final int MAX_CHARS = 8192;
+
+    private static final ScheduledThreadPoolExecutor timer;
+
+    static {
+        timer = new ScheduledThreadPoolExecutor(1,
+                new BasicThreadFactory.Builder().namingPattern("genie-stream-flush-%d").daemon(true).build());
+        timer.setRemoveOnCancelPolicy(true);
+    }
+
+    private final long maxLatencyMs;
+    private final int maxChars;
+    private final Consumer<String> sink;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final StringBuilder buffer = new StringBuilder();
+    private ScheduledFuture<?> pendingFlush;
+    // 每次发送加一，定时任务据此判断缓冲是否已被发送
+    private long flushes;
+    private boolean closed;
+
+    /**
+     * @param sink 接收合并后的增量内容，在持有锁时调用
+     */
+    public StreamCoalescer(long maxLatencyMs, int maxChars, Consumer<String> sink) {
+        this.maxLatencyMs = maxLatencyMs;
+        this.maxChars = maxChars;
+        this.sink = sink;
+    }
+
+    /**
+     * 按生产者配置创建
+     *
+     * @param producer llm/search/report
+     */
+    public static StreamCoalescer create(AgentContext context, String producer, Consumer<String> sink) {
+        String config = Objects.nonNull(context) ? context.getStreamFlush() : null;
+        if (StringUtils.isEmpty(config)) {
+            ApplicationContext applicationContext = SpringContextHolder.getApplicationContext();
+            if (Objects.nonNull(applicationContext)) {
+                config = applicationContext.getBean(GenieConfig.class).getStreamFlush().get(producer);
+            }
+        }
+        long[] values = parse(config);
+        if (Objects.isNull(values)) {
+            values = parse(DEFAULT_CONFIG.getOrDefault(producer, DEFAULT));
+        }
+        return new StreamCoalescer(values[0], (int) values[1], sink);
+    }
+
+    /**
+     * 校验请求传入的合并配置，格式错误时返回空（使用服务端配置），超出上限时截断
+     */
+    public static String normalize(String requestId, String config) {
+        if (StringUtils.isEmpty(config)) {
+            return null;
+        }
+        long[] values = parse(config);
+        if (Objects.isNull(values)) {
+            log.warn("{} invalid stream flush config {}, use server config", requestId, config);
+            return null;
+        }
+        return Math.min(values[0], MAX_LATENCY_MS) + "," + Math.min(values[1], MAX_CHARS);
+    }
+
+    /**
+     * 解析 "maxLatencyMs,maxChars"，格式错误或为负数时返回空
+     */
+    private static long[] parse(String config) {
+        if (StringUtils.isEmpty(config)) {
+            return null;
+        }
+        String[] values = config.split(",");
+        if (values.length != 2) {
+            return null;
+        }
+        try {
+            long maxLatencyMs = Long.parseLong(values[0].trim());
+            long maxChars = Long.parseLong(values[1].trim());
+            if (maxLatencyMs < 0 || maxChars <= 0 || maxChars > Integer.MAX_VALUE) {
+                return null;
+            }
+            return new long[]{maxLatencyMs, maxChars};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public void append(CharSequence delta) {
+        if (Objects.isNull(delta) || delta.length() == 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            buffer.append(delta);
+            if (flushes == 0 || buffer.length() >= maxChars || maxLatencyMs <= 0) {
+                flush();
+            } else if (pendingFlush == null) {
+                long expected = flushes;
+                pendingFlush = timer.schedule(() -> flushOnTimer(expected), maxLatencyMs, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 发送剩余内容并结束
+     */
+    public void close() {
+        lock.lock();
+        try {
+            if (!closed) {
+                flush();
+                closed = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushOnTimer(long expected) {
+        lock.lock();
+        try {
+            // 定时期间已按大小发送过，剩余内容由新的定时任务负责
+            if (flushes == expected && !closed) {
+                flush();
+            }
+        } catch (Exception e) {
+            log.error("stream flush failed", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flush() {
+        if (pendingFlush != null) {
+            pendingFlush.cancel(false);
+            pendingFlush = null;
+        }
+        if (buffer.length() == 0) {
+            return;
+        }
+        String content = buffer.toString();
+        buffer.setLength(0);
+        flushes++;
+        sink.accept(content);
+    }
+}
@@ -4,12 +4,22 @@ import com.alibaba.fastjson.JSONObject;
 import com.jd.genie.agent.agent.AgentContext;
 import com.jd.genie.agent.dto.tool.McpToolInfo;
 import com.jd.genie.agent.tool.mcp.McpTool;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 
 /**
  * 工具集合类 - 管理可用的工具
@@ -22,24 +32,49 @@ public class ToolCollection {
     private AgentContext agentContext;
 
     /**
-     * 数字员工列表
-     * task未并发的情况下
-     * 1、每一个task，执行时，数字员工列表就会更新
-     * TODO 并发情况下需要处理
+     * 数字员工列表，按任务文本保存，并发子任务互不覆盖
+     * 生成是异步的，工具取用时才等待结果；同一任务只生成一次
+     * 工具执行线程通过 CURRENT_TASK 确定所属任务，见 execute(task, name, toolInput)
      */
-    private String currentTask;
-    private JSONObject digitalEmployees;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final Map<String, CompletableFuture<JSONObject>> digitalEmployees = new ConcurrentHashMap<>();
+    private static final ThreadLocal<String> CURRENT_TASK = new ThreadLocal<>();
+    // 工具取用数字员工时最多等待的时间，超时不影响工具执行，仅不展示数字员工
+    private static final long DIGITAL_EMPLOYEE_WAIT_SECONDS = 60;
+
+    /**
+     * 工具 schema 缓存键，工具变更时失效
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private transient volatile String schemaKey;
 
     public ToolCollection() {
         this.toolMap = new HashMap<>();
         this.mcpToolMap = new HashMap<>();
     }
 
+    public void setToolMap(Map<String, BaseTool> toolMap) {
+        this.toolMap = toolMap;
+        schemaKey = null;
+    }
+
+    public void setMcpToolMap(Map<String, McpToolInfo> mcpToolMap) {
+        this.mcpToolMap = mcpToolMap;
+        schemaKey = null;
+    }
+
     /**
      * 添加工具
      */
     public void addTool(BaseTool tool) {
         toolMap.put(tool.getName(), tool);
+        schemaKey = null;
     }
 
     /**
@@ -59,6 +94,37 @@ public class ToolCollection {
                 .parameters(parameters)
                 .mcpServerUrl(mcpServerUrl)
                 .build());
+        schemaKey = null;
+    }
+
+    /**
+     * 添加已发现的MCP工具
+     */
+    public void addMcpTool(McpToolInfo toolInfo) {
+        mcpToolMap.put(toolInfo.getName(), toolInfo);
+        schemaKey = null;
+    }
+
+    /**
+     * 工具集合内容签名：内置工具按类型、名称与描述，MCP 工具按名称、描述、服务地址与参数定义
+     * 内容相同的工具集合（包括不同请求间）得到相同的签名，可复用已生成的 schema
+     */
+    public String schemaKey() {
+        String key = schemaKey;
+        if (key == null) {
+            StringBuilder sb = new StringBuilder();
+            for (BaseTool tool : toolMap.values()) {
+                sb.append(tool.getClass().getName()).append('|').append(tool.getName())
+                        .append('|').append(tool.getDescription()).append('\n');
+            }
+            for (McpToolInfo tool : mcpToolMap.values()) {
+                sb.append("mcp|").append(tool.getName()).append('|').append(tool.getDesc())
+                        .append('|').append(tool.getMcpServerUrl()).append('|').append(tool.getParameters()).append('\n');
+            }
+            key = sb.toString();
+            schemaKey = key;
+        }
+        return key;
     }
 
     /**
@@ -69,6 +135,23 @@ public class ToolCollection {
     }
 
 
+    /**
+     * 在指定任务下执行工具，工具内可通过 getCurrentTask/getDigitalEmployee 取得该任务的数字员工
+     */
+    public Object execute(String task, String name, Object toolInput) {
+        String previous = CURRENT_TASK.get();
+        CURRENT_TASK.set(task);
+        try {
+            return execute(name, toolInput);
+        } finally {
+            if (previous == null) {
+                CURRENT_TASK.remove();
+            } else {
+                CURRENT_TASK.set(previous);
+            }
+        }
+    }
+
     /**
      * 执行工具
      */
@@ -88,27 +171,42 @@ public class ToolCollection {
     }
 
     /**
-     * 设置数字员工
+     * 获取或发起任务的数字员工生成，同一任务只调用一次 generator
      */
-    public void updateDigitalEmployee(JSONObject digitalEmployee) {
-        if (digitalEmployee == null) {
-            log.error("requestId:{} setDigitalEmployee: {}", agentContext.getRequestId(), digitalEmployee);
-        }
-        setDigitalEmployees(digitalEmployee);
+    public CompletableFuture<JSONObject> resolveDigitalEmployee(String task, Function<String, CompletableFuture<JSONObject>> generator) {
+        return digitalEmployees.computeIfAbsent(task, generator);
+    }
+
+    /**
+     * 当前线程正在执行的任务
+     */
+    public String getCurrentTask() {
+        return CURRENT_TASK.get();
     }
 
     /**
-     * 获取数字员工名称
+     * 获取当前任务下工具对应的数字员工名称，生成未完成时等待
      */
     public String getDigitalEmployee(String toolName) {
         if (StringUtils.isEmpty(toolName)) {
             return null;
         }
-
-        if (digitalEmployees == null) {
+        String task = CURRENT_TASK.get();
+        CompletableFuture<JSONObject> future = task != null ? digitalEmployees.get(task) : null;
+        if (future == null) {
+            return null;
+        }
+        try {
+            JSONObject digitalEmployee = future.get(DIGITAL_EMPLOYEE_WAIT_SECONDS, TimeUnit.SECONDS);
+            return digitalEmployee != null ? digitalEmployee.getString(toolName) : null;
+        } catch (TimeoutException e) {
+            log.warn("requestId:{} task:{} digital employee not ready", agentContext.getRequestId(), task);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
             return null;
         }
-
-        return (String) digitalEmployees.get(toolName);
     }
 }
\ No newline at end of file
@@ -6,16 +6,17 @@ import com.jd.genie.agent.dto.CodeInterpreterRequest;
 import com.jd.genie.agent.dto.CodeInterpreterResponse;
 import com.jd.genie.agent.dto.File;
 import com.jd.genie.agent.tool.BaseTool;
+import com.jd.genie.agent.util.OkHttpUtil;
 import com.jd.genie.agent.util.SpringContextHolder;
+import com.jd.genie.agent.util.SseFrameReader;
 import com.jd.genie.config.GenieConfig;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.*;
 import org.springframework.context.ApplicationContext;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
@@ -113,7 +114,10 @@ public class CodeInterpreterTool implements BaseTool {
                     .post(body);
             Request request = requestBuilder.build();
 
-            client.newCall(request).enqueue(new Callback() {
+            // 数字员工按当前任务取得，回调线程中无法确定任务，需在发起请求前获取
+            String task = agentContext.getToolCollection().getCurrentTask();
+            String digitalEmployee = agentContext.getToolCollection().getDigitalEmployee(getName());
+            OkHttpUtil.enqueue(client.newCall(request), new Callback() {
                 @Override
                 public void onFailure(Call call, IOException e) {
                     log.error("{} code_interpreter on failure", agentContext.getRequestId(), e);
@@ -134,38 +138,33 @@ public class CodeInterpreterTool implements BaseTool {
                             return;
                         }
 
-                        String line;
-                        BufferedReader reader = new BufferedReader(new InputStreamReader(responseBody.byteStream()));
-                        while ((line = reader.readLine()) != null) {
-                            if (line.startsWith("data: ")) {
-                                String data = line.substring(6);
-                                if (data.equals("[DONE]")) {
-                                    break;
-                                }
-                                if (data.startsWith("heartbeat")) {
-                                    continue;
-                                }
-                                log.info("{} code_interpreter recv data: {}", agentContext.getRequestId(), data);
-                                codeResponse = JSONObject.parseObject(data, CodeInterpreterResponse.class);
-                                if (Objects.nonNull(codeResponse.getFileInfo()) && !codeResponse.getFileInfo().isEmpty()) {
-                                    for (CodeInterpreterResponse.FileInfo fileInfo : codeResponse.getFileInfo()) {
-                                        File file = File.builder()
-                                                .fileName(fileInfo.getFileName())
-                                                .ossUrl(fileInfo.getOssUrl())
-                                                .domainUrl(fileInfo.getDomainUrl())
-                                                .fileSize(fileInfo.getFileSize())
-                                                .description(fileInfo.getFileName()) // fileName用作描述
-                                                .isInternalFile(false)
-                                                .build();
-                                        agentContext.getProductFiles().add(file);
-                                        agentContext.getTaskProductFiles().add(file);
-                                    }
+                        SseFrameReader reader = new SseFrameReader(responseBody.source());
+                        while (reader.next()) {
+                            if (reader.isDone()) {
+                                break;
+                            }
+                            if (reader.startsWith("heartbeat")) {
+                                continue;
+                            }
+                            log.info("{} code_interpreter recv data: {}", agentContext.getRequestId(), reader.asString());
+                            codeResponse = JSONObject.parseObject(reader.buffer(), 0, reader.length(), StandardCharsets.UTF_8, CodeInterpreterResponse.class);
+                            if (Objects.nonNull(codeResponse.getFileInfo()) && !codeResponse.getFileInfo().isEmpty()) {
+                                for (CodeInterpreterResponse.FileInfo fileInfo : codeResponse.getFileInfo()) {
+                                    File file = File.builder()
+                                            .fileName(fileInfo.getFileName())
+                                            .ossUrl(fileInfo.getOssUrl())
+                                            .domainUrl(fileInfo.getDomainUrl())
+                                            .fileSize(fileInfo.getFileSize())
+                                            .description(fileInfo.getFileName()) // fileName用作描述
+                                            .isInternalFile(false)
+                                            .build();
+                                    agentContext.getProductFiles().add(file);
+                                    agentContext.getTaskProductFiles().add(file);
                                 }
-                                String digitalEmployee = agentContext.getToolCollection().getDigitalEmployee(getName());
-                                log.info("requestId:{} task:{} toolName:{} digitalEmployee:{}", agentContext.getRequestId(),
-                                        agentContext.getToolCollection().getCurrentTask(), getName(), digitalEmployee);
-                                agentContext.getPrinter().send("code", codeResponse, digitalEmployee);
                             }
+                            log.info("requestId:{} task:{} toolName:{} digitalEmployee:{}", agentContext.getRequestId(),
+                                    task, getName(), digitalEmployee);
+                            agentContext.getPrinter().send("code", codeResponse, digitalEmployee);
                         }
 
                     } catch (Exception e) {
@@ -189,7 +188,7 @@ public class CodeInterpreterTool implements BaseTool {
                     }
                     future.complete(output.toString());
                 }
-            });
+            }, agentContext.getCancellationToken());
         } catch (Exception e) {
             log.error("{} code_interpreter request error", agentContext.getRequestId(), e);
             future.completeExceptionally(e);
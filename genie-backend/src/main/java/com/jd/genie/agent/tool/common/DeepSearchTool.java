@@ -6,8 +6,11 @@ import com.jd.genie.agent.agent.AgentContext;
 import com.jd.genie.agent.dto.DeepSearchRequest;
 import com.jd.genie.agent.dto.DeepSearchrResponse;
 import com.jd.genie.agent.dto.FileRequest;
+import com.jd.genie.agent.printer.StreamCoalescer;
 import com.jd.genie.agent.tool.BaseTool;
+import com.jd.genie.agent.util.OkHttpUtil;
 import com.jd.genie.agent.util.SpringContextHolder;
+import com.jd.genie.agent.util.SseFrameReader;
 import com.jd.genie.agent.util.StringUtil;
 import com.jd.genie.config.GenieConfig;
 import lombok.Data;
@@ -15,15 +18,16 @@ import lombok.extern.slf4j.Slf4j;
 import okhttp3.*;
 import org.springframework.context.ApplicationContext;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Slf4j
 @Data
@@ -127,11 +131,9 @@ public class DeepSearchTool implements BaseTool {
                     .post(body);
             Request request = requestBuilder.build();
 
-            String[] interval = genieConfig.getMessageInterval().getOrDefault("search", "5,20").split(",");
-            int firstInterval = Integer.parseInt(interval[0]);
-            int sendInterval = Integer.parseInt(interval[1]);
-
-            client.newCall(request).enqueue(new Callback() {
+            // 数字员工按当前任务取得，回调线程中无法确定任务，需在发起请求前获取
+            String digitalEmployee = agentContext.getToolCollection().getDigitalEmployee(getName());
+            OkHttpUtil.enqueue(client.newCall(request), new Callback() {
                 @Override
                 public void onFailure(Call call, IOException e) {
                     log.error("{} deep_search on failure", agentContext.getRequestId(), e);
@@ -150,88 +152,91 @@ public class DeepSearchTool implements BaseTool {
                         }
 
                         int index = 1;
-                        StringBuilder stringBuilderIncr = new StringBuilder();
+                        StreamCoalescer coalescer = null;
+                        // 最近一帧报告，合并后的增量沿用其字段
+                        AtomicReference<DeepSearchrResponse> reportFrame = new AtomicReference<>();
                         StringBuilder stringBuilderAll = new StringBuilder();
-                        String line;
-                        BufferedReader reader = new BufferedReader(new InputStreamReader(responseBody.byteStream()));
-                        String digitalEmployee = agentContext.getToolCollection().getDigitalEmployee(getName());
+                        SseFrameReader reader = new SseFrameReader(responseBody.source());
                         String result = "搜索结果为空"; // 默认输出
                         String messageId = "";
-                        while ((line = reader.readLine()) != null) {
-                            if (line.startsWith("data: ")) {
-                                String data = line.substring(6);
-                                if (data.equals("[DONE]")) {
-                                    break;
+                        while (reader.next()) {
+                            if (reader.isDone()) {
+                                break;
+                            }
+                            if (reader.startsWith("heartbeat")) {
+                                continue;
+                            }
+                            if (index == 1 || index % 100 == 0) {
+                                log.info("{} deep_search recv data: {}", agentContext.getRequestId(), reader.asString());
+                            }
+                            DeepSearchrResponse searchResponse = JSONObject.parseObject(reader.buffer(), 0, reader.length(), StandardCharsets.UTF_8, DeepSearchrResponse.class);
+                            FileTool fileTool = new FileTool();
+                            fileTool.setAgentContext(agentContext);
+                            // 上传搜索内容到文件中
+                            if (searchResponse.getIsFinal()) {
+                                if (Objects.nonNull(coalescer)) {
+                                    coalescer.close();
                                 }
-                                if (data.startsWith("heartbeat")) {
-                                    continue;
+                                if (agentContext.getIsStream()) {
+                                    searchResponse.setAnswer(stringBuilderAll.toString());
                                 }
-                                if (index == 1 || index % 100 == 0) {
-                                    log.info("{} deep_search recv data: {}", agentContext.getRequestId(), data);
+                                if (searchResponse.getAnswer().isEmpty()) {
+                                    log.error("{} deep search answer empty", agentContext.getRequestId());
+                                    break;
                                 }
-                                DeepSearchrResponse searchResponse = JSONObject.parseObject(data, DeepSearchrResponse.class);
-                                FileTool fileTool = new FileTool();
-                                fileTool.setAgentContext(agentContext);
-                                // 上传搜索内容到文件中
-                                if (searchResponse.getIsFinal()) {
-                                    if (agentContext.getIsStream()) {
-                                        searchResponse.setAnswer(stringBuilderAll.toString());
-                                    }
-                                    if (searchResponse.getAnswer().isEmpty()) {
-                                        log.error("{} deep search answer empty", agentContext.getRequestId());
-                                        break;
-                                    }
-                                    String fileName = StringUtil.removeSpecialChars(searchResponse.getQuery() + "的搜索结果.md");
-                                    String fileDesc = searchResponse.getAnswer()
-                                            .substring(0, Math.min(searchResponse.getAnswer().length(), genieConfig.getDeepSearchToolFileDescTruncateLen())) + "...";
+                                String fileName = StringUtil.removeSpecialChars(searchResponse.getQuery() + "的搜索结果.md");
+                                String fileDesc = searchResponse.getAnswer()
+                                        .substring(0, Math.min(searchResponse.getAnswer().length(), genieConfig.getDeepSearchToolFileDescTruncateLen())) + "...";
+                                FileRequest fileRequest = FileRequest.builder()
+                                        .requestId(agentContext.getRequestId())
+                                        .fileName(fileName)
+                                        .description(fileDesc)
+                                        .content(searchResponse.getAnswer())
+                                        .build();
+                                fileTool.uploadFile(fileRequest, false, false);
+                                result = searchResponse.getAnswer().
+                                        substring(0, Math.min(searchResponse.getAnswer().length(), genieConfig.getDeepSearchToolMessageTruncateLen()));
+
+                                agentContext.getPrinter().send(messageId, "deep_search", searchResponse, digitalEmployee, true);
+
+                            } else {
+                                Map<String, Object> contentMap = new HashMap<>();
+                                for (int idx = 0; idx < searchResponse.getSearchResult().getQuery().size(); idx++) {
+                                    contentMap.put(searchResponse.getSearchResult().getQuery().get(idx), searchResponse.getSearchResult().getDocs().get(idx));
+                                }
+
+                                if ("extend".equals(searchResponse.getMessageType())) {
+                                    messageId = StringUtil.getUUID();
+                                    searchResponse.setSearchFinish(false);
+                                    agentContext.getPrinter().send(messageId, "deep_search", searchResponse, digitalEmployee, true);
+                                } else if ("search".equals(searchResponse.getMessageType())) {
+                                    searchResponse.setSearchFinish(true);
+                                    agentContext.getPrinter().send(messageId, "deep_search", searchResponse, digitalEmployee, true);
                                     FileRequest fileRequest = FileRequest.builder()
                                             .requestId(agentContext.getRequestId())
-                                            .fileName(fileName)
-                                            .description(fileDesc)
-                                            .content(searchResponse.getAnswer())
+                                            .fileName(searchResponse.getQuery() + "_search_result.txt")
+                                            .description(searchResponse.getQuery() + "...")
+                                            .content(JSON.toJSONString(contentMap))
                                             .build();
-                                    fileTool.uploadFile(fileRequest, false, false);
-                                    result = searchResponse.getAnswer().
-                                            substring(0, Math.min(searchResponse.getAnswer().length(), genieConfig.getDeepSearchToolMessageTruncateLen()));
-
-                                    agentContext.getPrinter().send(messageId, "deep_search", searchResponse, digitalEmployee, true);
-
-                                } else {
-                                    Map<String, Object> contentMap = new HashMap<>();
-                                    for (int idx = 0; idx < searchResponse.getSearchResult().getQuery().size(); idx++) {
-                                        contentMap.put(searchResponse.getSearchResult().getQuery().get(idx), searchResponse.getSearchResult().getDocs().get(idx));
-                                    }
-
-                                    if ("extend".equals(searchResponse.getMessageType())) {
+                                    fileTool.uploadFile(fileRequest, false, true);
+                                } else if ("report".equals(searchResponse.getMessageType())) {
+                                    if (index == 1) {
                                         messageId = StringUtil.getUUID();
-                                        searchResponse.setSearchFinish(false);
-                                        agentContext.getPrinter().send(messageId, "deep_search", searchResponse, digitalEmployee, true);
-                                    } else if ("search".equals(searchResponse.getMessageType())) {
-                                        searchResponse.setSearchFinish(true);
-                                        agentContext.getPrinter().send(messageId, "deep_search", searchResponse, digitalEmployee, true);
-                                        FileRequest fileRequest = FileRequest.builder()
-                                                .requestId(agentContext.getRequestId())
-                                                .fileName(searchResponse.getQuery() + "_search_result.txt")
-                                                .description(searchResponse.getQuery() + "...")
-                                                .content(JSON.toJSONString(contentMap))
-                                                .build();
-                                        fileTool.uploadFile(fileRequest, false, true);
-                                    } else if ("report".equals(searchResponse.getMessageType())) {
-                                        if (index == 1) {
-                                            messageId = StringUtil.getUUID();
-                                        }
-                                        stringBuilderIncr.append(searchResponse.getAnswer());
-                                        stringBuilderAll.append(searchResponse.getAnswer());
-                                        if (index == firstInterval || index % sendInterval == 0) {
-                                            searchResponse.setAnswer(stringBuilderIncr.toString());
-                                            agentContext.getPrinter().send(messageId, "deep_search", searchResponse, digitalEmployee, false);
-                                            stringBuilderIncr.setLength(0);
-                                        }
-                                        index++;
+                                        String reportMessageId = messageId;
+                                        coalescer = StreamCoalescer.create(agentContext, StreamCoalescer.SEARCH, text ->
+                                                agentContext.getPrinter().send(reportMessageId, "deep_search",
+                                                        reportFrame.get().toBuilder().answer(text).build(), digitalEmployee, false));
                                     }
+                                    reportFrame.set(searchResponse);
+                                    stringBuilderAll.append(searchResponse.getAnswer());
+                                    coalescer.append(searchResponse.getAnswer());
+                                    index++;
                                 }
                             }
                         }
+                        if (Objects.nonNull(coalescer)) {
+                            coalescer.close();
+                        }
                         future.complete(result);
 
                     } catch (Exception e) {
@@ -239,7 +244,7 @@ public class DeepSearchTool implements BaseTool {
                         future.completeExceptionally(e);
                     }
                 }
-            });
+            }, agentContext.getCancellationToken());
         } catch (Exception e) {
             log.error("{} deep_search request error", agentContext.getRequestId(), e);
             future.completeExceptionally(e);
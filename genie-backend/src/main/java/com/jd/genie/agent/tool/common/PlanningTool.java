@@ -63,6 +63,7 @@ public class PlanningTool implements BaseTool {
         properties.put("command", getCommandProperty());
         properties.put("title", getTitleProperty());
         properties.put("steps", getStepsProperty());
+        properties.put("dependencies", getDependenciesProperty());
         properties.put("step_index", getStepIndexProperty());
         properties.put("step_status", getStepStatusProperty());
         properties.put("step_notes", getStepNotesProperty());
@@ -94,6 +95,17 @@ public class PlanningTool implements BaseTool {
         return command;
     }
 
+    private Map<String, Object> getDependenciesProperty() {
+        Map<String, Object> indexes = new HashMap<>();
+        indexes.put("type", "array");
+        indexes.put("items", Map.of("type", "integer"));
+        Map<String, Object> dependencies = new HashMap<>();
+        dependencies.put("type", "array");
+        dependencies.put("items", indexes);
+        dependencies.put("description", "Optional, one entry per step: indexes (0-based) of the steps that must be completed before this step starts. Steps without pending dependencies run in parallel.");
+        return dependencies;
+    }
+
     private Map<String, Object> getStepIndexProperty() {
         Map<String, Object> stepIndex = new HashMap<>();
         stepIndex.put("type", "integer");
@@ -149,7 +161,7 @@ public class PlanningTool implements BaseTool {
             throw new IllegalStateException("A plan already exists. Delete the current plan first.");
         }
 
-        plan = Plan.create(title, steps);
+        plan = Plan.create(title, steps, parseDependencies(params.get("dependencies")));
         return "我已创建plan";
     }
 
@@ -161,7 +173,7 @@ public class PlanningTool implements BaseTool {
             throw new IllegalStateException("No plan exists. Create a plan first.");
         }
 
-        plan.update(title, steps);
+        plan.update(title, steps, parseDependencies(params.get("dependencies")));
         return "我已更新plan";
     }
 
@@ -194,6 +206,32 @@ public class PlanningTool implements BaseTool {
         return "我已更新plan为完成状态";
     }
 
+    /**
+     * 解析步骤依赖，格式不符时忽略，按步骤顺序推导
+     */
+    private List<List<Integer>> parseDependencies(Object value) {
+        if (!(value instanceof List)) {
+            return null;
+        }
+        List<List<Integer>> dependencies = new ArrayList<>();
+        for (Object item : (List<?>) value) {
+            List<Integer> indexes = new ArrayList<>();
+            if (item instanceof List) {
+                for (Object index : (List<?>) item) {
+                    if (index instanceof Number) {
+                        indexes.add(((Number) index).intValue());
+                    } else if (index instanceof String && ((String) index).trim().matches("\\d+")) {
+                        indexes.add(Integer.parseInt(((String) index).trim()));
+                    }
+                }
+            } else if (item instanceof Number) {
+                indexes.add(((Number) item).intValue());
+            }
+            dependencies.add(indexes);
+        }
+        return dependencies;
+    }
+
     public void stepPlan() {
         plan.stepPlan();
     }
@@ -5,8 +5,11 @@ import com.jd.genie.agent.agent.AgentContext;
 import com.jd.genie.agent.dto.CodeInterpreterRequest;
 import com.jd.genie.agent.dto.CodeInterpreterResponse;
 import com.jd.genie.agent.dto.File;
+import com.jd.genie.agent.printer.StreamCoalescer;
 import com.jd.genie.agent.tool.BaseTool;
+import com.jd.genie.agent.util.OkHttpUtil;
 import com.jd.genie.agent.util.SpringContextHolder;
+import com.jd.genie.agent.util.SseFrameReader;
 import com.jd.genie.agent.util.StringUtil;
 import com.jd.genie.config.GenieConfig;
 import lombok.Data;
@@ -14,13 +17,13 @@ import lombok.extern.slf4j.Slf4j;
 import okhttp3.*;
 import org.springframework.context.ApplicationContext;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -135,10 +138,9 @@ public class ReportTool implements BaseTool {
                     .post(body);
             Request request = requestBuilder.build();
 
-            String[] interval = genieConfig.getMessageInterval().getOrDefault("report", "1,4").split(",");
-            int firstInterval = Integer.parseInt(interval[0]);
-            int sendInterval = Integer.parseInt(interval[1]);
-            client.newCall(request).enqueue(new Callback() {
+            // 数字员工按当前任务取得，回调线程中无法确定任务，需在发起请求前获取
+            String digitalEmployee = agentContext.getToolCollection().getDigitalEmployee(getName());
+            OkHttpUtil.enqueue(client.newCall(request), new Callback() {
                 @Override
                 public void onFailure(Call call, IOException e) {
                     log.error("{} report_tool on failure", agentContext.getRequestId(), e);
@@ -161,52 +163,47 @@ public class ReportTool implements BaseTool {
                         }
 
                         int index = 1;
-                        StringBuilder stringBuilderIncr = new StringBuilder();
-                        String line;
                         String messageId = StringUtil.getUUID();
-                        // 获取数字人名称
-                        String digitalEmployee = agentContext.getToolCollection().getDigitalEmployee(getName());
-                        BufferedReader reader = new BufferedReader(new InputStreamReader(responseBody.byteStream()));
-                        while ((line = reader.readLine()) != null) {
-                            if (line.startsWith("data: ")) {
-                                String data = line.substring(6);
-                                if (data.equals("[DONE]")) {
-                                    break;
-                                }
-                                if (index == 1 || index % 100 == 0) {
-                                    log.info("{} report_tool recv data: {}", agentContext.getRequestId(), data);
-                                }
-                                if (data.startsWith("heartbeat")) {
-                                    continue;
-                                }
-                                codeResponse = JSONObject.parseObject(data, CodeInterpreterResponse.class);
-                                if (codeResponse.getIsFinal()) {
-                                    // report_tool 只会输出一个文件，使用模型输出的文件名和描述
-                                    if (Objects.nonNull(codeResponse.getFileInfo())) {
-                                        for (CodeInterpreterResponse.FileInfo fileInfo : codeResponse.getFileInfo()) {
-                                            File file = File.builder()
-                                                    .fileName(codeRequest.getFileName())
-                                                    .fileSize(fileInfo.getFileSize())
-                                                    .ossUrl(fileInfo.getOssUrl())
-                                                    .domainUrl(fileInfo.getDomainUrl())
-                                                    .description(codeRequest.getFileDescription())
-                                                    .isInternalFile(false)
-                                                    .build();
-                                            agentContext.getProductFiles().add(file);
-                                            agentContext.getTaskProductFiles().add(file);
-                                        }
-                                    }
-                                    agentContext.getPrinter().send(messageId, codeRequest.getFileType(), codeResponse, digitalEmployee, true);
-                                } else {
-                                    stringBuilderIncr.append(codeResponse.getData());
-                                    if (index == firstInterval || index % sendInterval == 0) {
-                                        codeResponse.setData(stringBuilderIncr.toString());
-                                        agentContext.getPrinter().send(messageId, codeRequest.getFileType(), codeResponse, digitalEmployee, false);
-                                        stringBuilderIncr.setLength(0);
+                        // 最近一帧增量，合并后的增量沿用其字段
+                        AtomicReference<CodeInterpreterResponse> dataFrame = new AtomicReference<>();
+                        StreamCoalescer coalescer = StreamCoalescer.create(agentContext, StreamCoalescer.REPORT, text ->
+                                agentContext.getPrinter().send(messageId, codeRequest.getFileType(),
+                                        dataFrame.get().toBuilder().data(text).build(), digitalEmployee, false));
+                        SseFrameReader reader = new SseFrameReader(responseBody.source());
+                        while (reader.next()) {
+                            if (reader.isDone()) {
+                                break;
+                            }
+                            if (index == 1 || index % 100 == 0) {
+                                log.info("{} report_tool recv data: {}", agentContext.getRequestId(), reader.asString());
+                            }
+                            if (reader.startsWith("heartbeat")) {
+                                continue;
+                            }
+                            codeResponse = JSONObject.parseObject(reader.buffer(), 0, reader.length(), StandardCharsets.UTF_8, CodeInterpreterResponse.class);
+                            if (codeResponse.getIsFinal()) {
+                                coalescer.close();
+                                // report_tool 只会输出一个文件，使用模型输出的文件名和描述
+                                if (Objects.nonNull(codeResponse.getFileInfo())) {
+                                    for (CodeInterpreterResponse.FileInfo fileInfo : codeResponse.getFileInfo()) {
+                                        File file = File.builder()
+                                                .fileName(codeRequest.getFileName())
+                                                .fileSize(fileInfo.getFileSize())
+                                                .ossUrl(fileInfo.getOssUrl())
+                                                .domainUrl(fileInfo.getDomainUrl())
+                                                .description(codeRequest.getFileDescription())
+                                                .isInternalFile(false)
+                                                .build();
+                                        agentContext.getProductFiles().add(file);
+                                        agentContext.getTaskProductFiles().add(file);
                                     }
                                 }
-                                index++;
+                                agentContext.getPrinter().send(messageId, codeRequest.getFileType(), codeResponse, digitalEmployee, true);
+                            } else {
+                                dataFrame.set(codeResponse);
+                                coalescer.append(codeResponse.getData());
                             }
+                            index++;
                         }
                     } catch (Exception e) {
                         log.error("{} report_tool request error", agentContext.getRequestId(), e);
@@ -217,7 +214,7 @@ public class ReportTool implements BaseTool {
                     String result = Objects.nonNull(codeResponse.getData()) && !codeResponse.getData().isEmpty() ? codeResponse.getData() : codeResponse.getCodeOutput();
                     future.complete(result);
                 }
-            });
+            }, agentContext.getCancellationToken());
         } catch (Exception e) {
             log.error("{} report_tool request error", agentContext.getRequestId(), e);
             future.completeExceptionally(e);
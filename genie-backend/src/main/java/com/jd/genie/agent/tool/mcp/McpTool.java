@@ -13,6 +13,7 @@ import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.Map;
+import java.util.Objects;
 
 @Slf4j
 @Data
@@ -70,7 +71,8 @@ public class McpTool implements BaseTool {
             log.info("list tool request: {} response: {}", JSON.toJSONString(mcpToolRequest), response);
             return response;
         } catch (Exception e) {
-            log.error("{} list tool error", agentContext.getRequestId(), e);
+            // 工具发现在后台执行，没有 agentContext
+            log.error("list tool error, mcp server {}", mcpServerUrl, e);
         }
         return "";
     }
@@ -85,7 +87,8 @@ public class McpTool implements BaseTool {
                     .server_url(mcpServerUrl)
                     .arguments(params)
                     .build();
-            String response = OkHttpUtil.postJson(mcpClientUrl, JSON.toJSONString(mcpToolRequest), null, 30L);
+            String response = OkHttpUtil.postJson(mcpClientUrl, JSON.toJSONString(mcpToolRequest), null, 30L,
+                    Objects.nonNull(agentContext) ? agentContext.getCancellationToken() : null);
             log.info("call tool request: {} response: {}", JSON.toJSONString(mcpToolRequest), response);
             return response;
         } catch (Exception e) {
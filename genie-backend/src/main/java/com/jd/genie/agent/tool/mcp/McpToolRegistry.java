@@ -0,0 +1,186 @@
+package com.jd.genie.agent.tool.mcp;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.TypeReference;
+import com.jd.genie.agent.dto.tool.McpToolInfo;
+import com.jd.genie.agent.util.ThreadUtil;
+import com.jd.genie.config.GenieConfig;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * MCP 工具注册表
+ * 启动时并行拉取各 MCP Server 的工具列表并缓存，后台按 TTL 刷新；拉取失败时保留旧结果并指数退避重试
+ * 请求链路只读缓存，仅等待启动时的首次拉取；首次拉取失败后的重试期间该 Server 不返回工具，请求不阻塞
+ */
+@Slf4j
+@Component
+@DependsOn("springContextHolder")
+public class McpToolRegistry {
+    private static final String POOL = "mcp";
+    private static final long TICK_SECONDS = 5L;
+    private static final long MIN_BACKOFF_MILLIS = 5_000L;
+
+    @Autowired
+    private GenieConfig genieConfig;
+
+    // 启动时按配置顺序初始化，之后只读
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            new BasicThreadFactory.Builder().namingPattern("genie-mcp-refresh-%d").daemon(true).build());
+
+    @PostConstruct
+    public void init() {
+        for (String mcpServer : mcpServers()) {
+            entries.put(mcpServer, new Entry());
+        }
+        if (entries.isEmpty()) {
+            return;
+        }
+        refreshAll(true);
+        scheduler.scheduleWithFixedDelay(() -> refreshAll(false), TICK_SECONDS, TICK_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 获取全部 MCP 工具，按配置的 Server 顺序返回
+     */
+    public List<McpToolInfo> getTools(String requestId) {
+        List<McpToolInfo> tools = new ArrayList<>();
+        for (Map.Entry<String, Entry> item : entries.entrySet()) {
+            Entry entry = item.getValue();
+            List<McpToolInfo> cached = entry.tools;
+            if (Objects.isNull(cached) && entry.failures == 0) {
+                // 首次拉取尚未完成，等待本次拉取结果；失败后的重试不等待
+                CompletableFuture<Void> inflight = entry.inflight;
+                if (Objects.nonNull(inflight)) {
+                    try {
+                        inflight.join();
+                    } catch (Exception e) {
+                        log.error("{} mcp server {} discovery failed", requestId, item.getKey(), e);
+                    }
+                }
+                cached = entry.tools;
+            }
+            if (Objects.isNull(cached)) {
+                log.error("{} mcp server {} invalid", requestId, item.getKey());
+                continue;
+            }
+            tools.addAll(cached);
+        }
+        return tools;
+    }
+
+    /**
+     * 刷新到期的 Server，force 为 true 时忽略 TTL
+     */
+    private void refreshAll(boolean force) {
+        long now = System.currentTimeMillis();
+        long ttlMillis = TimeUnit.SECONDS.toMillis(genieConfig.getMcpToolTtl());
+        entries.forEach((mcpServer, entry) -> {
+            synchronized (entry) {
+                if ((Objects.nonNull(entry.inflight) && !entry.inflight.isDone()) || now < entry.nextAttemptAt) {
+                    return;
+                }
+                if (!force && Objects.nonNull(entry.tools) && now - entry.loadedAt < ttlMillis) {
+                    return;
+                }
+                entry.inflight = ThreadUtil.submit(POOL, () -> discover(mcpServer))
+                        .handle((tools, e) -> {
+                            onDiscovered(mcpServer, entry, tools, e);
+                            return null;
+                        });
+            }
+        });
+    }
+
+    private void onDiscovered(String mcpServer, Entry entry, List<McpToolInfo> tools, Throwable e) {
+        synchronized (entry) {
+            long now = System.currentTimeMillis();
+            if (Objects.isNull(e) && Objects.nonNull(tools)) {
+                entry.tools = tools;
+                entry.loadedAt = now;
+                entry.failures = 0;
+                entry.nextAttemptAt = 0L;
+                log.info("mcp server {} loaded {} tools", mcpServer, tools.size());
+            } else {
+                entry.failures++;
+                long maxBackoff = TimeUnit.SECONDS.toMillis(genieConfig.getMcpToolMaxBackoff());
+                long backoff = Math.min(maxBackoff, MIN_BACKOFF_MILLIS << Math.min(entry.failures - 1, 16));
+                entry.nextAttemptAt = now + backoff;
+                log.error("mcp server {} discovery failed {} times, retry in {} ms, keep {} cached tools", mcpServer,
+                        entry.failures, backoff, Objects.nonNull(entry.tools) ? entry.tools.size() : 0, e);
+            }
+        }
+    }
+
+    /**
+     * 拉取并解析单个 Server 的工具列表，失败返回 null
+     */
+    private List<McpToolInfo> discover(String mcpServer) {
+        String listToolResult = new McpTool().listTool(mcpServer);
+        if (StringUtils.isEmpty(listToolResult)) {
+            return null;
+        }
+        JSONObject resp = JSON.parseObject(listToolResult);
+        if (resp.getIntValue("code") != 200) {
+            log.error("mcp serve {} code: {}, message: {}", mcpServer, resp.getIntValue("code"), resp.getString("message"));
+            return null;
+        }
+        JSONArray data = resp.getJSONArray("data");
+        if (Objects.isNull(data) || data.isEmpty()) {
+            log.error("mcp serve {} code: {}, message: {}", mcpServer, resp.getIntValue("code"), resp.getString("message"));
+            return null;
+        }
+        List<McpToolInfo> tools = new ArrayList<>(data.size());
+        for (int i = 0; i < data.size(); i++) {
+            JSONObject tool = data.getJSONObject(i);
+            String inputSchema = tool.getString("inputSchema");
+            Map<String, Object> schema = JSON.parseObject(inputSchema, new TypeReference<Map<String, Object>>() {
+            });
+            tools.add(McpToolInfo.builder()
+                    .mcpServerUrl(mcpServer)
+                    .name(tool.getString("name"))
+                    .desc(tool.getString("description"))
+                    .parameters(inputSchema)
+                    .inputSchema(Objects.nonNull(schema) ? Collections.unmodifiableMap(schema) : null)
+                    .build());
+        }
+        return Collections.unmodifiableList(tools);
+    }
+
+    private List<String> mcpServers() {
+        List<String> mcpServers = new ArrayList<>();
+        if (Objects.nonNull(genieConfig.getMcpServerUrlArr())) {
+            for (String mcpServer : genieConfig.getMcpServerUrlArr()) {
+                if (StringUtils.isNotBlank(mcpServer) && !mcpServers.contains(mcpServer)) {
+                    mcpServers.add(mcpServer);
+                }
+            }
+        }
+        return mcpServers;
+    }
+
+    private static class Entry {
+        private volatile List<McpToolInfo> tools;
+        private volatile CompletableFuture<Void> inflight;
+        private long loadedAt;
+        private long nextAttemptAt;
+        private volatile int failures;
+    }
+}
@@ -0,0 +1,81 @@
+package com.jd.genie.agent.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 请求级取消令牌：取消后智能体在步骤之间停止，已注册的回调立即执行一次
+ * 在途的 OkHttp 调用（LLM、工具）注册 Call.cancel，取消时立即中断，释放线程与上游配额
+ */
+@Slf4j
+public class CancellationToken {
+    private final List<Runnable> callbacks = new ArrayList<>();
+    private volatile boolean cancelled;
+    private volatile String reason;
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * 取消请求，重复调用无效
+     */
+    public void cancel(String reason) {
+        List<Runnable> toRun;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            this.reason = reason;
+            cancelled = true;
+            toRun = new ArrayList<>(callbacks);
+            callbacks.clear();
+        }
+        for (Runnable callback : toRun) {
+            run(callback);
+        }
+    }
+
+    /**
+     * 注册取消回调，已取消时立即执行
+     *
+     * @return 注销回调，被保护的操作结束后调用，避免长任务累积回调
+     */
+    public Registration onCancel(Runnable callback) {
+        synchronized (this) {
+            if (!cancelled) {
+                callbacks.add(callback);
+                return () -> remove(callback);
+            }
+        }
+        run(callback);
+        return () -> {
+        };
+    }
+
+    private synchronized void remove(Runnable callback) {
+        callbacks.remove(callback);
+    }
+
+    /**
+     * 取消回调的注册，可用于 try-with-resources
+     */
+    public interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static void run(Runnable callback) {
+        try {
+            callback.run();
+        } catch (Exception e) {
+            log.error("cancel callback failed", e);
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.jd.genie.agent.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 文本脱敏器，由敏感词配置一次性编译，线程安全
+ * 内置规则：邮箱单独扫描，只替换其中的 @；身份证号、手机号、银行卡号合并为一个正则，以环视判断边界，
+ * 邮箱本地部分中的号码同样脱敏（与原先逐条规则先后替换的结果一致）；"(?:[^X]|^)词[^X]" 形式的敏感词与纯文本敏感词
+ * 进入多模式自动机一次扫描；其余配置按正则预编译。所有命中按起始位置从左到右写入同一个输出缓冲，
+ * 重叠时保留先出现的命中（起点相同则内置规则优先）
+ */
+public class Desensitizer implements UnaryOperator<String> {
+    private static final Pattern EMAIL = Pattern.compile("[a-zA-Z0-9\\._%\\+\\-]+@[a-zA-Z0-9\\.-]+\\.[a-zA-Z]{2,}");
+    private static final Pattern NUMBER = Pattern.compile(
+            "(?<![\\dA-Za-z_])(?:"
+                    + "(?<id>(?:[1-6][1-7]|50|71|81|82)\\d{4}(?:19|20)\\d{2}(?:0[1-9]|10|11|12)(?:[0-2][1-9]|10|20|30|31)\\d{3}[0-9Xx])"
+                    + "|(?<phone>1[3456789]\\d{9})"
+                    + "|(?<bankcard>62(?:\\d{14}|\\d{17}))"
+                    + ")(?![\\dA-Za-z_])");
+    // (?:[^X]|^)词[^X]，词中不含正则元字符时按字面量匹配
+    private static final Pattern BOUNDED_WORD = Pattern.compile("^\\(\\?:\\[\\^([^\\]]+)\\]\\|\\^\\)([^\\\\.\\[\\]{}()*+?^$|]+)\\[\\^\\1\\]$");
+    private static final String INTERNAL_EMAIL = "@jd.com";
+
+    private final Map<String, String> patterns;
+    private final WordMatcher words = new WordMatcher();
+    private final List<RegexRule> regexRules = new ArrayList<>();
+
+    private Desensitizer(Map<String, String> patterns) {
+        this.patterns = patterns;
+        for (Map.Entry<String, String> entry : patterns.entrySet()) {
+            String pattern = entry.getKey();
+            String wordMapping = entry.getValue();
+            int startIndex = pattern.indexOf("^)") + 2;
+            int endIndex = pattern.lastIndexOf("[^");
+            if (startIndex + 1 < endIndex) {
+                Matcher matcher = BOUNDED_WORD.matcher(pattern);
+                if (matcher.matches()) {
+                    words.add(matcher.group(2), wordMapping, Pattern.compile("[^" + matcher.group(1) + "]"));
+                } else {
+                    regexRules.add(new RegexRule(Pattern.compile(pattern), pattern.substring(startIndex, endIndex), wordMapping));
+                }
+            } else if (!pattern.isEmpty()) {
+                words.add(pattern, wordMapping, null);
+            }
+        }
+        words.build();
+    }
+
+    /**
+     * 编译敏感词配置，key 为敏感词正则或字面量，value 为替换词
+     */
+    public static Desensitizer compile(Map<String, String> patterns) {
+        return new Desensitizer(patterns);
+    }
+
+    public Map<String, String> getPatterns() {
+        return patterns;
+    }
+
+    @Override
+    public String apply(String content) {
+        return desensitize(content);
+    }
+
+    public String desensitize(String content) {
+        if (content == null || content.isEmpty()) {
+            return content;
+        }
+        List<Hit> hits = new ArrayList<>();
+        // 内部邮箱不处理
+        if (!content.contains(INTERNAL_EMAIL)) {
+            Matcher matcher = EMAIL.matcher(content);
+            while (matcher.find()) {
+                int at = content.indexOf('@', matcher.start());
+                hits.add(new Hit(at, at + 1, 0, "＠"));
+            }
+        }
+        // 号码按边界识别，文本中同一号码的其他出现位置（包括更长数字串内）同样脱敏
+        Map<String, String> numbers = new LinkedHashMap<>();
+        Matcher matcher = NUMBER.matcher(content);
+        while (matcher.find()) {
+            String snippet = matcher.group();
+            if (matcher.start("id") >= 0) {
+                numbers.putIfAbsent(snippet, snippet.substring(0, 12) + "✿✿✿✿✿✿");
+            } else if (matcher.start("phone") >= 0) {
+                numbers.putIfAbsent(snippet, snippet.substring(0, 3) + "✿✿✿✿" + snippet.substring(7));
+            } else if (StringUtil.luhnBankCardVerify(snippet)) {
+                numbers.putIfAbsent(snippet, snippet.substring(0, 12) + "✿✿✿✿✿✿");
+            }
+        }
+        for (Map.Entry<String, String> number : numbers.entrySet()) {
+            for (int from = content.indexOf(number.getKey()); from >= 0; from = content.indexOf(number.getKey(), from + 1)) {
+                hits.add(new Hit(from, from + number.getKey().length(), 0, number.getValue()));
+            }
+        }
+        words.find(content, hits);
+        for (RegexRule rule : regexRules) {
+            rule.find(content, hits);
+        }
+        if (hits.isEmpty()) {
+            return content;
+        }
+
+        hits.sort(Comparator.comparingInt((Hit hit) -> hit.start).thenComparingInt(hit -> hit.priority).thenComparingInt(hit -> -hit.end));
+        StringBuilder sb = new StringBuilder(content.length() + 16);
+        int cursor = 0;
+        for (Hit hit : hits) {
+            if (hit.start < cursor) {
+                continue;
+            }
+            sb.append(content, cursor, hit.start).append(hit.replacement);
+            cursor = hit.end;
+        }
+        return sb.append(content, cursor, content.length()).toString();
+    }
+
+    private static class Hit {
+        private final int start;
+        private final int end;
+        private final int priority;
+        private final String replacement;
+
+        private Hit(int start, int end, int priority, String replacement) {
+            this.start = start;
+            this.end = end;
+            this.priority = priority;
+            this.replacement = replacement;
+        }
+    }
+
+    /**
+     * 无法按字面量匹配的敏感词正则，保留原有替换方式：边界字符 + 替换词 + 边界字符
+     */
+    private static class RegexRule {
+        private final Pattern pattern;
+        private final String sensitiveWord;
+        private final String wordMapping;
+
+        private RegexRule(Pattern pattern, String sensitiveWord, String wordMapping) {
+            this.pattern = pattern;
+            this.sensitiveWord = sensitiveWord;
+            this.wordMapping = wordMapping;
+        }
+
+        private void find(String content, List<Hit> hits) {
+            Matcher matcher = pattern.matcher(content);
+            while (matcher.find()) {
+                String snippet = matcher.group();
+                if (snippet.isEmpty()) {
+                    continue;
+                }
+                String replacement = matcher.start() == 0 && snippet.startsWith(sensitiveWord)
+                        ? wordMapping + snippet.substring(snippet.length() - 1)
+                        : snippet.charAt(0) + wordMapping + snippet.substring(snippet.length() - 1);
+                hits.add(new Hit(matcher.start(), matcher.end(), 2, replacement));
+            }
+        }
+    }
+
+    /**
+     * 字面量敏感词的 Aho-Corasick 自动机，一次扫描找出全部敏感词
+     */
+    private static class WordMatcher {
+        private final List<Map<Character, Integer>> next = new ArrayList<>();
+        private final List<Integer> fail = new ArrayList<>();
+        private final List<List<Integer>> outputs = new ArrayList<>();
+        private final List<String> wordList = new ArrayList<>();
+        private final List<String> mappings = new ArrayList<>();
+        // 词前后字符需满足的边界，为 null 表示不限制
+        private final List<Pattern> boundaries = new ArrayList<>();
+
+        private WordMatcher() {
+            newNode();
+        }
+
+        private int newNode() {
+            next.add(new HashMap<>());
+            fail.add(0);
+            outputs.add(new ArrayList<>());
+            return next.size() - 1;
+        }
+
+        private void add(String word, String mapping, Pattern boundary) {
+            int node = 0;
+            for (int i = 0; i < word.length(); i++) {
+                Integer child = next.get(node).get(word.charAt(i));
+                if (child == null) {
+                    child = newNode();
+                    next.get(node).put(word.charAt(i), child);
+                }
+                node = child;
+            }
+            outputs.get(node).add(wordList.size());
+            wordList.add(word);
+            mappings.add(mapping);
+            boundaries.add(boundary);
+        }
+
+        private void build() {
+            Queue<Integer> queue = new ArrayDeque<>(next.get(0).values());
+            while (!queue.isEmpty()) {
+                int node = queue.poll();
+                for (Map.Entry<Character, Integer> entry : next.get(node).entrySet()) {
+                    int child = entry.getValue();
+                    int state = fail.get(node);
+                    while (state > 0 && !next.get(state).containsKey(entry.getKey())) {
+                        state = fail.get(state);
+                    }
+                    Integer target = next.get(state).get(entry.getKey());
+                    int childFail = target != null && target != child ? target : 0;
+                    fail.set(child, childFail);
+                    if (!outputs.get(childFail).isEmpty()) {
+                        List<Integer> merged = new ArrayList<>(outputs.get(child));
+                        merged.addAll(outputs.get(childFail));
+                        outputs.set(child, merged);
+                    }
+                    queue.add(child);
+                }
+            }
+            for (int i = 0; i < outputs.size(); i++) {
+                outputs.set(i, Collections.unmodifiableList(outputs.get(i)));
+            }
+        }
+
+        private void find(String content, List<Hit> hits) {
+            if (wordList.isEmpty()) {
+                return;
+            }
+            int state = 0;
+            for (int i = 0; i < content.length(); i++) {
+                char c = content.charAt(i);
+                while (state > 0 && !next.get(state).containsKey(c)) {
+                    state = fail.get(state);
+                }
+                state = next.get(state).getOrDefault(c, 0);
+                for (int index : outputs.get(state)) {
+                    int start = i + 1 - wordList.get(index).length();
+                    int end = i + 1;
+                    Pattern boundary = boundaries.get(index);
+                    if (boundary != null && !(isBoundary(boundary, content, start - 1, true) && isBoundary(boundary, content, end, false))) {
+                        continue;
+                    }
+                    hits.add(new Hit(start, end, 1, mappings.get(index)));
+                }
+            }
+        }
+
+        private static boolean isBoundary(Pattern boundary, String content, int index, boolean allowEdge) {
+            if (index < 0 || index >= content.length()) {
+                return allowEdge && index < 0;
+            }
+            return boundary.matcher(content.subSequence(index, index + 1)).matches();
+        }
+    }
+}
@@ -7,6 +7,8 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 
@@ -58,6 +60,35 @@ public class OkHttpUtil {
         return null;
     }
 
+    /**
+     * 发送可取消的 POST 请求，取消令牌触发时中断请求并抛出 IOException
+     *
+     * @param cancellationToken 请求级取消令牌，可为空
+     */
+    public static String postJson(String url, String jsonParams, Map<String, String> headers, Long timeout,
+                                  CancellationToken cancellationToken) throws IOException {
+        if (cancellationToken == null) {
+            return postJson(url, jsonParams, headers, timeout);
+        }
+        OkHttpClient client = createClient(timeout, timeout, timeout);
+        Request.Builder requestBuilder = new Request.Builder()
+                .url(url)
+                .post(RequestBody.create(jsonParams, JSON));
+        if (headers != null) {
+            headers.forEach(requestBuilder::addHeader);
+        }
+        Call call = client.newCall(requestBuilder.build());
+        CancellationToken.Registration registration = cancellationToken.onCancel(call::cancel);
+        try (Response response = call.execute()) {
+            if (response.isSuccessful() && response.body() != null) {
+                return response.body().string();
+            }
+        } finally {
+            registration.close();
+        }
+        return null;
+    }
+
     /**
      * 发送 SSE 流式请求
      *
@@ -80,7 +111,7 @@ public class OkHttpUtil {
 
         Request request = requestBuilder.build();
 
-        client.newCall(request).enqueue(new Callback() {
+        enqueue(client.newCall(request), new Callback() {
             @Override
             public void onFailure(Call call, IOException e) {
                 eventListener.onError(e);
@@ -103,6 +134,76 @@ public class OkHttpUtil {
         });
     }
 
+    /**
+     * 异步执行请求
+     * 平台线程模式下交给 OkHttp Dispatcher；虚拟线程模式下在 io 虚拟线程上阻塞读取，不占用 Dispatcher 线程
+     * 与 OkHttp 一致，onResponse/onFailure 只回调其一：回调自身抛出的异常只记录日志；io 池拒绝时回调 onFailure
+     *
+     * @param call     请求
+     * @param callback 回调，语义与 {@link Call#enqueue(Callback)} 一致
+     */
+    public static void enqueue(Call call, Callback callback) {
+        if (!ThreadUtil.isVirtual()) {
+            call.enqueue(callback);
+            return;
+        }
+        ThreadUtil.execute(ThreadUtil.IO, () -> {
+            Response response;
+            try {
+                response = call.execute();
+            } catch (IOException e) {
+                callback.onFailure(call, e);
+                return;
+            }
+            try (Response closeable = response) {
+                callback.onResponse(call, closeable);
+            } catch (Exception e) {
+                log.error("callback failure for {}", call.request().url(), e);
+            }
+        }).exceptionally(e -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof RejectedExecutionException) {
+                callback.onFailure(call, new IOException("io pool rejected request: " + call.request().url(), cause));
+            } else {
+                // onFailure 回调自身抛出的异常
+                log.error("callback failure for {}", call.request().url(), cause);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 异步执行可取消的请求：取消令牌触发时中断请求，回调结束后注销
+     *
+     * @param cancellationToken 请求级取消令牌，为空时等同于 {@link #enqueue(Call, Callback)}
+     */
+    public static void enqueue(Call call, Callback callback, CancellationToken cancellationToken) {
+        if (cancellationToken == null) {
+            enqueue(call, callback);
+            return;
+        }
+        CancellationToken.Registration registration = cancellationToken.onCancel(call::cancel);
+        enqueue(call, new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                try {
+                    callback.onFailure(call, e);
+                } finally {
+                    registration.close();
+                }
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                try {
+                    callback.onResponse(call, response);
+                } finally {
+                    registration.close();
+                }
+            }
+        });
+    }
+
     /**
      * SSE 事件监听器接口
      */
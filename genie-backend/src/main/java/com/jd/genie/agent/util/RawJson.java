@@ -0,0 +1,42 @@
+package com.jd.genie.agent.util;
+
+import com.alibaba.fastjson.serializer.JSONSerializable;
+import com.alibaba.fastjson.serializer.JSONSerializer;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * 预先序列化好的 JSON 片段，放入请求参数后由 Jackson / fastjson 原样写出，不再重复序列化
+ */
+public final class RawJson implements JsonSerializable, JSONSerializable {
+    private final String json;
+
+    public RawJson(String json) {
+        this.json = json;
+    }
+
+    @Override
+    public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+        gen.writeRawValue(json);
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator gen, SerializerProvider serializers, TypeSerializer typeSer) throws IOException {
+        serialize(gen, serializers);
+    }
+
+    @Override
+    public void write(JSONSerializer serializer, Object fieldName, Type fieldType, int features) {
+        serializer.out.write(json);
+    }
+
+    @Override
+    public String toString() {
+        return json;
+    }
+}
@@ -0,0 +1,124 @@
+package com.jd.genie.agent.util;
+
+import okio.BufferedSource;
+import okio.ByteString;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * SSE 帧读取器 - 直接基于 okio 字节流按行解析 data 帧
+ * 每个 data 行视为一个事件，数据复制到可复用的缓冲区中，避免逐行创建字符串
+ */
+public class SseFrameReader {
+    private static final ByteString DATA_PREFIX = ByteString.encodeUtf8("data:");
+    private static final byte[] DONE = "[DONE]".getBytes(StandardCharsets.UTF_8);
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+
+    private final BufferedSource source;
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    private int length;
+
+    public SseFrameReader(BufferedSource source) {
+        this.source = source;
+    }
+
+    /**
+     * 读取下一个 data 帧
+     *
+     * @return false 表示流已结束
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            long lineEnd = source.indexOf((byte) '\n');
+            long lineLength;
+            if (lineEnd == -1) {
+                // 流结束，剩余字节作为最后一行
+                if (source.exhausted()) {
+                    return false;
+                }
+                lineLength = source.getBuffer().size();
+            } else {
+                lineLength = lineEnd;
+            }
+
+            if (lineLength >= DATA_PREFIX.size() && source.rangeEquals(0, DATA_PREFIX)) {
+                source.skip(DATA_PREFIX.size());
+                lineLength -= DATA_PREFIX.size();
+                // 跳过 data: 后的可选空格
+                if (lineLength > 0 && source.getBuffer().getByte(0) == ' ') {
+                    source.skip(1);
+                    lineLength--;
+                }
+                // 去掉行尾 \r
+                boolean carriageReturn = lineLength > 0 && source.getBuffer().getByte(lineLength - 1) == '\r';
+                int dataLength = (int) (carriageReturn ? lineLength - 1 : lineLength);
+                copyToBuffer(dataLength);
+                source.skip((carriageReturn ? 1 : 0) + (lineEnd == -1 ? 0 : 1));
+                return true;
+            }
+
+            // 非 data 行（空行、event、id、注释）直接跳过
+            source.skip(lineLength + (lineEnd == -1 ? 0 : 1));
+        }
+    }
+
+    private void copyToBuffer(int dataLength) throws IOException {
+        if (buffer.length < dataLength) {
+            buffer = new byte[Math.max(dataLength, buffer.length * 2)];
+        }
+        int offset = 0;
+        while (offset < dataLength) {
+            int read = source.read(buffer, offset, dataLength - offset);
+            if (read == -1) {
+                throw new IOException("unexpected end of sse stream");
+            }
+            offset += read;
+        }
+        length = dataLength;
+    }
+
+    /**
+     * 当前帧数据缓冲区，有效长度见 {@link #length()}，下一次 next() 后失效
+     */
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * 当前帧是否为 [DONE]
+     */
+    public boolean isDone() {
+        return startsWith(DONE) && length == DONE.length;
+    }
+
+    /**
+     * 当前帧是否以指定 ASCII 前缀开头，如 heartbeat
+     */
+    public boolean startsWith(String prefix) {
+        return startsWith(prefix.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private boolean startsWith(byte[] prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 当前帧数据的字符串形式
+     */
+    public String asString() {
+        return new String(buffer, 0, length, StandardCharsets.UTF_8);
+    }
+}
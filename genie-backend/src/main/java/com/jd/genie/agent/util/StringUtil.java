@@ -2,14 +2,13 @@ package com.jd.genie.agent.util;
 
 import java.security.SecureRandom;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class StringUtil {
     private static final String CHAR_LOWER = "abcdefghijklmnopqrstuvwxyz";
     private static final String NUMBER = "0123456789";
     private static final String DATA_FOR_RANDOM_STRING = CHAR_LOWER + NUMBER;
     private static final SecureRandom random = new SecureRandom();
+    private static volatile Desensitizer desensitizer;
 
     public static String generateRandomString(int length) {
         if (length < 1) throw new IllegalArgumentException();
@@ -25,7 +24,7 @@ public class StringUtil {
     }
 
     // 银行卡Luhn校验算法
-    private static boolean luhnBankCardVerify(String cardNumber) {
+    static boolean luhnBankCardVerify(String cardNumber) {
         int sum = 0;
         boolean alternate = false;
         for (int i = cardNumber.length() - 1; i >= 0; i--) {
@@ -42,73 +41,23 @@ public class StringUtil {
         return (sum % 10 == 0);
     }
 
+    /**
+     * 文本脱敏，脱敏器按敏感词配置编译一次后复用
+     */
     public static String textDesensitization(String content, Map<String, String> sensitivePatternsMapping) {
-        // 邮箱地址脱敏
-        Pattern emailPattern = Pattern.compile("[a-zA-Z0-9\\._%\\+\\-]+@[a-zA-Z0-9\\.-]+\\.[a-zA-Z]{2,}");
-        Matcher emailMatcher = emailPattern.matcher(content);
-        while (emailMatcher.find()) {
-            String snippet = emailMatcher.group();
-            int maskIdx = snippet.indexOf("@");
-            // 内部邮箱不处理
-            if (content.contains("@jd.com")) {
-                continue;
-            }
-            content = content.replace(snippet, snippet.substring(0, maskIdx) + "＠" + snippet.substring(maskIdx + 1));
-        }
-
-        // 身份证号脱敏
-        Pattern idPattern = Pattern.compile("(?:[^\\dA-Za-z_]|^)((?:[1-6][1-7]|50|71|81|82)\\d{4}(?:19|20)\\d{2}(?:0[1-9]|10|11|12)(?:[0-2][1-9]|10|20|30|31)\\d{3}[0-9Xx])(?:[^\\dA-Za-z_]|$)");
-        Matcher idMatcher = idPattern.matcher(content);
-        while (idMatcher.find()) {
-            String snippet = idMatcher.group(1);
-            content = content.replace(snippet, snippet.substring(0, 12) + "✿✿✿✿✿✿");
-        }
-
-        // 手机号脱敏
-        Pattern phonePattern = Pattern.compile("(?:[^\\dA-Za-z_]|^)(1[3456789]\\d{9})(?:[^\\dA-Za-z_]|$)");
-        Matcher phoneMatcher = phonePattern.matcher(content);
-        while (phoneMatcher.find()) {
-            String snippet = phoneMatcher.group(1);
-            content = content.replace(snippet, snippet.substring(0, 3) + "✿✿✿✿" + snippet.substring(7));
-        }
-
-        // 银行卡号脱敏
-        Pattern bankcardPattern = Pattern.compile("(?:[^\\dA-Za-z_]|^)(62(?:\\d{14}|\\d{17}))(?:[^\\dA-Za-z_]|$)");
-        Matcher bankcardMatcher = bankcardPattern.matcher(content);
-        while (bankcardMatcher.find()) {
-            String snippet = bankcardMatcher.group(1);
-            if (luhnBankCardVerify(snippet)) {
-                content = content.replace(snippet, snippet.substring(0, 12) + "✿✿✿✿✿✿");
-            }
-        }
-
-        // 密码及其他敏感词脱敏
-        for (Map.Entry<String, String> entry : sensitivePatternsMapping.entrySet()) {
-            String pattern = entry.getKey();
-            String wordMapping = entry.getValue();
-
-            int startIndex = pattern.indexOf("^)") + 2;
-            int endIndex = pattern.lastIndexOf("[^");
-
-            if (startIndex + 1 < endIndex) {
-                String sensitiveWord = pattern.substring(startIndex, endIndex);
-                Pattern sensitivePattern = Pattern.compile(pattern);
-                Matcher sensitiveMatcher = sensitivePattern.matcher(content);
+        return getDesensitizer(sensitivePatternsMapping).desensitize(content);
+    }
 
-                while (sensitiveMatcher.find()) {
-                    String snippet = sensitiveMatcher.group();
-                    if (content.startsWith(sensitiveWord)) {
-                        content = content.replace(snippet, wordMapping + snippet.substring(snippet.length() - 1));
-                    } else {
-                        content = content.replace(snippet, snippet.charAt(0) + wordMapping + snippet.substring(snippet.length() - 1));
-                    }
-                }
-            } else {
-                content = content.replace(pattern, wordMapping);
-            }
+    /**
+     * 获取敏感词配置对应的脱敏器，配置对象不变时不重新编译
+     */
+    public static Desensitizer getDesensitizer(Map<String, String> sensitivePatternsMapping) {
+        Desensitizer current = desensitizer;
+        if (current == null || current.getPatterns() != sensitivePatternsMapping) {
+            current = Desensitizer.compile(sensitivePatternsMapping);
+            desensitizer = current;
         }
-
-        return content;
+        return current;
     }
 
     public static String removeSpecialChars(String input) {
@@ -1,51 +1,271 @@
 package com.jd.genie.agent.util;
 
+import com.jd.genie.config.GenieConfig;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.springframework.context.ApplicationContext;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
+/**
+ * 线程池工具 - 按负载划分独立的有界线程池
+ * agent: 智能体任务；tool: 工具调用；slave: plan-solve 并行子任务；io: 虚拟线程模式下的 HTTP 阻塞读取；sse: SSE 心跳写出
+ * 不同负载互相等待时不会抢占同一个池；池满时拒绝任务并以异常形式返回给调用方
+ * 平台线程模式下没有空闲线程时先扩容到最大线程数，线程全忙后才进入队列，突发请求不会排在长任务之后
+ * thread_mode=virtual 且运行在 JDK 21+ 时，每个任务使用一个虚拟线程，并发上限为 最大线程数+队列长度
+ */
+@Slf4j
 public class ThreadUtil {
-    private static ThreadPoolExecutor executor = null;
+    public static final String AGENT = "agent";
+    public static final String TOOL = "tool";
+    public static final String SLAVE = "slave";
+    public static final String IO = "io";
+    public static final String SSE = "sse";
+
+    // 默认配置：核心线程数,最大线程数,队列长度
+    private static final Map<String, String> DEFAULT_POOL_CONFIG = Map.of(
+            AGENT, "64,256,256",
+            TOOL, "64,512,512",
+            SLAVE, "32,256,256",
+            IO, "64,1024,1024",
+            SSE, "8,64,1024");
+    private static final String DEFAULT_CONFIG = "16,64,128";
+
+    private static final Map<String, Pool> pools = new ConcurrentHashMap<>();
+    private static volatile Boolean virtual;
 
     private ThreadUtil() {
     }
 
-    public static synchronized void initPool(int poolSize) {
-        if (executor == null) {
-            ThreadFactory threadFactory = (new BasicThreadFactory.Builder()).namingPattern("exe-pool-%d").daemon(true).build();
-            RejectedExecutionHandler handler = (r, executor) -> {
-            };
-            int maxPoolSize = Math.max(poolSize, 1000);
-            executor = new ThreadPoolExecutor(poolSize, maxPoolSize, 60000L, TimeUnit.MILLISECONDS, new SynchronousQueue(), threadFactory, handler);
+    /**
+     * 提交任务到指定线程池，被拒绝时返回异常完成的 future
+     */
+    public static <T> CompletableFuture<T> submit(String poolName, Supplier<T> task) {
+        Pool pool = pools.computeIfAbsent(poolName, ThreadUtil::createPool);
+        CompletableFuture<T> future = new CompletableFuture<>();
+        boolean acquired = false;
+        try {
+            if (!pool.tryAcquire()) {
+                throw new RejectedExecutionException(poolName + " pool reached limit " + pool.limit);
+            }
+            acquired = true;
+            pool.executor.execute(() -> {
+                try {
+                    future.complete(task.get());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    pool.completed.increment();
+                    pool.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            if (acquired) {
+                pool.release();
+            }
+            pool.rejected.increment();
+            log.error("{} pool rejected task, active {} queued {}", poolName, pool.active(), pool.queued());
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * 是否运行在虚拟线程模式
+     */
+    public static boolean isVirtual() {
+        if (Objects.isNull(virtual)) {
+            synchronized (ThreadUtil.class) {
+                if (Objects.isNull(virtual)) {
+                    // 非 Spring 环境（压测、单测）下读取同名系统属性
+                    ApplicationContext applicationContext = SpringContextHolder.getApplicationContext();
+                    String threadMode = Objects.nonNull(applicationContext)
+                            ? applicationContext.getBean(GenieConfig.class).getThreadMode()
+                            : System.getProperty("autobots.autoagent.thread_mode");
+                    boolean enabled = "virtual".equals(threadMode);
+                    if (enabled && !supportsVirtualThreads()) {
+                        log.warn("thread_mode virtual requires JDK 21+, fall back to platform threads");
+                        enabled = false;
+                    }
+                    virtual = enabled;
+                }
+            }
         }
+        return virtual;
+    }
 
+    public static CompletableFuture<Void> execute(String poolName, Runnable task) {
+        return submit(poolName, () -> {
+            task.run();
+            return null;
+        });
     }
 
-    public static void execute(Runnable runnable) {
-        if (executor == null) {
-            initPool(100);
+    /**
+     * 各线程池运行指标：活跃、排队、拒绝、完成数
+     */
+    public static Map<String, Map<String, Object>> stats() {
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        pools.forEach((name, pool) -> {
+            Map<String, Object> stat = new LinkedHashMap<>();
+            stat.put("mode", Objects.nonNull(pool.permits) ? "virtual" : "platform");
+            stat.put("active", pool.active());
+            stat.put("queued", pool.queued());
+            stat.put("limit", pool.limit);
+            stat.put("rejected", pool.rejected.sum());
+            stat.put("completed", pool.completed.sum());
+            stats.put(name, stat);
+        });
+        return stats;
+    }
+
+    public static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException var3) {
         }
+    }
 
-        executor.execute(runnable);
+    private static Pool createPool(String poolName) {
+        String[] config = poolConfig(poolName).split(",");
+        int coreSize = Integer.parseInt(config[0].trim());
+        int maxSize = Math.max(coreSize, Integer.parseInt(config[1].trim()));
+        int queueSize = Integer.parseInt(config[2].trim());
+        if (isVirtual()) {
+            int limit = maxSize + queueSize;
+            log.info("create {} virtual thread executor limit {}", poolName, limit);
+            return new Pool(newVirtualThreadExecutor(poolName), null, new Semaphore(limit), null, limit);
+        }
+        ThreadFactory threadFactory = new BasicThreadFactory.Builder()
+                .namingPattern("genie-" + poolName + "-%d")
+                .daemon(true)
+                .build();
+        AtomicInteger submitted = new AtomicInteger();
+        GrowFirstQueue queue = new GrowFirstQueue(queueSize, submitted);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(coreSize, maxSize, 60L, TimeUnit.SECONDS,
+                queue, threadFactory, (task, pool) -> {
+            // 扩容时线程已被并发任务占满，放回队列
+            if (!queue.forceOffer(task)) {
+                throw new RejectedExecutionException("Task " + task + " rejected from " + pool);
+            }
+        });
+        queue.executor = executor;
+        executor.allowCoreThreadTimeOut(true);
+        log.info("create {} pool core {} max {} queue {}", poolName, coreSize, maxSize, queueSize);
+        return new Pool(executor, executor, null, submitted, maxSize + queueSize);
     }
 
-    public static CountDownLatch getCountDownLatch(int count) {
-        return new CountDownLatch(count);
+    private static String poolConfig(String poolName) {
+        ApplicationContext applicationContext = SpringContextHolder.getApplicationContext();
+        if (Objects.nonNull(applicationContext)) {
+            String config = applicationContext.getBean(GenieConfig.class).getThreadPoolConfig().get(poolName);
+            if (Objects.nonNull(config)) {
+                return config;
+            }
+        }
+        return DEFAULT_POOL_CONFIG.getOrDefault(poolName, DEFAULT_CONFIG);
     }
 
-    public static void await(CountDownLatch latch) {
+    private static boolean supportsVirtualThreads() {
         try {
-            latch.await();
-        } catch (Exception var2) {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
         }
     }
 
-    public static void sleep(long millis) {
+    /**
+     * 通过反射创建虚拟线程执行器，工程仍以 JDK 17 编译
+     */
+    private static ExecutorService newVirtualThreadExecutor(String poolName) {
         try {
-            Thread.sleep(millis);
-        } catch (InterruptedException var3) {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "genie-" + poolName + "-v", 0L);
+            ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, threadFactory);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("create virtual thread executor failed", e);
         }
     }
 
+    /**
+     * 有空闲线程时入队，否则在未达最大线程数时拒绝入队，使线程池先创建线程
+     * 空闲与否按已提交未完成的任务数判断（含本次提交），不调用 getActiveCount 遍历工作线程
+     */
+    private static class GrowFirstQueue extends ArrayBlockingQueue<Runnable> {
+        private final transient AtomicInteger submitted;
+        private transient ThreadPoolExecutor executor;
 
+        private GrowFirstQueue(int capacity, AtomicInteger submitted) {
+            super(capacity);
+            this.submitted = submitted;
+        }
+
+        @Override
+        public boolean offer(Runnable task) {
+            int poolSize = executor.getPoolSize();
+            if (submitted.get() > poolSize && poolSize < executor.getMaximumPoolSize()) {
+                return false;
+            }
+            return super.offer(task);
+        }
+
+        private boolean forceOffer(Runnable task) {
+            return super.offer(task);
+        }
+    }
+
+    private static class Pool {
+        private final ExecutorService executor;
+        // 平台线程模式下的线程池，虚拟线程模式为空
+        private final ThreadPoolExecutor threadPool;
+        // 虚拟线程模式下的并发上限，平台线程模式为空
+        private final Semaphore permits;
+        // 平台线程模式下已提交未完成的任务数，虚拟线程模式为空
+        private final AtomicInteger submitted;
+        private final int limit;
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder completed = new LongAdder();
+
+        private Pool(ExecutorService executor, ThreadPoolExecutor threadPool, Semaphore permits, AtomicInteger submitted, int limit) {
+            this.executor = executor;
+            this.threadPool = threadPool;
+            this.permits = permits;
+            this.submitted = submitted;
+            this.limit = limit;
+        }
+
+        private boolean tryAcquire() {
+            if (Objects.nonNull(permits)) {
+                return permits.tryAcquire();
+            }
+            submitted.incrementAndGet();
+            return true;
+        }
+
+        private void release() {
+            if (Objects.nonNull(permits)) {
+                permits.release();
+            } else {
+                submitted.decrementAndGet();
+            }
+        }
+
+        private int active() {
+            return Objects.nonNull(threadPool) ? threadPool.getActiveCount() : limit - permits.availablePermits();
+        }
+
+        private int queued() {
+            return Objects.nonNull(threadPool) ? threadPool.getQueue().size() : 0;
+        }
+    }
 }
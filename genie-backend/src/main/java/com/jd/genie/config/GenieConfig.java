@@ -154,9 +154,45 @@ public class GenieConfig {
     @Value("${autobots.autoagent.tool.clear_tool_message:1}")
     private String clearToolMessage;
 
+    /**
+     * 流式解析工具调用，参数完整后立即执行工具（仅 function_call 模式）
+     */
+    @Value("${autobots.autoagent.tool.incremental_tool_call:0}")
+    private String incrementalToolCall;
+
     @Value("${autobots.autoagent.planner.close_update:1}")
     private String planningCloseUpdate;
 
+    /**
+     * 计划按步骤依赖调度，1 开启：依赖完成的步骤立即执行，不再按批次等待
+     */
+    @Value("${autobots.autoagent.planner.dag_schedule:0}")
+    private String planningDagSchedule;
+
+    /**
+     * 单个会话同时执行的计划步骤数上限
+     */
+    @Value("${autobots.autoagent.planner.max_parallel:3}")
+    private Integer planningMaxParallel;
+
+    /**
+     * 每个 SSE 连接的出站队列长度，队满时合并流式增量
+     */
+    @Value("${autobots.autoagent.sse_queue_size:256}")
+    private Integer sseQueueSize;
+
+    /**
+     * SSE 续传：每个会话缓冲的最近事件数
+     */
+    @Value("${autobots.autoagent.sse_resume.buffer_size:1000}")
+    private Integer sseResumeBufferSize;
+
+    /**
+     * SSE 续传：断线后等待重连的秒数，超时取消任务；任务结束后会话同样保留该时长
+     */
+    @Value("${autobots.autoagent.sse_resume.grace:60}")
+    private Integer sseResumeGrace;
+
     @Value("${autobots.autoagent.deep_search_page_count:5}")
     private String deepSearchPageCount;
 
@@ -201,6 +237,18 @@ public class GenieConfig {
     @Value("${autobots.autoagent.mcp_server_url:}")
     private String[] mcpServerUrlArr;
 
+    /**
+     * MCP 工具列表缓存刷新间隔(秒)
+     */
+    @Value("${autobots.autoagent.mcp_tool_ttl:300}")
+    private Long mcpToolTtl;
+
+    /**
+     * MCP 工具列表拉取失败时的最大退避时间(秒)
+     */
+    @Value("${autobots.autoagent.mcp_tool_max_backoff:300}")
+    private Long mcpToolMaxBackoff;
+
     @Value("${autobots.autoagent.summary.system_prompt:}")
     private String summarySystemPrompt;
 
@@ -224,10 +272,45 @@ public class GenieConfig {
         });
     }
 
-    private Map<String, String> messageInterval = new HashMap<>();
-    @Value("${autobots.autoagent.message_interval:{}}")
-    public void setMessageInterval(String jsonStr) {
-        this.messageInterval = JSON.parseObject(jsonStr, new TypeReference<Map<String, String>>() {
+    /**
+     * 流式输出合并配置，key 为生产者(llm/search/report)，value 为 "最大延迟毫秒,最大字符数"
+     */
+    private Map<String, String> streamFlush = new HashMap<>();
+    @Value("${autobots.autoagent.stream_flush:{}}")
+    public void setStreamFlush(String jsonStr) {
+        this.streamFlush = JSON.parseObject(jsonStr, new TypeReference<Map<String, String>>() {
+        });
+    }
+
+    /**
+     * 线程池配置，key 为线程池名称(agent/tool/slave)，value 为 "核心线程数,最大线程数,队列长度"
+     */
+    private Map<String, String> threadPoolConfig = new HashMap<>();
+    @Value("${autobots.autoagent.thread_pool:{}}")
+    public void setThreadPoolConfig(String jsonStr) {
+        this.threadPoolConfig = JSON.parseObject(jsonStr, new TypeReference<Map<String, String>>() {
+        });
+    }
+
+    /**
+     * 线程模式：platform 平台线程池；virtual 虚拟线程（需 JDK 21+，否则回退为 platform）
+     */
+    @Value("${autobots.autoagent.thread_mode:platform}")
+    private String threadMode;
+
+    /**
+     * 是否完整记录 LLM 请求体，1 开启；大 prompt 会额外生成一份完整 JSON，仅排查问题时开启
+     */
+    @Value("${autobots.autoagent.llm_request_log:0}")
+    private String llmRequestLog;
+
+    /**
+     * LLM 响应缓存配置：max_size 条数(0 关闭)、ttl 秒、max_temperature 可缓存的最高温度、disk_dir 磁盘层目录(为空不启用)
+     */
+    private Map<String, String> llmCacheConfig = new HashMap<>();
+    @Value("${autobots.autoagent.llm_cache:{}}")
+    public void setLlmCacheConfig(String jsonStr) {
+        this.llmCacheConfig = JSON.parseObject(jsonStr, new TypeReference<Map<String, String>>() {
         });
     }
 
@@ -237,6 +320,15 @@ public class GenieConfig {
         this.structParseToolSystemPrompt = str;
     }
 
+    /**
+     * queryAgentStreamIncr 执行方式：local 进程内执行；remote 通过 HTTP 请求 autoAgentUrl
+     */
+    @Value("${autobots.multiagent.mode:local}")
+    private String multiAgentMode;
+
+    @Value("${autobots.multiagent.autoAgentUrl:http://127.0.0.1:8080/AutoAgent}")
+    private String autoAgentUrl;
+
 	@Value("${autobots.multiagent.sseClient.readTimeout:1800}")
 	private Integer sseClientReadTimeout;
 
@@ -1,262 +1,197 @@
 package com.jd.genie.controller;
 
 import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.JSONArray;
-import com.alibaba.fastjson.JSONObject;
-import com.jd.genie.agent.agent.AgentContext;
+import com.jd.genie.agent.llm.LLM;
+import com.jd.genie.agent.llm.LLMEndpointPool;
+import com.jd.genie.agent.llm.LLMRateLimiter;
+import com.jd.genie.agent.llm.LLMResponseCache;
 import com.jd.genie.agent.printer.Printer;
 import com.jd.genie.agent.printer.SSEPrinter;
-import com.jd.genie.agent.tool.ToolCollection;
-import com.jd.genie.agent.tool.common.CodeInterpreterTool;
-import com.jd.genie.agent.tool.common.DeepSearchTool;
-import com.jd.genie.agent.tool.common.FileTool;
-import com.jd.genie.agent.tool.common.ReportTool;
-import com.jd.genie.agent.tool.mcp.McpTool;
-import com.jd.genie.agent.util.DateUtil;
+import com.jd.genie.agent.util.CancellationToken;
 import com.jd.genie.agent.util.ThreadUtil;
 import com.jd.genie.config.GenieConfig;
 import com.jd.genie.model.req.AgentRequest;
 import com.jd.genie.model.req.GptQueryReq;
-import com.jd.genie.service.AgentHandlerService;
+import com.jd.genie.model.response.AgentResponse;
+import com.jd.genie.model.response.GptProcessResult;
+import com.jd.genie.service.IAutoAgentService;
 import com.jd.genie.service.IGptProcessService;
-import com.jd.genie.service.impl.AgentHandlerFactory;
+import com.jd.genie.util.SseFluxSink;
+import com.jd.genie.util.SseHeartbeatManager;
+import com.jd.genie.util.SseSession;
+import com.jd.genie.util.SseUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
 
 import java.io.UnsupportedEncodingException;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @RestController
 @RequestMapping("/")
 public class GenieController {
-    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(5);
-    private static final long HEARTBEAT_INTERVAL = 10_000L; // 10秒心跳间隔
+    private static final Long SSE_TIMEOUT = 60 * 60 * 1000L;
+
     @Autowired
     protected GenieConfig genieConfig;
     @Autowired
-    private AgentHandlerFactory agentHandlerFactory;
+    private IAutoAgentService autoAgentService;
     @Autowired
     private IGptProcessService gptProcessService;
 
     /**
-     * 开启SSE心跳
-     * @param emitter
-     * @param requestId
+     * 执行智能体调度
+     * @param request
      * @return
+     * @throws UnsupportedEncodingException
      */
-    private ScheduledFuture<?> startHeartbeat(SseEmitter emitter, String requestId) {
-        return executor.scheduleAtFixedRate(() -> {
-            try {
-                // 发送心跳消息
-                log.info("{} send heartbeat", requestId);
-                emitter.send("heartbeat");
-            } catch (Exception e) {
-                // 发送心跳失败，关闭连接
-                log.error("{} heartbeat failed, closing connection", requestId, e);
-                emitter.completeWithError(e);
-            }
-        }, HEARTBEAT_INTERVAL, HEARTBEAT_INTERVAL, TimeUnit.MILLISECONDS);
-    }
+    @PostMapping("/AutoAgent")
+    public SseEmitter AutoAgent(@RequestBody AgentRequest request) throws UnsupportedEncodingException {
 
-    /**
-     * 注册SSE事件
-     * @param emitter
-     * @param requestId
-     * @param heartbeatFuture
-     */
-    private void registerSSEMonitor(SseEmitter emitter, String requestId, ScheduledFuture<?> heartbeatFuture) {
-        // 监听SSE异常事件
-        emitter.onCompletion(() -> {
-            log.info("{} SSE connection completed normally", requestId);
-            heartbeatFuture.cancel(true);
-        });
+        log.info("{} auto agent request: {}", request.getRequestId(), JSON.toJSONString(request));
 
-        // 监听连接超时事件
-        emitter.onTimeout(() -> {
-            log.info("{} SSE connection timed out", requestId);
-            heartbeatFuture.cancel(true);
-            emitter.complete();
-        });
+        SseEmitter emitter = new SseEmitter(SSE_TIMEOUT);
+        // 输出经会话缓冲，断线后可凭 Last-Event-ID 续传；SSE心跳在连接空闲时发送
+        SseSession session = SseSession.open(SseSession.AUTO_AGENT, request.getRequestId(), "heartbeat");
+        session.attach(emitter, 0);
+        // 客户端断线超过续传等待时间，取消任务
+        CancellationToken cancellationToken = new CancellationToken();
+        session.onOrphaned(() -> cancellationToken.cancel("sse client gone"));
+        // 执行调度引擎
+        Printer printer = new SSEPrinter(session, request, request.getAgentType());
+        autoAgentService.execute(request, printer, cancellationToken);
 
-        // 监听连接错误事件
-        emitter.onError((ex) -> {
-            log.info("{} SSE connection error: ", requestId, ex);
-            heartbeatFuture.cancel(true);
-            emitter.completeWithError(ex);
-        });
+        return emitter;
     }
 
     /**
-     * 执行智能体调度
+     * 执行智能体调度，响应式流版本：按客户端读取速度写出，慢客户端不占用额外内存与线程；
+     * 不支持断线续传，客户端断开即取消任务；心跳以 SSE 注释发送
      * @param request
      * @return
-     * @throws UnsupportedEncodingException
      */
-    @PostMapping("/AutoAgent")
-    public SseEmitter AutoAgent(@RequestBody AgentRequest request) throws UnsupportedEncodingException {
-
-        log.info("{} auto agent request: {}", request.getRequestId(), JSON.toJSONString(request));
-
-        Long AUTO_AGENT_SSE_TIMEOUT = 60 * 60 * 1000L;
+    @PostMapping(value = "/AutoAgent/reactive", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<AgentResponse>> autoAgentReactive(@RequestBody AgentRequest request) {
 
-        SseEmitter emitter = new SseEmitter(AUTO_AGENT_SSE_TIMEOUT);
-        // SSE心跳
-        ScheduledFuture<?> heartbeatFuture = startHeartbeat(emitter, request.getRequestId());
-        // 监听SSE事件
-        registerSSEMonitor(emitter, request.getRequestId(), heartbeatFuture);
-        // 拼接输出类型
-        request.setQuery(handleOutputStyle(request));
-        // 执行调度引擎
-        ThreadUtil.execute(() -> {
-            try {
-                Printer printer = new SSEPrinter(emitter, request, request.getAgentType());
-                AgentContext agentContext = AgentContext.builder()
-                        .requestId(request.getRequestId())
-                        .sessionId(request.getRequestId())
-                        .printer(printer)
-                        .query(request.getQuery())
-                        .task("")
-                        .dateInfo(DateUtil.CurrentDateInfo())
-                        .productFiles(new ArrayList<>())
-                        .taskProductFiles(new ArrayList<>())
-                        .sopPrompt(request.getSopPrompt())
-                        .basePrompt(request.getBasePrompt())
-                        .agentType(request.getAgentType())
-                        .isStream(Objects.nonNull(request.getIsStream()) ? request.getIsStream() : false)
-                        .build();
+        log.info("{} reactive auto agent request: {}", request.getRequestId(), JSON.toJSONString(request));
 
-                // 构建工具列表
-                agentContext.setToolCollection(buildToolCollection(agentContext, request));
-                // 根据数据类型获取对应的处理器
-                AgentHandlerService handler = agentHandlerFactory.getHandler(agentContext, request);
-                // 执行处理逻辑
-                handler.handle(agentContext, request);
-                // 关闭连接
-                emitter.complete();
+        SseFluxSink<AgentResponse> sink = new SseFluxSink<>(request.getRequestId(), null, SSE_TIMEOUT);
+        CancellationToken cancellationToken = new CancellationToken();
+        sink.onCancel(() -> cancellationToken.cancel("reactive client gone"));
+        Printer printer = new SSEPrinter(sink, request, request.getAgentType());
+        autoAgentService.execute(request, printer, cancellationToken);
 
-            } catch (Exception e) {
-                log.error("{} auto agent error", request.getRequestId(), e);
-            }
-        });
+        return sink.flux();
+    }
 
-        return emitter;
+    /**
+     * 智能体调度断线续传：补发 Last-Event-ID 之后的事件并继续输出
+     * @param requestId 原请求 requestId
+     * @param lastEventId 客户端收到的最后一个事件 id，EventSource 重连时自动携带 Last-Event-ID 头
+     * @return
+     */
+    @GetMapping("/AutoAgent/resume")
+    public SseEmitter resumeAutoAgent(@RequestParam("requestId") String requestId,
+                                      @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+                                      @RequestParam(value = "lastEventId", required = false) String lastEventIdParam) {
+        return resume(SseSession.AUTO_AGENT, requestId, new SseEmitter(SSE_TIMEOUT),
+                StringUtils.defaultIfEmpty(lastEventId, lastEventIdParam));
     }
 
 
     /**
-     * html模式： query+以 html展示
-     * docs模式：query+以 markdown展示
-     * table 模式: query+以 excel 展示
+     * 探活接口
+     *
+     * @return
      */
-    private String handleOutputStyle(AgentRequest request) {
-        String query = request.getQuery();
-        Map<String, String> outputStyleMap = genieConfig.getOutputStylePrompts();
-        if (!StringUtils.isEmpty(request.getOutputStyle())) {
-            query += outputStyleMap.computeIfAbsent(request.getOutputStyle(), k -> "");
-        }
-        return query;
+    @RequestMapping(value = "/web/health", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<String> health() {
+        return ResponseEntity.ok("ok");
     }
 
 
     /**
-     * 构建工具列表
+     * 线程池运行指标
      *
-     * @param agentContext
-     * @param request
      * @return
      */
-    private ToolCollection buildToolCollection(AgentContext agentContext, AgentRequest request) {
+    @GetMapping("/web/executor/stats")
+    public Map<String, Map<String, Object>> executorStats() {
+        return ThreadUtil.stats();
+    }
 
-        ToolCollection toolCollection = new ToolCollection();
-        toolCollection.setAgentContext(agentContext);
-        // file
-        FileTool fileTool = new FileTool();
-        fileTool.setAgentContext(agentContext);
-        toolCollection.addTool(fileTool);
+    /**
+     * 上下文截断统计
+     */
+    @GetMapping("/web/llm/truncate/stats")
+    public Map<String, Object> truncateStats() {
+        return LLM.truncateStats();
+    }
 
-        // default tool
-        List<String> agentToolList = Arrays.asList(genieConfig.getMultiAgentToolListMap()
-                .getOrDefault("default", "search,code,report").split(","));
-        if (!agentToolList.isEmpty()) {
-            if (agentToolList.contains("code")) {
-                CodeInterpreterTool codeTool = new CodeInterpreterTool();
-                codeTool.setAgentContext(agentContext);
-                toolCollection.addTool(codeTool);
-            }
-            if (agentToolList.contains("report")) {
-                ReportTool htmlTool = new ReportTool();
-                htmlTool.setAgentContext(agentContext);
-                toolCollection.addTool(htmlTool);
-            }
-            if (agentToolList.contains("search")) {
-                DeepSearchTool deepSearchTool = new DeepSearchTool();
-                deepSearchTool.setAgentContext(agentContext);
-                toolCollection.addTool(deepSearchTool);
-            }
-        }
+    /**
+     * LLM 端点限流指标
+     */
+    @GetMapping("/web/llm/limiter/stats")
+    public Map<String, Map<String, Object>> limiterStats() {
+        return LLMRateLimiter.stats();
+    }
 
-        // mcp tool
-        try {
-            McpTool mcpTool = new McpTool();
-            mcpTool.setAgentContext(agentContext);
-            for (String mcpServer : genieConfig.getMcpServerUrlArr()) {
-                String listToolResult = mcpTool.listTool(mcpServer);
-                if (listToolResult.isEmpty()) {
-                    log.error("{} mcp server {} invalid", agentContext.getRequestId(), mcpServer);
-                    continue;
-                }
+    /**
+     * LLM 多端点健康与对冲指标
+     */
+    @GetMapping("/web/llm/endpoint/stats")
+    public Map<String, Map<String, Object>> endpointStats() {
+        return LLMEndpointPool.stats();
+    }
 
-                JSONObject resp = JSON.parseObject(listToolResult);
-                if (resp.getIntValue("code") != 200) {
-                    log.error("{} mcp serve {} code: {}, message: {}", agentContext.getRequestId(), mcpServer,
-                            resp.getIntValue("code"), resp.getString("message"));
-                    continue;
-                }
-                JSONArray data = resp.getJSONArray("data");
-                if (data.isEmpty()) {
-                    log.error("{} mcp serve {} code: {}, message: {}", agentContext.getRequestId(), mcpServer,
-                            resp.getIntValue("code"), resp.getString("message"));
-                    continue;
-                }
-                for (int i = 0; i < data.size(); i++) {
-                    JSONObject tool = data.getJSONObject(i);
-                    String method = tool.getString("name");
-                    String description = tool.getString("description");
-                    String inputSchema = tool.getString("inputSchema");
-                    toolCollection.addMcpTool(method, description, inputSchema, mcpServer);
-                }
-            }
-        } catch (Exception e) {
-            log.error("{} add mcp tool failed", agentContext.getRequestId(), e);
-        }
+    /**
+     * LLM 响应缓存命中指标
+     */
+    @GetMapping("/web/llm/cache/stats")
+    public Map<String, Object> cacheStats() {
+        return LLMResponseCache.getInstance().stats();
+    }
 
-        return toolCollection;
+    /**
+     * SSE 在线连接与心跳指标
+     */
+    @GetMapping("/web/sse/stats")
+    public Map<String, Object> sseStats() {
+        return SseHeartbeatManager.stats();
     }
 
     /**
-     * 探活接口
-     *
-     * @return
+     * SSE 出站队列深度与合并、丢弃指标
      */
-    @RequestMapping(value = "/web/health", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public ResponseEntity<String> health() {
-        return ResponseEntity.ok("ok");
+    @GetMapping("/web/sse/outbound/stats")
+    public Map<String, Object> sseOutboundStats() {
+        return SSEPrinter.stats();
     }
 
+    /**
+     * SSE 续传会话与重连指标
+     */
+    @GetMapping("/web/sse/session/stats")
+    public Map<String, Object> sseSessionStats() {
+        return SseSession.stats();
+    }
 
     /**
      * 处理Agent流式增量查询请求，返回SSE事件流
@@ -283,5 +218,41 @@ public class GenieController {
         }
     }
 
+    /**
+     * Agent流式增量查询，响应式流版本，输出与 queryAgentStreamIncr 一致，始终进程内执行
+     * @param params 查询请求参数对象
+     * @return
+     */
+    @RequestMapping(value = "/web/api/v1/gpt/queryAgentStreamIncr/reactive", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<GptProcessResult>> queryAgentStreamIncrReactive(@RequestBody GptQueryReq params) {
+        log.info("{} reactive query request: {}", params.getRequestId(), JSON.toJSONString(params));
+        return gptProcessService.queryMultiAgentIncrFlux(params);
+    }
+
+    /**
+     * Agent流式增量查询断线续传
+     * @param requestId 原请求 traceId
+     * @param lastEventId 客户端收到的最后一个事件 id
+     * @return
+     */
+    @RequestMapping(value = "/web/api/v1/gpt/queryAgentStreamIncr/resume", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter resumeAgentStreamIncr(@RequestParam("requestId") String requestId,
+                                            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+                                            @RequestParam(value = "lastEventId", required = false) String lastEventIdParam) {
+        return resume(SseSession.GPT, requestId, SseUtil.build(SSE_TIMEOUT),
+                StringUtils.defaultIfEmpty(lastEventId, lastEventIdParam));
+    }
+
+    private SseEmitter resume(String namespace, String requestId, SseEmitter emitter, String lastEventId) {
+        SseSession session = SseSession.find(namespace, requestId);
+        if (session == null) {
+            // 任务不存在或结束已超过续传保留时间
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "sse session not found: " + requestId);
+        }
+        long lastId = NumberUtils.toLong(lastEventId, 0L);
+        log.info("{} sse resume {} from event {}", requestId, namespace, lastId);
+        session.attach(emitter, lastId);
+        return emitter;
+    }
+
 }
-    
\ No newline at end of file
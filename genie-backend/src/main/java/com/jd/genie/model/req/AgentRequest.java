@@ -27,6 +27,7 @@ public class AgentRequest {
     private Boolean isStream;
     private List<Message> messages;
     private String outputStyle; // 交付物产出格式：html(网页模式）， docs(文档模式）， table(表格模式）
+    private String streamFlush; // 流式输出合并："最大延迟毫秒,最大字符数"，为空时使用服务端配置
 
     @Data
     @Builder
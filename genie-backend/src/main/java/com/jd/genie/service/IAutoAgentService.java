@@ -0,0 +1,25 @@
+package com.jd.genie.service;
+
+import com.jd.genie.agent.printer.Printer;
+import com.jd.genie.agent.util.CancellationToken;
+import com.jd.genie.model.req.AgentRequest;
+
+import java.util.concurrent.CompletableFuture;
+
+public interface IAutoAgentService {
+    /**
+     * 在 agent 线程池中执行智能体调度，执行结束后关闭 printer
+     * @param request
+     * @param printer 智能体输出
+     * @return 调度任务，线程池已满时返回被拒绝的异常
+     */
+    default CompletableFuture<Void> execute(AgentRequest request, Printer printer) {
+        return execute(request, printer, new CancellationToken());
+    }
+
+    /**
+     * 可取消的智能体调度
+     * @param cancellationToken 取消后智能体在步骤之间停止，如客户端断线超过续传等待时间
+     */
+    CompletableFuture<Void> execute(AgentRequest request, Printer printer, CancellationToken cancellationToken);
+}
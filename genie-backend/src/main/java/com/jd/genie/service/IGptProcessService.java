@@ -1,7 +1,10 @@
 package com.jd.genie.service;
 
 import com.jd.genie.model.req.GptQueryReq;
+import com.jd.genie.model.response.GptProcessResult;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
 
 public interface IGptProcessService {
 
@@ -9,4 +12,9 @@ public interface IGptProcessService {
      * 单智能体，多智能体 Agent 增量接口.
      */
     SseEmitter queryMultiAgentIncrStream(GptQueryReq req);
+
+    /**
+     * 增量接口的响应式版本，输出内容相同.
+     */
+    Flux<ServerSentEvent<GptProcessResult>> queryMultiAgentIncrFlux(GptQueryReq req);
 }
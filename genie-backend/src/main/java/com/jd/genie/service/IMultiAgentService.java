@@ -2,7 +2,10 @@ package com.jd.genie.service;
 
 import com.jd.genie.model.dto.AutoBotsResult;
 import com.jd.genie.model.req.GptQueryReq;
+import com.jd.genie.model.response.GptProcessResult;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
 
 public interface IMultiAgentService {
     /**
@@ -12,4 +15,12 @@ public interface IMultiAgentService {
      * @return
      */
     AutoBotsResult searchForAgentRequest(GptQueryReq gptQueryReq, SseEmitter sseEmitter);
+
+    /**
+     * 响应式入口，输出与 searchForAgentRequest 一致，按下游请求量写出
+     * @param gptQueryReq
+     * @param timeoutMillis 流的最长时间
+     * @return
+     */
+    Flux<ServerSentEvent<GptProcessResult>> searchForAgentRequestFlux(GptQueryReq gptQueryReq, long timeoutMillis);
 }
@@ -0,0 +1,141 @@
+package com.jd.genie.service.impl;
+
+import com.jd.genie.agent.agent.AgentContext;
+import com.jd.genie.agent.dto.tool.McpToolInfo;
+import com.jd.genie.agent.printer.Printer;
+import com.jd.genie.agent.printer.StreamCoalescer;
+import com.jd.genie.agent.tool.ToolCollection;
+import com.jd.genie.agent.tool.common.CodeInterpreterTool;
+import com.jd.genie.agent.tool.common.DeepSearchTool;
+import com.jd.genie.agent.tool.common.FileTool;
+import com.jd.genie.agent.tool.common.ReportTool;
+import com.jd.genie.agent.tool.mcp.McpToolRegistry;
+import com.jd.genie.agent.util.CancellationToken;
+import com.jd.genie.agent.util.DateUtil;
+import com.jd.genie.agent.util.ThreadUtil;
+import com.jd.genie.config.GenieConfig;
+import com.jd.genie.model.req.AgentRequest;
+import com.jd.genie.service.AgentHandlerService;
+import com.jd.genie.service.IAutoAgentService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+@Slf4j
+@Service
+public class AutoAgentServiceImpl implements IAutoAgentService {
+    @Autowired
+    private GenieConfig genieConfig;
+    @Autowired
+    private AgentHandlerFactory agentHandlerFactory;
+    @Autowired
+    private McpToolRegistry mcpToolRegistry;
+
+    @Override
+    public CompletableFuture<Void> execute(AgentRequest request, Printer printer, CancellationToken cancellationToken) {
+        // 拼接输出类型
+        request.setQuery(handleOutputStyle(request));
+        return ThreadUtil.execute(ThreadUtil.AGENT, () -> {
+            try {
+                AgentContext agentContext = AgentContext.builder()
+                        .requestId(request.getRequestId())
+                        .sessionId(request.getRequestId())
+                        .printer(printer)
+                        .query(request.getQuery())
+                        .task("")
+                        .dateInfo(DateUtil.CurrentDateInfo())
+                        .productFiles(new ArrayList<>())
+                        .taskProductFiles(new ArrayList<>())
+                        .sopPrompt(request.getSopPrompt())
+                        .basePrompt(request.getBasePrompt())
+                        .agentType(request.getAgentType())
+                        .isStream(Objects.nonNull(request.getIsStream()) ? request.getIsStream() : false)
+                        .streamFlush(StreamCoalescer.normalize(request.getRequestId(), request.getStreamFlush()))
+                        .cancellationToken(cancellationToken)
+                        .build();
+
+                // 构建工具列表
+                agentContext.setToolCollection(buildToolCollection(agentContext, request));
+                // 根据数据类型获取对应的处理器
+                AgentHandlerService handler = agentHandlerFactory.getHandler(agentContext, request);
+                // 执行处理逻辑
+                handler.handle(agentContext, request);
+            } catch (Exception e) {
+                log.error("{} auto agent error", request.getRequestId(), e);
+            } finally {
+                // 关闭连接
+                printer.close();
+            }
+        }).whenComplete((result, e) -> {
+            if (e instanceof RejectedExecutionException) {
+                // 线程池已满，直接告知调用方并结束连接
+                printer.send("result", "系统繁忙，请稍后重试。");
+                printer.close();
+            }
+        });
+    }
+
+    /**
+     * html模式： query+以 html展示
+     * docs模式：query+以 markdown展示
+     * table 模式: query+以 excel 展示
+     */
+    private String handleOutputStyle(AgentRequest request) {
+        String query = request.getQuery();
+        Map<String, String> outputStyleMap = genieConfig.getOutputStylePrompts();
+        if (!StringUtils.isEmpty(request.getOutputStyle())) {
+            query += outputStyleMap.computeIfAbsent(request.getOutputStyle(), k -> "");
+        }
+        return query;
+    }
+
+    /**
+     * 构建工具列表
+     *
+     * @param agentContext
+     * @param request
+     * @return
+     */
+    private ToolCollection buildToolCollection(AgentContext agentContext, AgentRequest request) {
+
+        ToolCollection toolCollection = new ToolCollection();
+        toolCollection.setAgentContext(agentContext);
+        // file
+        FileTool fileTool = new FileTool();
+        fileTool.setAgentContext(agentContext);
+        toolCollection.addTool(fileTool);
+
+        // default tool
+        List<String> agentToolList = Arrays.asList(genieConfig.getMultiAgentToolListMap()
+                .getOrDefault("default", "search,code,report").split(","));
+        if (!agentToolList.isEmpty()) {
+            if (agentToolList.contains("code")) {
+                CodeInterpreterTool codeTool = new CodeInterpreterTool();
+                codeTool.setAgentContext(agentContext);
+                toolCollection.addTool(codeTool);
+            }
+            if (agentToolList.contains("report")) {
+                ReportTool htmlTool = new ReportTool();
+                htmlTool.setAgentContext(agentContext);
+                toolCollection.addTool(htmlTool);
+            }
+            if (agentToolList.contains("search")) {
+                DeepSearchTool deepSearchTool = new DeepSearchTool();
+                deepSearchTool.setAgentContext(agentContext);
+                toolCollection.addTool(deepSearchTool);
+            }
+        }
+
+        // mcp tool
+        for (McpToolInfo mcpTool : mcpToolRegistry.getTools(agentContext.getRequestId())) {
+            toolCollection.addMcpTool(mcpTool);
+        }
+
+        return toolCollection;
+    }
+}
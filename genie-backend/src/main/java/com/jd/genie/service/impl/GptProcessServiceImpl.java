@@ -1,14 +1,18 @@
 package com.jd.genie.service.impl;
 
 import com.jd.genie.model.req.GptQueryReq;
+import com.jd.genie.model.response.GptProcessResult;
 import com.jd.genie.service.IGptProcessService;
 import com.jd.genie.service.IMultiAgentService;
 import com.jd.genie.util.ChateiUtils;
 import com.jd.genie.util.SseUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
+
 import java.util.concurrent.TimeUnit;
 
 @Slf4j
@@ -38,7 +42,7 @@ public class GptProcessServiceImpl implements IGptProcessService {
         log.info("🔵 [DEBUG] 完整的请求对象: {}", req);
         
         try {
-            final SseEmitter emitter = SseUtil.build(timeoutMillis, req.getTraceId());
+            final SseEmitter emitter = SseUtil.build(timeoutMillis);
             log.info("🟢 [DEBUG] SSE 发射器构建成功");
             
             log.info("🔵 [DEBUG] 开始调用 multiAgentService.searchForAgentRequest");
@@ -51,4 +55,12 @@ public class GptProcessServiceImpl implements IGptProcessService {
             throw e;
         }
     }
+
+    @Override
+    public Flux<ServerSentEvent<GptProcessResult>> queryMultiAgentIncrFlux(GptQueryReq req) {
+        req.setUser("genie");
+        req.setDeepThink(req.getDeepThink() == null ? 0: req.getDeepThink());
+        req.setTraceId(ChateiUtils.getRequestId(req));
+        return multiAgentService.searchForAgentRequestFlux(req, TimeUnit.HOURS.toMillis(1));
+    }
 }
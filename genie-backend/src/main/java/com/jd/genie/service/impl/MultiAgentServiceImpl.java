@@ -5,6 +5,10 @@ import com.alibaba.fastjson.JSONObject;
 import com.jd.genie.agent.enums.AgentType;
 import com.jd.genie.agent.enums.AutoBotsResultStatus;
 import com.jd.genie.agent.enums.ResponseTypeEnum;
+import com.jd.genie.agent.printer.EventSink;
+import com.jd.genie.agent.printer.HandlerPrinter;
+import com.jd.genie.agent.util.CancellationToken;
+import com.jd.genie.agent.util.OkHttpUtil;
 import com.jd.genie.config.GenieConfig;
 import com.jd.genie.handler.AgentResponseHandler;
 import com.jd.genie.model.dto.AutoBotsResult;
@@ -13,13 +17,19 @@ import com.jd.genie.model.req.AgentRequest;
 import com.jd.genie.model.req.GptQueryReq;
 import com.jd.genie.model.response.AgentResponse;
 import com.jd.genie.model.response.GptProcessResult;
+import com.jd.genie.service.IAutoAgentService;
 import com.jd.genie.service.IMultiAgentService;
 import com.jd.genie.util.ChateiUtils;
+import com.jd.genie.util.SseFluxSink;
+import com.jd.genie.util.SseSession;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.*;
+import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -34,6 +44,8 @@ public class MultiAgentServiceImpl implements IMultiAgentService {
     private GenieConfig genieConfig;
     @Autowired
     private Map<AgentType, AgentResponseHandler> handlerMap;
+    @Autowired
+    private IAutoAgentService autoAgentService;
 
     @Override
     public AutoBotsResult searchForAgentRequest(GptQueryReq gptQueryReq, SseEmitter sseEmitter) {
@@ -63,6 +75,16 @@ public class MultiAgentServiceImpl implements IMultiAgentService {
     }
 
     public void handleMultiAgentRequest(AgentRequest autoReq,SseEmitter sseEmitter) {
+        // 输出经会话缓冲，断线后可凭 Last-Event-ID 续传；前端连接空闲时由心跳管理统一发送心跳，不再转发上游心跳
+        SseSession session = SseSession.open(SseSession.GPT, autoReq.getRequestId(), buildHeartbeatData(autoReq.getRequestId()));
+        session.attach(sseEmitter, 0);
+        // 客户端断线超过续传等待时间，取消任务
+        CancellationToken token = new CancellationToken();
+        session.onOrphaned(() -> token.cancel("sse client gone"));
+        if (!"remote".equals(genieConfig.getMultiAgentMode())) {
+            handleLocalAgentRequest(autoReq, session, token);
+            return;
+        }
         log.info("🔵 [DEBUG] 进入 handleMultiAgentRequest 方法");
         log.info("🔵 [DEBUG] AgentRequest: {}", JSON.toJSONString(autoReq));
         
@@ -88,7 +110,9 @@ public class MultiAgentServiceImpl implements IMultiAgentService {
         
         log.info("🔵 [DEBUG] OkHttpClient 构建完成，开始发起请求");
 
-        client.newCall(request).enqueue(new Callback() {
+        Call agentCall = client.newCall(request);
+        token.onCancel(agentCall::cancel);
+        OkHttpUtil.enqueue(agentCall, new Callback() {
             @Override
             public void onFailure(Call call, IOException e) {
                 log.error("🔴 [ERROR] HTTP 请求失败 - requestId: {}", autoReq.getRequestId());
@@ -98,8 +122,8 @@ public class MultiAgentServiceImpl implements IMultiAgentService {
                 try {
                     // 向前端发送错误信息
                     GptProcessResult errorResult = buildDefaultAutobotsResult(autoReq, "任务执行失败，请联系管理员！");
-                    sseEmitter.send(errorResult);
-                    sseEmitter.complete();
+                    session.send(errorResult);
+                    session.complete();
                 } catch (Exception sendError) {
                     log.error("🔴 [ERROR] 发送错误结果失败", sendError);
                 }
@@ -118,8 +142,8 @@ public class MultiAgentServiceImpl implements IMultiAgentService {
                     log.error("🔴 [ERROR] 响应体为空 - requestId: {}", autoReq.getRequestId());
                     try {
                         GptProcessResult errorResult = buildDefaultAutobotsResult(autoReq, "任务执行失败，请联系管理员！");
-                        sseEmitter.send(errorResult);
-                        sseEmitter.complete();
+                        session.send(errorResult);
+                        session.complete();
                     } catch (Exception e) {
                         log.error("🔴 [ERROR] 发送错误结果失败", e);
                     }
@@ -134,8 +158,8 @@ public class MultiAgentServiceImpl implements IMultiAgentService {
                         
                         try {
                             GptProcessResult errorResult = buildDefaultAutobotsResult(autoReq, "任务执行失败，请联系管理员！");
-                            sseEmitter.send(errorResult);
-                            sseEmitter.complete();
+                            session.send(errorResult);
+                            session.complete();
                         } catch (Exception e) {
                             log.error("🔴 [ERROR] 发送错误结果失败", e);
                         }
@@ -161,9 +185,6 @@ public class MultiAgentServiceImpl implements IMultiAgentService {
                         }
 
                         if (data.startsWith("heartbeat")) {
-                            GptProcessResult result = buildHeartbeatData(autoReq.getRequestId());
-                            sseEmitter.send(result);
-                            log.info("{} heartbeat-data: {}", autoReq.getRequestId(), data);
                             continue;
                         }
 
@@ -172,24 +193,54 @@ public class MultiAgentServiceImpl implements IMultiAgentService {
                         AgentType agentType = AgentType.fromCode(autoReq.getAgentType());
                         AgentResponseHandler handler = handlerMap.get(agentType);
                         GptProcessResult result = handler.handle(autoReq, agentResponse,agentRespList, eventResult);
-                        sseEmitter.send(result);
+                        session.send(result);
                         if (result.isFinished()) {
                             // 记录任务执行时间
                             log.info("{} task total cost time:{}ms", autoReq.getRequestId(), System.currentTimeMillis() - startTime);
-                            sseEmitter.complete();
+                            session.complete();
                         }
                     }
                 }catch (Exception e) {
                     log.error("", e);
+                    session.complete();
                 }
             }
         });
     }
 
+    /**
+     * 响应式接口：始终进程内执行，智能体输出按下游请求量写出；客户端断开即取消任务
+     */
+    @Override
+    public Flux<ServerSentEvent<GptProcessResult>> searchForAgentRequestFlux(GptQueryReq gptQueryReq, long timeoutMillis) {
+        AgentRequest agentRequest = buildAgentRequest(gptQueryReq);
+        log.info("{} reactive agent request type={}", agentRequest.getRequestId(), agentRequest.getAgentType());
+        SseFluxSink<GptProcessResult> sink = new SseFluxSink<>(agentRequest.getRequestId(),
+                buildHeartbeatData(agentRequest.getRequestId()), timeoutMillis);
+        CancellationToken token = new CancellationToken();
+        sink.onCancel(() -> token.cancel("reactive client gone"));
+        handleLocalAgentRequest(agentRequest, sink, token);
+        return sink.flux();
+    }
+
+    /**
+     * 进程内执行：智能体输出直接经 handler 转换后写入会话，不经过 HTTP 回环和 JSON 序列化
+     */
+    private void handleLocalAgentRequest(AgentRequest autoReq, EventSink sink, CancellationToken token) {
+        AgentType agentType = AgentType.fromCode(autoReq.getAgentType());
+        HandlerPrinter printer = new HandlerPrinter(sink, autoReq, handlerMap.get(agentType),
+                errMsg -> buildDefaultAutobotsResult(autoReq, errMsg));
+
+        // 智能体侧会改写 query，使用副本与前端请求隔离
+        AgentRequest agentRequest = new AgentRequest();
+        BeanUtils.copyProperties(autoReq, agentRequest);
+        autoAgentService.execute(agentRequest, printer, token);
+    }
+
     private Request buildHttpRequest(AgentRequest autoReq) {
         String reqId = autoReq.getRequestId();
         autoReq.setRequestId(autoReq.getRequestId());
-        String url = "http://127.0.0.1:8080/AutoAgent";
+        String url = genieConfig.getAutoAgentUrl();
         RequestBody body = RequestBody.create(
                 MediaType.parse("application/json"),
                 JSONObject.toJSONString(autoReq)
@@ -3,6 +3,7 @@ package com.jd.genie.service.impl;
 
 import com.jd.genie.agent.agent.AgentContext;
 import com.jd.genie.agent.agent.ExecutorAgent;
+import com.jd.genie.agent.agent.PlanScheduler;
 import com.jd.genie.agent.agent.PlanningAgent;
 import com.jd.genie.agent.agent.SummaryAgent;
 import com.jd.genie.agent.dto.File;
@@ -19,8 +20,7 @@ import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -40,6 +40,11 @@ public class PlanSolveHandlerImpl implements AgentHandlerService {
         summary.setSystemPrompt(summary.getSystemPrompt().replace("{{query}}", request.getQuery()));
 
         String planningResult = planning.run(agentContext.getQuery());
+        if ("1".equals(genieConfig.getPlanningDagSchedule()) && Objects.nonNull(planning.getPlanningTool().getPlan())
+                && !"finish".equals(planningResult)) {
+            handleDag(agentContext, request, planning, executor, summary);
+            return "";
+        }
         int stepIdx = 0;
         int maxStepNum = genieConfig.getPlannerMaxSteps();
         while (stepIdx <= maxStepNum) {
@@ -51,54 +56,36 @@ public class PlanSolveHandlerImpl implements AgentHandlerService {
             if (planningResults.size() == 1) {
                 executorResult = executor.run(planningResults.get(0));
             } else {
-                Map<String, String> tmpTaskResult = new ConcurrentHashMap<>();
-                CountDownLatch taskCount = ThreadUtil.getCountDownLatch(planningResults.size());
-                int memoryIndex = executor.getMemory().size();
                 List<ExecutorAgent> slaveExecutors = new ArrayList<>();
+                List<CompletableFuture<String>> slaveFutures = new ArrayList<>();
                 for (String task : planningResults) {
-                    ExecutorAgent slaveExecutor = new ExecutorAgent(agentContext);
-                    slaveExecutor.setState(executor.getState());
-                    slaveExecutor.getMemory().addMessages(executor.getMemory().getMessages());
+                    ExecutorAgent slaveExecutor = executor.fork();
                     slaveExecutors.add(slaveExecutor);
-                    ThreadUtil.execute(() -> {
-                        String taskResult = slaveExecutor.run(task);
-                        tmpTaskResult.put(task, taskResult);
-                        taskCount.countDown();
-                    });
+                    slaveFutures.add(ThreadUtil.submit(ThreadUtil.SLAVE, () -> slaveExecutor.run(task)));
                 }
-                ThreadUtil.await(taskCount);
-                for (ExecutorAgent slaveExecutor : slaveExecutors) {
-                    for (int i = memoryIndex; i < slaveExecutor.getMemory().size(); i++) {
-                        executor.getMemory().addMessage(slaveExecutor.getMemory().get(i));
+                List<String> tmpTaskResult = new ArrayList<>();
+                for (int i = 0; i < slaveFutures.size(); i++) {
+                    try {
+                        tmpTaskResult.add(slaveFutures.get(i).join());
+                    } catch (Exception e) {
+                        // 子任务异常或被线程池拒绝，按执行异常处理
+                        log.error("{} slave executor failed, task: {}", agentContext.getRequestId(), planningResults.get(i), e);
+                        slaveExecutors.get(i).setState(AgentState.ERROR);
                     }
+                }
+                for (ExecutorAgent slaveExecutor : slaveExecutors) {
+                    executor.getMemory().merge(slaveExecutor.getMemory());
                     slaveExecutor.getMemory().clear();
-                    executor.setState(slaveExecutor.getState());
+                    if (executor.getState() != AgentState.ERROR) {
+                        executor.setState(slaveExecutor.getState());
+                    }
                 }
-                executorResult = String.join("\n", tmpTaskResult.values());
+                executorResult = String.join("\n", tmpTaskResult);
             }
             planningResult = planning.run(executorResult);
             if ("finish".equals(planningResult)) {
                 //任务成功结束，总结任务
-                TaskSummaryResult result = summary.summaryTaskResult(executor.getMemory().getMessages(), request.getQuery());
-
-                Map<String, Object> taskResult = new HashMap<>();
-                taskResult.put("taskSummary", result.getTaskSummary());
-
-                if (CollectionUtils.isEmpty(result.getFiles())) {
-                    if (!CollectionUtils.isEmpty(agentContext.getProductFiles())) {
-                        List<File> fileResponses = agentContext.getProductFiles();
-                        // 过滤中间搜索结果文件
-                        fileResponses.removeIf(file -> Objects.nonNull(file) && file.getIsInternalFile());
-                        Collections.reverse(fileResponses);
-                        taskResult.put("fileList", fileResponses);
-                    }
-                } else {
-                    taskResult.put("fileList", result.getFiles());
-                }
-
-                agentContext.getPrinter().send("result", taskResult);
-
-
+                sendSummary(agentContext, request, executor, summary);
                 break;
             }
             if (planning.getState() == AgentState.IDLE || executor.getState() == AgentState.IDLE) {
@@ -115,6 +102,70 @@ public class PlanSolveHandlerImpl implements AgentHandlerService {
         return "";
     }
 
+    /**
+     * 按步骤依赖调度计划：依赖完成的步骤立即执行，全部步骤完成后才询问规划器
+     * 关闭动态更新计划(close_update)时计划完成即结束，不再调用规划器
+     */
+    private void handleDag(AgentContext agentContext, AgentRequest request, PlanningAgent planning,
+                           ExecutorAgent executor, SummaryAgent summary) {
+        PlanScheduler scheduler = new PlanScheduler(agentContext, executor, genieConfig.getPlanningMaxParallel());
+        boolean closeUpdate = "1".equals(genieConfig.getPlanningCloseUpdate());
+        int stepIdx = 0;
+        int maxStepNum = genieConfig.getPlannerMaxSteps();
+        while (stepIdx <= maxStepNum) {
+            String executorResult = scheduler.execute(planning.getPlanningTool().getPlan());
+            if (executor.getState() == AgentState.IDLE) {
+                agentContext.getPrinter().send("result", "达到最大迭代次数，任务终止。");
+                return;
+            }
+            if (executor.getState() == AgentState.ERROR) {
+                agentContext.getPrinter().send("result", "任务执行异常，请联系管理员，任务终止。");
+                return;
+            }
+            if (closeUpdate) {
+                agentContext.getPrinter().send("plan", planning.getPlanningTool().getPlan());
+                sendSummary(agentContext, request, executor, summary);
+                return;
+            }
+            // 计划执行完毕，由规划器判断结束或追加步骤
+            String planningResult = planning.run(executorResult);
+            if ("finish".equals(planningResult)) {
+                sendSummary(agentContext, request, executor, summary);
+                return;
+            }
+            if (planning.getState() == AgentState.IDLE) {
+                agentContext.getPrinter().send("result", "达到最大迭代次数，任务终止。");
+                return;
+            }
+            if (planning.getState() == AgentState.ERROR) {
+                agentContext.getPrinter().send("result", "任务执行异常，请联系管理员，任务终止。");
+                return;
+            }
+            stepIdx++;
+        }
+    }
+
+    private void sendSummary(AgentContext agentContext, AgentRequest request, ExecutorAgent executor, SummaryAgent summary) {
+        TaskSummaryResult result = summary.summaryTaskResult(executor.getMemory().getMessages(), request.getQuery());
+
+        Map<String, Object> taskResult = new HashMap<>();
+        taskResult.put("taskSummary", result.getTaskSummary());
+
+        if (CollectionUtils.isEmpty(result.getFiles())) {
+            if (!CollectionUtils.isEmpty(agentContext.getProductFiles())) {
+                List<File> fileResponses = agentContext.getProductFiles();
+                // 过滤中间搜索结果文件
+                fileResponses.removeIf(file -> Objects.nonNull(file) && file.getIsInternalFile());
+                Collections.reverse(fileResponses);
+                taskResult.put("fileList", fileResponses);
+            }
+        } else {
+            taskResult.put("fileList", result.getFiles());
+        }
+
+        agentContext.getPrinter().send("result", taskResult);
+    }
+
     @Override
     public Boolean support(AgentContext agentContext, AgentRequest request) {
         return AgentType.PLAN_SOLVE.getValue().equals(request.getAgentType());
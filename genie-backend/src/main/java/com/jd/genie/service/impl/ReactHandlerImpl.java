@@ -31,6 +31,11 @@ public class ReactHandlerImpl implements AgentHandlerService {
         summary.setSystemPrompt(summary.getSystemPrompt().replace("{{query}}", request.getQuery()));
 
         executor.run(request.getQuery());
+        if (executor.isCancelled()) {
+            // 请求已取消，不再总结
+            agentContext.getPrinter().send("result", "任务已取消。");
+            return "";
+        }
         TaskSummaryResult result = summary.summaryTaskResult(executor.getMemory().getMessages(), request.getQuery());
 
         Map<String, Object> taskResult = new HashMap<>();
@@ -0,0 +1,130 @@
+package com.jd.genie.util;
+
+import com.jd.genie.agent.printer.EventSink;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 响应式 SSE 输出：把 SSEPrinter 的出站事件桥接到 Flux，按下游请求量写出
+ * 1. 只在下游有请求量时写出，否则事件留在 SSEPrinter 出站队列中（队满合并增量），单连接内存有界
+ * 2. 下游请求时通知 SSEPrinter 继续写出；订阅之前的事件同样留在队列中
+ * 3. 客户端断开（取消订阅）后丢弃后续事件并执行 onCancel，用于取消任务
+ * 每个事件带递增的 id；心跳每 HEARTBEAT_INTERVAL 发送一次，未指定心跳内容时以 SSE 注释发送，不改变事件类型；
+ * 超过 timeoutMillis 后结束流，按客户端断开处理
+ *
+ * @param <T> 事件内容类型，与对应 servlet 接口的输出一致
+ */
+@Slf4j
+public class SseFluxSink<T> implements EventSink {
+    private final String requestId;
+    private final Flux<ServerSentEvent<T>> flux;
+    private final Sinks.Empty<Void> done = Sinks.empty();
+    private final List<Runnable> cancelHandlers = new CopyOnWriteArrayList<>();
+    private volatile FluxSink<ServerSentEvent<T>> sink;
+    private volatile Runnable readyListener;
+    private volatile boolean cancelled;
+    private volatile boolean completed;
+    // 只在 SSEPrinter 写出任务中递增
+    private long lastId;
+
+    /**
+     * @param heartbeat     心跳内容，为空时发送 SSE 注释
+     * @param timeoutMillis 流的最长时间，与 servlet 接口的 SseEmitter 超时一致
+     */
+    public SseFluxSink(String requestId, T heartbeat, long timeoutMillis) {
+        this.requestId = requestId;
+        Flux<ServerSentEvent<T>> events = Flux.create(emitter -> {
+            sink = emitter;
+            emitter.onRequest(n -> notifyReady());
+            emitter.onCancel(this::cancel);
+        }, FluxSink.OverflowStrategy.BUFFER);
+        Flux<ServerSentEvent<T>> heartbeats = Flux.interval(Duration.ofMillis(SseHeartbeatManager.HEARTBEAT_INTERVAL))
+                .onBackpressureDrop()
+                .map(tick -> Objects.nonNull(heartbeat)
+                        ? ServerSentEvent.builder(heartbeat).build()
+                        : ServerSentEvent.<T>builder().comment("heartbeat").build())
+                .takeUntilOther(done.asMono());
+        // prefetch 为 1，下游的请求量直接传到事件源
+        this.flux = Flux.merge(1, events, heartbeats).take(Duration.ofMillis(timeoutMillis));
+    }
+
+    public Flux<ServerSentEvent<T>> flux() {
+        return flux;
+    }
+
+    /**
+     * 客户端断开时执行
+     */
+    public void onCancel(Runnable handler) {
+        cancelHandlers.add(handler);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void send(Object payload) {
+        FluxSink<ServerSentEvent<T>> emitter = sink;
+        if (cancelled || completed || emitter == null) {
+            return;
+        }
+        emitter.next(ServerSentEvent.builder((T) payload).id(String.valueOf(++lastId)).build());
+    }
+
+    @Override
+    public void complete() {
+        if (completed) {
+            return;
+        }
+        completed = true;
+        done.tryEmitEmpty();
+        FluxSink<ServerSentEvent<T>> emitter = sink;
+        if (emitter != null) {
+            emitter.complete();
+        }
+    }
+
+    /**
+     * 已订阅且下游有请求量；取消后始终可写，由 send 丢弃事件，出站队列随之清空
+     */
+    @Override
+    public boolean isReady() {
+        FluxSink<ServerSentEvent<T>> emitter = sink;
+        return cancelled || completed || (emitter != null && emitter.requestedFromDownstream() > 0);
+    }
+
+    @Override
+    public void onReady(Runnable listener) {
+        this.readyListener = listener;
+    }
+
+    private void notifyReady() {
+        Runnable listener = readyListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    private void cancel() {
+        if (cancelled || completed) {
+            return;
+        }
+        cancelled = true;
+        done.tryEmitEmpty();
+        log.info("{} reactive sse cancelled by client or timeout", requestId);
+        for (Runnable handler : cancelHandlers) {
+            try {
+                handler.run();
+            } catch (Exception e) {
+                log.error("{} reactive sse cancel handler failed", requestId, e);
+            }
+        }
+        notifyReady();
+    }
+}
@@ -0,0 +1,207 @@
+package com.jd.genie.util;
+
+import com.jd.genie.agent.util.ThreadUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SSE 心跳管理：所有连接共用一个哈希时间轮线程，取代每个连接一个定时任务
+ * 1. 只对空闲连接发心跳：业务消息写出后调用 touch 记录活跃时间，距最近一次写出满 HEARTBEAT_INTERVAL 才发送
+ * 2. 时间轮线程只做调度，心跳写出提交到 sse 线程池；上一次心跳仍阻塞在慢客户端时跳过本次，不堆积任务
+ * 3. 连接结束时调用 unregister；心跳写出失败或超过 SseEmitter 超时时间的连接自动移除
+ */
+@Slf4j
+public class SseHeartbeatManager {
+    public static final long HEARTBEAT_INTERVAL = 10_000L;
+    private static final long TICK_MS = 500L;
+    // 槽数为 2 的幂，一圈覆盖 32 秒，超过一圈的任务按轮次保留在槽内
+    private static final int WHEEL_SIZE = 64;
+
+    private static final Map<SseEmitter, Connection> connections = new ConcurrentHashMap<>();
+    // 新注册的连接由时间轮线程放入槽中，槽只在时间轮线程内访问
+    private static final Queue<Connection> registered = new ConcurrentLinkedQueue<>();
+    private static final List<List<Connection>> wheel = new ArrayList<>(WHEEL_SIZE);
+    private static long tick;
+
+    private static final LongAdder sent = new LongAdder();
+    private static final LongAdder suppressed = new LongAdder();
+    private static final LongAdder stalled = new LongAdder();
+    private static final LongAdder failed = new LongAdder();
+    private static final LongAdder expired = new LongAdder();
+
+    static {
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel.add(new ArrayList<>());
+        }
+        Thread thread = new Thread(SseHeartbeatManager::run, "genie-sse-heartbeat");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private SseHeartbeatManager() {
+    }
+
+    /**
+     * 注册连接，空闲满一个心跳间隔后写出 heartbeat
+     */
+    public static void register(SseEmitter emitter, String requestId, Object heartbeat) {
+        Connection connection = new Connection(emitter, requestId, heartbeat);
+        if (connections.putIfAbsent(emitter, connection) == null) {
+            registered.add(connection);
+        }
+    }
+
+    /**
+     * 记录连接有业务消息写出，推迟下一次心跳
+     */
+    public static void touch(SseEmitter emitter) {
+        Connection connection = connections.get(emitter);
+        if (connection != null) {
+            connection.lastActive = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * 连接结束，不再发送心跳；时间轮中的条目在到期时丢弃
+     */
+    public static void unregister(SseEmitter emitter) {
+        Connection connection = connections.remove(emitter);
+        if (connection != null) {
+            connection.closed = true;
+        }
+    }
+
+    /**
+     * 心跳运行指标：在线连接数与心跳发送情况
+     */
+    public static Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("connections", connections.size());
+        stats.put("sent", sent.sum());
+        stats.put("suppressed", suppressed.sum());
+        stats.put("stalled", stalled.sum());
+        stats.put("failed", failed.sum());
+        stats.put("expired", expired.sum());
+        return stats;
+    }
+
+    private static void run() {
+        long start = System.nanoTime();
+        while (true) {
+            long sleepNanos = start + (tick + 1) * TimeUnit.MILLISECONDS.toNanos(TICK_MS) - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    log.warn("sse heartbeat thread interrupted, ignored");
+                }
+            }
+            try {
+                advance();
+            } catch (Throwable e) {
+                log.error("sse heartbeat tick failed", e);
+            }
+        }
+    }
+
+    private static void advance() {
+        tick++;
+        long now = System.currentTimeMillis();
+        Connection connection;
+        while ((connection = registered.poll()) != null) {
+            schedule(connection, connection.lastActive + HEARTBEAT_INTERVAL, now);
+        }
+        int slot = (int) (tick & (WHEEL_SIZE - 1));
+        List<Connection> bucket = wheel.set(slot, new ArrayList<>());
+        for (Connection entry : bucket) {
+            if (entry.closed) {
+                continue;
+            }
+            if (entry.deadline > tick) {
+                // 尚未到达的轮次
+                wheel.get(slot).add(entry);
+                continue;
+            }
+            if (now >= entry.expireAt) {
+                expired.increment();
+                unregister(entry.emitter);
+                continue;
+            }
+            long due = entry.lastActive + HEARTBEAT_INTERVAL;
+            if (due > now) {
+                suppressed.increment();
+                schedule(entry, due, now);
+                continue;
+            }
+            send(entry);
+            schedule(entry, now + HEARTBEAT_INTERVAL, now);
+        }
+    }
+
+    private static void schedule(Connection connection, long due, long now) {
+        long ticks = Math.max(1, (due - now + TICK_MS - 1) / TICK_MS);
+        connection.deadline = tick + ticks;
+        wheel.get((int) (connection.deadline & (WHEEL_SIZE - 1))).add(connection);
+    }
+
+    private static void send(Connection connection) {
+        if (!connection.sending.compareAndSet(false, true)) {
+            stalled.increment();
+            log.warn("{} sse heartbeat skipped, previous write still blocked", connection.requestId);
+            return;
+        }
+        ThreadUtil.execute(ThreadUtil.SSE, () -> {
+            try {
+                if (connection.closed) {
+                    return;
+                }
+                connection.emitter.send(connection.heartbeat);
+                sent.increment();
+                log.debug("{} send heartbeat", connection.requestId);
+            } catch (Exception e) {
+                failed.increment();
+                log.warn("{} heartbeat failed, closing connection: {}", connection.requestId, e.getMessage());
+                unregister(connection.emitter);
+                connection.emitter.completeWithError(e);
+            } finally {
+                connection.sending.set(false);
+            }
+        }).exceptionally(e -> {
+            // sse 线程池已满，本次心跳放弃
+            connection.sending.set(false);
+            return null;
+        });
+    }
+
+    private static class Connection {
+        private final SseEmitter emitter;
+        private final String requestId;
+        private final Object heartbeat;
+        private final long expireAt;
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private volatile long lastActive = System.currentTimeMillis();
+        private volatile boolean closed;
+        // 到期的 tick，仅时间轮线程读写
+        private long deadline;
+
+        private Connection(SseEmitter emitter, String requestId, Object heartbeat) {
+            this.emitter = emitter;
+            this.requestId = requestId;
+            this.heartbeat = heartbeat;
+            Long timeout = emitter.getTimeout();
+            this.expireAt = Objects.nonNull(timeout) && timeout > 0 ? lastActive + timeout : Long.MAX_VALUE;
+        }
+    }
+}
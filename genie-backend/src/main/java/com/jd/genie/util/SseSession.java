@@ -0,0 +1,294 @@
+package com.jd.genie.util;
+
+import com.jd.genie.agent.printer.EventSink;
+import com.jd.genie.agent.util.SpringContextHolder;
+import com.jd.genie.config.GenieConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 可续传的 SSE 会话：按请求保留最近输出的事件，客户端断线后凭 Last-Event-ID 重连补发
+ * 1. 每个事件分配单调递增的 id 写入 SSE id 字段，最近 buffer_size 个事件保存在环形缓冲中
+ * 2. 连接断开后会话保留 grace 秒，期间重连从 Last-Event-ID 之后补发并继续输出；超时仍未重连则执行 onOrphaned 取消任务；
+ * 连接超时（超过 SseEmitter 时长上限）不再等待，立即取消
+ * 3. 任务结束后会话再保留 grace 秒，供断线的客户端取回结尾
+ * 同一会话同时只有一个连接，新连接接管时结束旧连接；心跳随连接注册与注销
+ */
+@Slf4j
+public class SseSession implements EventSink {
+    public static final String AUTO_AGENT = "auto_agent";
+    public static final String GPT = "gpt";
+
+    private static final int DEFAULT_BUFFER_SIZE = 1000;
+    private static final long DEFAULT_GRACE_SECONDS = 60;
+
+    private static final Map<String, SseSession> sessions = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+            new BasicThreadFactory.Builder().namingPattern("genie-sse-session-%d").daemon(true).build());
+
+    private static final LongAdder resumed = new LongAdder();
+    private static final LongAdder replayed = new LongAdder();
+    private static final LongAdder orphaned = new LongAdder();
+
+    private final String key;
+    private final String requestId;
+    private final Object heartbeat;
+    private final int bufferSize;
+    private final long graceMillis;
+    private final Deque<Event> buffer = new ArrayDeque<>();
+    private final List<Runnable> orphanHandlers = new ArrayList<>();
+    private long lastId;
+    private SseEmitter emitter;
+    private boolean finished;
+    private ScheduledFuture<?> orphanTimer;
+
+    private SseSession(String key, String requestId, Object heartbeat, int bufferSize, long graceMillis) {
+        this.key = key;
+        this.requestId = requestId;
+        this.heartbeat = heartbeat;
+        this.bufferSize = bufferSize;
+        this.graceMillis = graceMillis;
+    }
+
+    /**
+     * 创建会话，同名的旧会话直接结束
+     *
+     * @param namespace 会话类型，AUTO_AGENT 或 GPT，两类接口的输出格式不同
+     * @param heartbeat 连接空闲时发送的心跳内容
+     */
+    public static SseSession open(String namespace, String requestId, Object heartbeat) {
+        int bufferSize = DEFAULT_BUFFER_SIZE;
+        long graceSeconds = DEFAULT_GRACE_SECONDS;
+        ApplicationContext applicationContext = SpringContextHolder.getApplicationContext();
+        if (Objects.nonNull(applicationContext)) {
+            GenieConfig genieConfig = applicationContext.getBean(GenieConfig.class);
+            bufferSize = genieConfig.getSseResumeBufferSize();
+            graceSeconds = genieConfig.getSseResumeGrace();
+        }
+        String key = namespace + ":" + requestId;
+        SseSession session = new SseSession(key, requestId, heartbeat, Math.max(1, bufferSize),
+                TimeUnit.SECONDS.toMillis(Math.max(0, graceSeconds)));
+        SseSession previous = sessions.put(key, session);
+        if (previous != null) {
+            log.warn("{} sse session replaced", requestId);
+            previous.complete();
+        }
+        return session;
+    }
+
+    public static SseSession find(String namespace, String requestId) {
+        return sessions.get(namespace + ":" + requestId);
+    }
+
+    /**
+     * 会话运行指标：在线会话数、已连接数、重连与补发事件数、超时取消数
+     */
+    public static Map<String, Object> stats() {
+        int attached = 0;
+        for (SseSession session : sessions.values()) {
+            synchronized (session) {
+                if (session.emitter != null) {
+                    attached++;
+                }
+            }
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sessions", sessions.size());
+        stats.put("attached", attached);
+        stats.put("resumed", resumed.sum());
+        stats.put("replayed", replayed.sum());
+        stats.put("orphaned", orphaned.sum());
+        return stats;
+    }
+
+    /**
+     * 连接会话：补发 lastEventId 之后缓冲中的事件，任务未结束时后续输出写入该连接
+     *
+     * @param lastEventId 客户端已收到的最后一个事件 id，首次连接为 0
+     */
+    public synchronized void attach(SseEmitter emitter, long lastEventId) {
+        if (this.emitter != null && this.emitter != emitter) {
+            SseEmitter previous = this.emitter;
+            this.emitter = null;
+            SseHeartbeatManager.unregister(previous);
+            previous.complete();
+        }
+        if (orphanTimer != null) {
+            orphanTimer.cancel(false);
+            orphanTimer = null;
+        }
+        registerCallbacks(emitter);
+        // 先接管连接再补发，补发失败时 detach 能识别当前连接并开始等待重连
+        this.emitter = emitter;
+        if (lastEventId > 0) {
+            resumed.increment();
+            Event first = buffer.peekFirst();
+            if (first != null && first.id > lastEventId + 1) {
+                log.warn("{} sse resume from {}, events before {} already evicted", requestId, lastEventId, first.id);
+            }
+        }
+        for (Event event : buffer) {
+            if (event.id <= lastEventId) {
+                continue;
+            }
+            if (!write(emitter, event)) {
+                return;
+            }
+            if (lastEventId > 0) {
+                replayed.increment();
+            }
+        }
+        if (finished) {
+            this.emitter = null;
+            emitter.complete();
+            return;
+        }
+        SseHeartbeatManager.register(emitter, requestId, heartbeat);
+    }
+
+    /**
+     * 输出事件：写入缓冲，已连接时同时写入连接；写出失败视为断线，不抛出异常
+     */
+    @Override
+    public synchronized void send(Object payload) {
+        if (finished) {
+            return;
+        }
+        Event event = new Event(++lastId, payload);
+        buffer.addLast(event);
+        if (buffer.size() > bufferSize) {
+            buffer.pollFirst();
+        }
+        if (emitter != null && write(emitter, event)) {
+            SseHeartbeatManager.touch(emitter);
+        }
+    }
+
+    /**
+     * 任务输出结束：结束当前连接，会话保留 grace 时间供断线客户端取回结尾
+     */
+    @Override
+    public void complete() {
+        synchronized (this) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            if (orphanTimer != null) {
+                orphanTimer.cancel(false);
+                orphanTimer = null;
+            }
+            if (emitter != null) {
+                SseHeartbeatManager.unregister(emitter);
+                emitter.complete();
+                emitter = null;
+            }
+        }
+        if (graceMillis > 0) {
+            timer.schedule(() -> sessions.remove(key, this), graceMillis, TimeUnit.MILLISECONDS);
+        } else {
+            sessions.remove(key, this);
+        }
+    }
+
+    /**
+     * 断线超过 grace 时间仍未重连时执行，用于取消任务
+     */
+    public synchronized void onOrphaned(Runnable handler) {
+        orphanHandlers.add(handler);
+    }
+
+    private boolean write(SseEmitter target, Event event) {
+        try {
+            target.send(SseEmitter.event().id(String.valueOf(event.id)).data(event.payload));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            log.warn("{} sse write event {} failed, wait for resume: {}", requestId, event.id, e.getMessage());
+            detach(target);
+            return false;
+        }
+    }
+
+    private void registerCallbacks(SseEmitter target) {
+        target.onCompletion(() -> {
+            log.info("{} SSE connection completed", requestId);
+            detach(target);
+        });
+        target.onTimeout(() -> {
+            log.info("{} SSE connection timed out", requestId);
+            detach(target, 0);
+            target.complete();
+        });
+        target.onError(e -> {
+            log.info("{} SSE connection error: {}", requestId, e.getMessage());
+            detach(target);
+        });
+    }
+
+    private void detach(SseEmitter target) {
+        detach(target, graceMillis);
+    }
+
+    /**
+     * @param waitMillis 等待重连的时间，超时后取消任务
+     */
+    private synchronized void detach(SseEmitter target, long waitMillis) {
+        SseHeartbeatManager.unregister(target);
+        if (emitter != target) {
+            return;
+        }
+        emitter = null;
+        if (finished || orphanTimer != null) {
+            return;
+        }
+        log.info("{} sse client detached, wait {}ms for resume", requestId, waitMillis);
+        orphanTimer = timer.schedule(this::orphan, waitMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void orphan() {
+        List<Runnable> handlers;
+        synchronized (this) {
+            orphanTimer = null;
+            if (emitter != null || finished) {
+                return;
+            }
+            handlers = new ArrayList<>(orphanHandlers);
+        }
+        orphaned.increment();
+        log.warn("{} sse client did not resume, cancel run", requestId);
+        for (Runnable handler : handlers) {
+            try {
+                handler.run();
+            } catch (Exception e) {
+                log.error("{} sse orphan handler failed", requestId, e);
+            }
+        }
+    }
+
+    private static class Event {
+        private final long id;
+        private final Object payload;
+
+        private Event(long id, Object payload) {
+            this.id = id;
+            this.payload = payload;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.jd.genie.agent.agent;
+
+import com.jd.genie.agent.dto.Message;
+import com.jd.genie.agent.dto.Plan;
+import com.jd.genie.agent.enums.AgentState;
+import com.jd.genie.agent.enums.AgentType;
+import com.jd.genie.agent.printer.Printer;
+import com.jd.genie.agent.util.CancellationToken;
+import com.jd.genie.agent.util.ThreadUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * PlanScheduler：按依赖放行、并发上限、循环依赖按下标放行、失败或取消后不再启动新步骤并等待在途步骤
+ */
+public class PlanSchedulerTest {
+
+    @Test
+    public void diamond() {
+        Script script = new Script(Map.of("b", 200L, "c", 200L), Set.of());
+        Plan plan = Plan.create("t", List.of("a", "b", "c", "d"),
+                List.of(List.of(), List.of(0), List.of(0), List.of(1, 2)));
+        StubExecutor executor = newExecutor(script, null);
+
+        String output = new PlanScheduler(executor.getContext(), executor, 3).execute(plan);
+
+        assertEquals("a", script.started.get(0));
+        assertEquals(Set.of("b", "c"), Set.copyOf(script.started.subList(1, 3)));
+        assertEquals("d", script.started.get(3));
+        // b 与 c 并行，d 等两者都完成后才启动
+        assertEquals(2, script.maxRunning.get());
+        assertEquals(List.of("completed", "completed", "completed", "completed"), plan.getStepStatus());
+        assertEquals(AgentState.FINISHED, executor.getState());
+        assertTrue(output.startsWith("done a\n") && output.endsWith("\ndone d"), output);
+        // 各步骤的记忆按完成顺序合并回主执行器
+        assertEquals(4, executor.getMemory().size());
+        assertEquals("done d", executor.getMemory().getLastMessage().getContent());
+    }
+
+    @Test
+    public void maxParallelCap() {
+        Script script = new Script(Map.of("a", 100L, "b", 100L, "c", 100L, "d", 100L), Set.of());
+        Plan plan = Plan.create("t", List.of("a", "b", "c", "d"),
+                List.of(List.of(), List.of(), List.of(), List.of()));
+        StubExecutor executor = newExecutor(script, null);
+
+        new PlanScheduler(executor.getContext(), executor, 2).execute(plan);
+
+        assertEquals(2, script.maxRunning.get());
+        // 同时放行的步骤启动先后不确定，c、d 要等前两个步骤之一结束
+        assertEquals(Set.of("a", "b"), Set.copyOf(script.started.subList(0, 2)));
+        assertEquals(List.of("c", "d"), script.started.subList(2, 4));
+        assertEquals(AgentState.FINISHED, executor.getState());
+    }
+
+    @Test
+    public void cycleRunsLowestPendingStep() {
+        Script script = new Script(Map.of(), Set.of());
+        Plan plan = Plan.create("t", List.of("a", "b", "c"),
+                List.of(List.of(1), List.of(0), List.of()));
+        StubExecutor executor = newExecutor(script, null);
+
+        new PlanScheduler(executor.getContext(), executor, 3).execute(plan);
+
+        // c 无依赖先执行；a、b 互相依赖，空闲时放行下标最小的 a，之后 b 的依赖满足
+        assertEquals(List.of("c", "a", "b"), List.copyOf(script.started));
+        assertEquals(List.of("completed", "completed", "completed"), plan.getStepStatus());
+        assertEquals(AgentState.FINISHED, executor.getState());
+    }
+
+    @Test
+    public void failureDrainsRunningSteps() {
+        Script script = new Script(Map.of("b", 300L), Set.of("a"));
+        Plan plan = Plan.create("t", List.of("a", "b", "c"),
+                List.of(List.of(), List.of(), List.of(0, 1)));
+        StubExecutor executor = newExecutor(script, null);
+
+        String output = new PlanScheduler(executor.getContext(), executor, 2).execute(plan);
+
+        // a 失败后不再启动 c，但等待在途的 b 结束并合并
+        assertEquals(Set.of("a", "b"), Set.copyOf(script.started));
+        assertEquals(List.of("blocked", "completed", "not_started"), plan.getStepStatus());
+        assertEquals(AgentState.ERROR, executor.getState());
+        assertEquals("done b", output);
+        assertEquals(2, executor.getMemory().size());
+    }
+
+    @Test
+    public void cancelStopsLaunching() {
+        CancellationToken token = new CancellationToken();
+        Script script = new Script(Map.of("b", 300L), Set.of());
+        script.onStart = step -> {
+            if ("a".equals(step)) {
+                token.cancel("client gone");
+            }
+        };
+        Plan plan = Plan.create("t", List.of("a", "b", "c"),
+                List.of(List.of(), List.of(), List.of(0)));
+        StubExecutor executor = newExecutor(script, token);
+
+        new PlanScheduler(executor.getContext(), executor, 2).execute(plan);
+
+        assertEquals(Set.of("a", "b"), Set.copyOf(script.started));
+        assertEquals("not_started", plan.getStepStatus().get(2));
+        assertEquals(AgentState.ERROR, executor.getState());
+        assertEquals(0, script.running.get());
+    }
+
+    private static StubExecutor newExecutor(Script script, CancellationToken token) {
+        AgentContext context = AgentContext.builder()
+                .requestId("test")
+                .printer(new NoopPrinter())
+                .taskProductFiles(new ArrayList<>())
+                .cancellationToken(token)
+                .build();
+        return new StubExecutor(context, script);
+    }
+
+    /**
+     * 各步骤的执行耗时与结果，记录启动顺序与最大并发数
+     */
+    private static class Script {
+        private final Map<String, Long> latency;
+        private final Set<String> failures;
+        private final List<String> started = new CopyOnWriteArrayList<>();
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicInteger maxRunning = new AtomicInteger();
+        private volatile Consumer<String> onStart = step -> {
+        };
+
+        private Script(Map<String, Long> latency, Set<String> failures) {
+            this.latency = latency;
+            this.failures = failures;
+        }
+    }
+
+    /**
+     * 不调用 LLM 的执行器：按脚本等待后结束，并在记忆中追加一条结果
+     */
+    private static class StubExecutor extends ExecutorAgent {
+        private final Script script;
+
+        private StubExecutor(AgentContext context, Script script) {
+            this.script = script;
+            setContext(context);
+        }
+
+        @Override
+        public ExecutorAgent fork() {
+            StubExecutor fork = new StubExecutor(context, script);
+            fork.setMemory(getMemory().fork());
+            return fork;
+        }
+
+        @Override
+        public String run(String request) {
+            String step = request.substring("你的任务是：".length());
+            script.started.add(step);
+            script.maxRunning.accumulateAndGet(script.running.incrementAndGet(), Math::max);
+            try {
+                script.onStart.accept(step);
+                ThreadUtil.sleep(script.latency.getOrDefault(step, 20L));
+                getMemory().addMessage(Message.assistantMessage("done " + step, null));
+                setState(script.failures.contains(step) ? AgentState.ERROR : AgentState.FINISHED);
+                return "done " + step;
+            } finally {
+                script.running.decrementAndGet();
+            }
+        }
+    }
+
+    private static class NoopPrinter implements Printer {
+        @Override
+        public void send(String messageId, String messageType, Object message, String digitalEmployee, Boolean isFinal) {
+        }
+
+        @Override
+        public void send(String messageType, Object message) {
+        }
+
+        @Override
+        public void send(String messageType, Object message, String digitalEmployee) {
+        }
+
+        @Override
+        public void send(String messageId, String messageType, Object message, Boolean isFinal) {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void updateAgentType(AgentType agentType) {
+        }
+    }
+}
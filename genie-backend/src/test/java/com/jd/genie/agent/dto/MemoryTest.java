@@ -0,0 +1,118 @@
+package com.jd.genie.agent.dto;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Memory.contextWindow：预算内不截断、切点后移到 user 消息、无 user 时跳过开头的 tool 结果、增量索引随变更重建
+ * token 数按内容长度计
+ */
+public class MemoryTest {
+    private static final String TOKENIZER = "char";
+
+    private final AtomicInteger counted = new AtomicInteger();
+    private final ToIntFunction<Message> counter = message -> {
+        counted.incrementAndGet();
+        return message.getContent().length();
+    };
+
+    @Test
+    public void budgetAroundTotal() {
+        Memory memory = dialogue();
+        assertWindow(memory.contextWindow(TOKENIZER, counter, 100), 0, 12, 12);
+        assertWindow(memory.contextWindow(TOKENIZER, counter, 12), 0, 12, 12);
+        // 预算 11 时切点落在 a1，后移到 u2
+        assertWindow(memory.contextWindow(TOKENIZER, counter, 11), 2, 12, 4);
+        assertWindow(memory.contextWindow(TOKENIZER, counter, 4), 2, 12, 4);
+    }
+
+    @Test
+    public void lastMessageAlwaysKept() {
+        Memory memory = dialogue();
+        // 最后一条本身超出预算，其前没有 user 消息可用时只保留最后一条
+        assertWindow(memory.contextWindow(TOKENIZER, counter, 1), 3, 12, 2);
+
+        Memory single = new Memory();
+        single.addMessage(Message.userMessage("0123456789", null));
+        Memory.ContextWindow window = single.contextWindow(TOKENIZER, counter, 5);
+        assertFalse(window.isTruncated());
+        assertEquals(10, window.getKeptTokens());
+    }
+
+    @Test
+    public void windowWithoutUserSkipsLeadingToolResults() {
+        Memory memory = new Memory();
+        memory.addMessage(Message.userMessage("uuuu", null));
+        memory.addMessage(Message.assistantMessage("cccc", null));
+        memory.addMessage(Message.toolMessage("t1", "call_1", null));
+        memory.addMessage(Message.toolMessage("t2", "call_2", null));
+        memory.addMessage(Message.assistantMessage("ww", null));
+        // 切点落在第一个 tool 结果，窗口内没有 user，跳过孤立的 tool 结果
+        assertWindow(memory.contextWindow(TOKENIZER, counter, 6), 4, 14, 2);
+    }
+
+    @Test
+    public void incrementalIndex() {
+        Memory memory = dialogue();
+        memory.contextWindow(TOKENIZER, counter, 100);
+        assertEquals(4, counted.get());
+
+        // 只对新消息计数，并复核已索引的最后一条
+        counted.set(0);
+        memory.addMessage(Message.userMessage("eee", null));
+        assertWindow(memory.contextWindow(TOKENIZER, counter, 100), 0, 15, 15);
+        assertEquals(2, counted.get());
+
+        // 最后一条内容被追加后重新计数
+        memory.getLastMessage().setContent("eeeeee");
+        assertWindow(memory.contextWindow(TOKENIZER, counter, 100), 0, 18, 18);
+
+        Memory fork = memory.fork();
+        fork.addMessage(Message.assistantMessage("ff", null));
+        memory.merge(fork);
+        assertWindow(memory.contextWindow(TOKENIZER, counter, 100), 0, 20, 20);
+
+        memory.clear();
+        memory.addMessage(Message.userMessage("g", null));
+        assertWindow(memory.contextWindow(TOKENIZER, counter, 100), 0, 1, 1);
+    }
+
+    @Test
+    public void tokenizerChangeRebuildsIndex() {
+        Memory memory = dialogue();
+        memory.contextWindow(TOKENIZER, counter, 100);
+        counted.set(0);
+        Memory.ContextWindow window = memory.contextWindow("other", message -> {
+            counted.incrementAndGet();
+            return 2 * message.getContent().length();
+        }, 100);
+        assertEquals(4, counted.get());
+        assertEquals(24, window.getTotalTokens());
+    }
+
+    /**
+     * u1(4) a1(4) u2(2) a2(2)
+     */
+    private static Memory dialogue() {
+        Memory memory = new Memory();
+        memory.addMessage(Message.userMessage("aaaa", null));
+        memory.addMessage(Message.assistantMessage("bbbb", null));
+        memory.addMessage(Message.userMessage("cc", null));
+        memory.addMessage(Message.assistantMessage("dd", null));
+        return memory;
+    }
+
+    private static void assertWindow(Memory.ContextWindow window, int start, long totalTokens, long keptTokens) {
+        assertEquals(start, window.getStart());
+        assertEquals(totalTokens, window.getTotalTokens());
+        assertEquals(keptTokens, window.getKeptTokens());
+        assertEquals(start > 0, window.isTruncated());
+        assertTrue(window.getKeptTokens() <= window.getTotalTokens());
+    }
+}
@@ -0,0 +1,96 @@
+package com.jd.genie.agent.dto;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * MessageList / Memory 分叉与合并：分叉间互不可见、写时复制、合并只取分叉后新增的消息
+ */
+public class MessageListTest {
+
+    @Test
+    public void forkIsolatesAppends() {
+        MessageList parent = new MessageList();
+        parent.add(user("u1"));
+        parent.add(assistant("a1"));
+        MessageList child = parent.fork();
+        child.add(user("c1"));
+        parent.add(user("p1"));
+
+        assertEquals(List.of("u1", "a1", "c1"), contents(child));
+        assertEquals(List.of("u1", "a1", "p1"), contents(parent));
+        assertEquals(2, child.inherited());
+    }
+
+    @Test
+    public void writeToInheritedCopiesOnWrite() {
+        MessageList parent = new MessageList();
+        parent.add(user("u1"));
+        parent.add(assistant("a1"));
+        parent.add(user("u2"));
+        MessageList child = parent.fork();
+        child.set(1, assistant("changed"));
+        child.remove(0);
+        child.add(0, user("first"));
+        child.add(assistant("c1"));
+
+        assertEquals(List.of("first", "changed", "u2", "c1"), contents(child));
+        assertEquals(List.of("u1", "a1", "u2"), contents(parent));
+        // 删除一条、插入一条继承区内的消息后，继承消息数不变
+        assertEquals(3, child.inherited());
+    }
+
+    @Test
+    public void manyForksKeepOrder() {
+        MessageList list = new MessageList();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            list.add(user("m" + i));
+            expected.add("m" + i);
+            // 每次分叉冻结一段，超过段数上限后合并为单段
+            list.fork();
+        }
+        assertEquals(expected, contents(list));
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), list.get(i).getContent());
+        }
+    }
+
+    @Test
+    public void mergeAppendsNewMessagesOnly() {
+        Memory memory = new Memory();
+        memory.addMessage(user("u1"));
+        memory.addMessage(assistant("a1"));
+        Memory first = memory.fork();
+        Memory second = memory.fork();
+        first.addMessage(assistant("f1"));
+        second.addMessage(assistant("s1"));
+        second.addMessage(assistant("s2"));
+        // 分叉中删除继承的消息不影响合并结果
+        second.getMessages().remove(0);
+
+        memory.merge(first);
+        memory.merge(second);
+        assertEquals(List.of("u1", "a1", "f1", "s1", "s2"), contents(memory.getMessages()));
+    }
+
+    private static Message user(String content) {
+        return Message.userMessage(content, null);
+    }
+
+    private static Message assistant(String content) {
+        return Message.assistantMessage(content, null);
+    }
+
+    private static List<String> contents(List<Message> messages) {
+        List<String> result = new ArrayList<>();
+        for (Message message : messages) {
+            result.add(message.getContent());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,65 @@
+package com.jd.genie.agent.dto;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Plan.dependenciesOf：显式依赖过滤、按"执行顺序N."推导、无序号时顺序执行
+ */
+public class PlanTest {
+
+    @Test
+    public void explicitDependencies() {
+        Plan plan = Plan.create("t", List.of("a", "b", "c", "d"), Arrays.asList(
+                List.of(),
+                List.of(0),
+                // 越界、负数、自身、重复与 null 均忽略
+                Arrays.asList(0, 0, 5, -1, 2, null, 1),
+                null));
+        assertEquals(List.of(), plan.dependenciesOf(0));
+        assertEquals(List.of(0), plan.dependenciesOf(1));
+        assertEquals(List.of(0, 1), plan.dependenciesOf(2));
+        assertEquals(List.of(), plan.dependenciesOf(3));
+    }
+
+    @Test
+    public void inferFromOrderPrefix() {
+        Plan plan = Plan.create("t", List.of(
+                "执行顺序1. 收集资料",
+                "执行顺序2. 分析财务",
+                " 执行顺序2. 分析行业",
+                "执行顺序4. 输出报告"));
+        assertEquals(List.of(), plan.dependenciesOf(0));
+        assertEquals(List.of(0), plan.dependenciesOf(1));
+        assertEquals(List.of(0), plan.dependenciesOf(2));
+        // 序号不连续时依赖小于自身的最大序号组
+        assertEquals(List.of(1, 2), plan.dependenciesOf(3));
+    }
+
+    @Test
+    public void sequentialWithoutPrefix() {
+        Plan plan = Plan.create("t", List.of("执行顺序1. 收集资料", "分析", "执行顺序3. 输出报告"));
+        assertEquals(List.of(), plan.dependenciesOf(0));
+        assertEquals(List.of(0), plan.dependenciesOf(1));
+        assertEquals(List.of(1), plan.dependenciesOf(2));
+    }
+
+    @Test
+    public void inferWhenDependenciesSizeMismatch() {
+        Plan plan = Plan.create("t", List.of("a", "b", "c"), List.of(List.of(), List.of()));
+        assertEquals(List.of(1), plan.dependenciesOf(2));
+    }
+
+    @Test
+    public void updateReplacesDependencies() {
+        Plan plan = Plan.create("t", List.of("a", "b"), List.of(List.of(), List.of()));
+        plan.updateStepStatus(0, "completed", "");
+        plan.update(null, List.of("a", "b", "c"), null);
+        assertEquals("completed", plan.getStepStatus().get(0));
+        assertEquals(List.of(1), plan.dependenciesOf(2));
+    }
+}
@@ -0,0 +1,55 @@
+package com.jd.genie.agent.llm;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * BpeTokenizer：已知计数、长片段优先队列合并与逐轮扫描结果一致
+ */
+public class BpeTokenizerTest {
+    private static BpeTokenizer tokenizer;
+
+    @BeforeAll
+    public static void load() {
+        tokenizer = BpeTokenizer.load(BpeTokenizer.CL100K_BASE);
+        assertNotNull(tokenizer);
+    }
+
+    @Test
+    public void knownCounts() {
+        assertEquals(2, tokenizer.countTokens("hello world"));
+        assertEquals(0, tokenizer.countTokens(""));
+    }
+
+    @Test
+    public void heapMergeSameAsScan() {
+        Random random = new Random(42);
+        String alphabet = "的一是在不了有和人这中大为上个国我以要他时来用们生到作地于出就分对成会可主发年动同工也能下过子说产种面而方后多定行学法所民得经abcdefgxyz0123 ";
+        for (int i = 0; i < 200; i++) {
+            int length = 1 + random.nextInt(300);
+            StringBuilder text = new StringBuilder(length);
+            for (int j = 0; j < length; j++) {
+                text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String piece = new String(text.toString().getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+            assertEquals(tokenizer.countPieceScan(piece), tokenizer.countPieceHeap(piece), text.toString());
+        }
+    }
+
+    @Test
+    public void longCjkRunIsNotQuadratic() {
+        String text = "中华人民共和国成立于一九四九年十月一日".repeat(5000);
+        long start = System.nanoTime();
+        int tokens = tokenizer.countTokens(text);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(tokens > 0);
+        assertTrue(elapsedMs < 5000, "elapsed " + elapsedMs + "ms");
+    }
+}
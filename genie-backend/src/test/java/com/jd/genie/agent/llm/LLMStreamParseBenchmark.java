@@ -0,0 +1,154 @@
+package com.jd.genie.agent.llm;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jd.genie.agent.util.SseFrameReader;
+import lombok.Data;
+import okio.Buffer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LLM 流式响应解析基准测试
+ * 对比 readLine + readTree + convertValue 与 SseFrameReader + LLMStreamParser 的耗时和内存分配
+ * 每次操作解析 CHUNKS 个 chunk，单 chunk 分配量 = gc.alloc.rate.norm / CHUNKS
+ * 运行: 在 IDE 中执行 main 方法，或 java -cp target/test-classes:target/classes:<依赖> com.jd.genie.agent.llm.LLMStreamParseBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LLMStreamParseBenchmark {
+    private static final int CHUNKS = 200;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private byte[] contentStream;
+    private byte[] toolCallStream;
+
+    @Setup
+    public void setup() {
+        StringBuilder content = new StringBuilder();
+        StringBuilder toolCall = new StringBuilder();
+        toolCall.append("data: {\"id\":\"chatcmpl-1\",\"object\":\"chat.completion.chunk\",\"created\":1700000000,\"model\":\"gpt-4o\",")
+                .append("\"choices\":[{\"index\":0,\"delta\":{\"tool_calls\":[{\"index\":0,\"id\":\"call_j74R8JMFWTC4rW5wHJ0TtmNU\",")
+                .append("\"type\":\"function\",\"function\":{\"name\":\"planning\",\"arguments\":\"\"}}]},\"logprobs\":null,\"finish_reason\":null}]}\n\n");
+        for (int i = 0; i < CHUNKS; i++) {
+            content.append("data: {\"id\":\"chatcmpl-1\",\"object\":\"chat.completion.chunk\",\"created\":1700000000,\"model\":\"gpt-4o\",")
+                    .append("\"choices\":[{\"index\":0,\"delta\":{\"content\":\"token ").append(i).append(" 内容\"},")
+                    .append("\"logprobs\":null,\"finish_reason\":null}]}\n\n");
+            if (i > 0) {
+                toolCall.append("data: {\"id\":\"chatcmpl-1\",\"object\":\"chat.completion.chunk\",\"created\":1700000000,\"model\":\"gpt-4o\",")
+                        .append("\"choices\":[{\"index\":0,\"delta\":{\"tool_calls\":[{\"index\":0,\"function\":{\"arguments\":\"{\\\"step\\\":")
+                        .append(i).append("}\"}}]},\"logprobs\":null,\"finish_reason\":null}]}\n\n");
+            }
+        }
+        content.append("data: [DONE]\n\n");
+        toolCall.append("data: [DONE]\n\n");
+        contentStream = content.toString().getBytes(StandardCharsets.UTF_8);
+        toolCallStream = toolCall.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void legacyContent(Blackhole blackhole) throws IOException {
+        legacy(contentStream, blackhole);
+    }
+
+    @Benchmark
+    public void frameReaderContent(Blackhole blackhole) throws IOException {
+        frameReader(contentStream, blackhole);
+    }
+
+    @Benchmark
+    public void legacyToolCall(Blackhole blackhole) throws IOException {
+        legacy(toolCallStream, blackhole);
+    }
+
+    @Benchmark
+    public void frameReaderToolCall(Blackhole blackhole) throws IOException {
+        frameReader(toolCallStream, blackhole);
+    }
+
+    private void legacy(byte[] stream, Blackhole blackhole) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(stream)));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith("data: ")) {
+                String data = line.substring(6);
+                if (data.equals("[DONE]")) {
+                    break;
+                }
+                JsonNode chunk = objectMapper.readTree(data);
+                for (JsonNode element : chunk.get("choices")) {
+                    blackhole.consume(objectMapper.convertValue(element, LegacyChoice.class));
+                }
+            }
+        }
+    }
+
+    private void frameReader(byte[] stream, Blackhole blackhole) throws IOException {
+        SseFrameReader reader = new SseFrameReader(new Buffer().write(stream));
+        LLMStreamParser parser = new LLMStreamParser();
+        while (reader.next()) {
+            if (reader.isDone()) {
+                break;
+            }
+            blackhole.consume(parser.parseOpenAI(reader.buffer(), 0, reader.length()));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(LLMStreamParseBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class LegacyChoice {
+        private Integer index;
+        private LegacyDelta delta;
+        private Object logprobs;
+        private String finish_reason;
+    }
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class LegacyDelta {
+        private String content;
+        private List<LegacyToolCall> tool_calls;
+    }
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class LegacyToolCall {
+        private Integer index;
+        private String id;
+        private String type;
+        private LegacyFunction function;
+    }
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class LegacyFunction {
+        private String name;
+        private String arguments;
+    }
+}
@@ -0,0 +1,276 @@
+package com.jd.genie.agent.llm;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.jd.genie.agent.agent.AgentContext;
+import com.jd.genie.agent.agent.BaseAgent;
+import com.jd.genie.agent.dto.tool.ToolCall;
+import com.jd.genie.agent.tool.BaseTool;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * LLMStreamParser：OpenAI / Claude chunk 字段提取，未知字段跳过，结果对象复用时清空上一次的值
+ * StreamToolCalls：工具调用参数完整时才提前派发，最终响应未包含的派发结果被丢弃
+ */
+public class LLMStreamParserTest {
+
+    @Test
+    public void parseOpenAIContent() throws IOException {
+        LLMStreamParser parser = new LLMStreamParser();
+        LLMStreamParser.StreamChunk chunk = parseOpenAI(parser, "{\"id\":\"c1\",\"object\":\"chat.completion.chunk\","
+                + "\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\",\"content\":\"你好\\n\",\"extra\":{\"x\":[1,2]}},"
+                + "\"logprobs\":null,\"finish_reason\":null}],\"usage\":{\"total_tokens\":3}}");
+        assertTrue(chunk.isHasDelta());
+        assertEquals("你好\n", chunk.getContent());
+        assertNull(chunk.getFinishReason());
+        assertEquals(0, chunk.getToolCallCount());
+
+        chunk = parseOpenAI(parser, "{\"choices\":[{\"index\":0,\"delta\":{},\"finish_reason\":\"stop\"}]}");
+        assertTrue(chunk.isHasDelta());
+        assertNull(chunk.getContent());
+        assertEquals("stop", chunk.getFinishReason());
+    }
+
+    @Test
+    public void parseOpenAIToolCalls() throws IOException {
+        LLMStreamParser parser = new LLMStreamParser();
+        LLMStreamParser.StreamChunk chunk = parseOpenAI(parser, "{\"choices\":[{\"delta\":{\"tool_calls\":["
+                + "{\"index\":0,\"id\":\"call_1\",\"type\":\"function\",\"function\":{\"name\":\"search\",\"arguments\":\"{\\\"q\\\":\"}},"
+                + "{\"index\":1,\"id\":\"call_2\",\"type\":\"function\",\"function\":{\"name\":\"file_tool\",\"arguments\":\"\"}}]}}]}");
+        assertEquals(2, chunk.getToolCallCount());
+        assertEquals("call_1", chunk.getToolCall(0).getId());
+        assertEquals("search", chunk.getToolCall(0).getName());
+        assertEquals("{\"q\":", chunk.getToolCall(0).getArguments());
+        assertEquals(1, chunk.getToolCall(1).getIndex());
+        assertEquals("file_tool", chunk.getToolCall(1).getName());
+
+        // 后续增量只带参数片段，复用的工具调用对象不保留上一次的 id 与 name
+        chunk = parseOpenAI(parser, "{\"choices\":[{\"delta\":{\"tool_calls\":[{\"index\":0,\"function\":{\"arguments\":\"\\\"ai\\\"}\"}}]}}]}");
+        assertEquals(1, chunk.getToolCallCount());
+        assertNull(chunk.getToolCall(0).getId());
+        assertNull(chunk.getToolCall(0).getName());
+        assertEquals("\"ai\"}", chunk.getToolCall(0).getArguments());
+    }
+
+    @Test
+    public void parseOpenAIWithOffset() throws IOException {
+        LLMStreamParser parser = new LLMStreamParser();
+        byte[] data = "xx{\"choices\":[{\"delta\":{\"content\":\"a\"}}]}yy".getBytes(StandardCharsets.UTF_8);
+        LLMStreamParser.StreamChunk chunk = parser.parseOpenAI(data, 2, data.length - 4);
+        assertEquals("a", chunk.getContent());
+    }
+
+    @Test
+    public void parseNonObject() throws IOException {
+        LLMStreamParser parser = new LLMStreamParser();
+        LLMStreamParser.StreamChunk chunk = parseOpenAI(parser, "[]");
+        assertFalse(chunk.isHasDelta());
+        assertNull(chunk.getContent());
+    }
+
+    @Test
+    public void parseClaude() throws IOException {
+        LLMStreamParser parser = new LLMStreamParser();
+        LLMStreamParser.StreamChunk chunk = parseClaude(parser, "{\"type\":\"content_block_delta\",\"id\":\"msg_1\",\"index\":0,"
+                + "\"delta\":{\"type\":\"text_delta\",\"text\":\"hi\"}}");
+        assertTrue(chunk.isHasDelta());
+        assertEquals("msg_1", chunk.getId());
+        assertEquals("text_delta", chunk.getDeltaType());
+        assertEquals("hi", chunk.getContent());
+
+        chunk = parseClaude(parser, "{\"type\":\"content_block_delta\",\"delta\":{\"type\":\"input_json_delta\",\"partial_json\":\"{\\\"a\\\"\"}}");
+        assertNull(chunk.getId());
+        assertNull(chunk.getContent());
+        assertEquals("input_json_delta", chunk.getDeltaType());
+        assertEquals("{\"a\"", chunk.getPartialJson());
+
+        chunk = parseClaude(parser, "{\"type\":\"message_stop\"}");
+        assertFalse(chunk.isHasDelta());
+    }
+
+    @Test
+    public void dispatchAfterArgumentsSplitAcrossChunks() throws IOException {
+        List<ToolCall> dispatched = new ArrayList<>();
+        ToolCallStream stream = new ToolCallStream(dispatched);
+        stream.delta(0, "call_1", "search", "{\"query\":");
+        stream.delta(0, null, null, "\"上海 天气\"");
+        assertTrue(dispatched.isEmpty());
+        stream.delta(0, null, null, "}");
+        assertEquals(1, dispatched.size());
+        assertEquals("call_1", dispatched.get(0).getId());
+        assertEquals("search", dispatched.get(0).getFunction().getName());
+        assertEquals("{\"query\":\"上海 天气\"}", dispatched.get(0).getFunction().getArguments());
+        // 已派发的调用不重复派发
+        stream.delta(0, null, null, " ");
+        assertEquals(1, dispatched.size());
+    }
+
+    @Test
+    public void bracesAndEscapedQuotesInsideStrings() throws IOException {
+        List<ToolCall> dispatched = new ArrayList<>();
+        ToolCallStream stream = new ToolCallStream(dispatched);
+        stream.delta(0, "call_1", "code_interpreter", "{\"code\":\"x { \\");
+        // 上一片段以反斜杠结尾，本片段开头的引号是转义字符
+        stream.delta(0, null, null, "\"}\\\" ]\",");
+        stream.delta(0, null, null, " \"list\":[1,{\"x\":\"]\"}]");
+        assertTrue(dispatched.isEmpty());
+        stream.delta(0, null, null, "}");
+        assertEquals(1, dispatched.size());
+        JSONObject arguments = JSON.parseObject(dispatched.get(0).getFunction().getArguments());
+        assertEquals("x { \"}\" ]", arguments.getString("code"));
+        assertEquals(2, arguments.getJSONArray("list").size());
+    }
+
+    @Test
+    public void dispatchWhenIndexMovesOn() throws IOException {
+        List<ToolCall> dispatched = new ArrayList<>();
+        ToolCallStream stream = new ToolCallStream(dispatched);
+        // 无参数工具的参数为空串，括号永远不会闭合，下一个调用开始时视为完整
+        stream.delta(0, "call_1", "list_files", "");
+        assertTrue(dispatched.isEmpty());
+        stream.delta(1, "call_2", "search", "{\"query\":\"a\"");
+        assertEquals(List.of("call_1"), ids(dispatched));
+        stream.delta(1, null, null, "}");
+        assertEquals(List.of("call_1", "call_2"), ids(dispatched));
+        // 缺少 id 或名称的调用不派发
+        stream.delta(2, null, null, "{}");
+        assertEquals(2, dispatched.size());
+        assertEquals(3, stream.calls.toToolCalls().size());
+    }
+
+    @Test
+    public void finalResponseDropsDispatchedCall() throws IOException {
+        EchoTool tool = new EchoTool();
+        BaseAgent agent = new BaseAgent() {
+            @Override
+            public String step() {
+                return null;
+            }
+        };
+        agent.setContext(AgentContext.builder().requestId("test").build());
+        agent.availableTools.addTool(tool);
+
+        ToolCallStream stream = new ToolCallStream(agent::dispatchTool);
+        stream.delta(0, "call_1", "echo", "{\"q\":\"1\"}");
+        stream.delta(1, "call_2", "echo", "{\"q\":\"2\"}");
+        List<ToolCall> toolCalls = stream.calls.toToolCalls();
+
+        // 最终响应只包含 call_1：复用提前派发的结果，call_2 被丢弃
+        Map<String, String> results = agent.executeTools(toolCalls.subList(0, 1));
+        assertEquals(Map.of("call_1", "echo 1"), results);
+        assertEquals(1, tool.count("1"));
+
+        // 被丢弃的派发不再被认领，再次执行时重新调用工具
+        results = agent.executeTools(toolCalls.subList(1, 2));
+        assertEquals(Map.of("call_2", "echo 2"), results);
+        assertTrue(tool.count("2") >= 1);
+
+        agent.dispatchTool(toolCalls.get(0));
+        agent.discardDispatchedTools("think finished without action");
+        assertEquals(Map.of(), agent.executeTools(List.of()));
+    }
+
+    private static List<String> ids(List<ToolCall> toolCalls) {
+        List<String> ids = new ArrayList<>();
+        for (ToolCall toolCall : toolCalls) {
+            ids.add(toolCall.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * 把工具调用增量编码为 OpenAI chunk，经解析后合并到 StreamToolCalls
+     */
+    private static class ToolCallStream {
+        private final LLMStreamParser parser = new LLMStreamParser();
+        private final StreamToolCalls calls;
+
+        private ToolCallStream(List<ToolCall> dispatched) {
+            this(dispatched::add);
+        }
+
+        private ToolCallStream(Consumer<ToolCall> listener) {
+            this.calls = new StreamToolCalls("test", listener);
+        }
+
+        private void delta(int index, String id, String name, String arguments) throws IOException {
+            JSONObject function = new JSONObject();
+            if (name != null) {
+                function.put("name", name);
+            }
+            function.put("arguments", arguments);
+            JSONObject toolCall = new JSONObject();
+            toolCall.put("index", index);
+            if (id != null) {
+                toolCall.put("id", id);
+                toolCall.put("type", "function");
+            }
+            toolCall.put("function", function);
+            JSONObject delta = new JSONObject();
+            delta.put("tool_calls", List.of(toolCall));
+            JSONObject choice = new JSONObject();
+            choice.put("delta", delta);
+            JSONObject chunk = new JSONObject();
+            chunk.put("choices", List.of(choice));
+            LLMStreamParser.StreamChunk parsed = parseOpenAI(parser, chunk.toJSONString());
+            for (int i = 0; i < parsed.getToolCallCount(); i++) {
+                calls.merge(parsed.getToolCall(i));
+            }
+        }
+    }
+
+    private static class EchoTool implements BaseTool {
+        private final Map<String, AtomicInteger> counts = new ConcurrentHashMap<>();
+
+        @Override
+        public String getName() {
+            return "echo";
+        }
+
+        @Override
+        public String getDescription() {
+            return "echo";
+        }
+
+        @Override
+        public Map<String, Object> toParams() {
+            return Map.of();
+        }
+
+        @Override
+        public Object execute(Object input) {
+            String q = String.valueOf(((Map<?, ?>) input).get("q"));
+            counts.computeIfAbsent(q, k -> new AtomicInteger()).incrementAndGet();
+            return "echo " + q;
+        }
+
+        private int count(String q) {
+            AtomicInteger count = counts.get(q);
+            return count == null ? 0 : count.get();
+        }
+    }
+
+    private static LLMStreamParser.StreamChunk parseOpenAI(LLMStreamParser parser, String json) throws IOException {
+        byte[] data = json.getBytes(StandardCharsets.UTF_8);
+        return parser.parseOpenAI(data, 0, data.length);
+    }
+
+    private static LLMStreamParser.StreamChunk parseClaude(LLMStreamParser parser, String json) throws IOException {
+        byte[] data = json.getBytes(StandardCharsets.UTF_8);
+        return parser.parseClaude(data, 0, data.length);
+    }
+}
@@ -0,0 +1,92 @@
+package com.jd.genie.agent.llm;
+
+import com.alibaba.fastjson.JSONObject;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jd.genie.agent.dto.Message;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.Okio;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 请求体序列化内存基准：对比 10k/50k/100k token 历史下每次请求的分配字节数
+ * legacy：完整日志 + writeValueAsString + RequestBody.create(String)；stream：消息序列化缓存 + JsonRequestBody 直接写入 sink
+ * 运行: java -cp target/test-classes:target/classes:<依赖> com.jd.genie.agent.llm.RequestBodyBenchmark
+ */
+public class RequestBodyBenchmark {
+    private static final String TEXT = "搜索结果：京东是中国领先的技术驱动型电商和零售基础设施服务商，The quick brown fox jumps over the lazy dog. ";
+
+    public static void main(String[] args) throws Exception {
+        int iterations = Integer.getInteger("iterations", 20);
+        ObjectMapper objectMapper = new ObjectMapper();
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        System.out.printf("%-8s %-10s %14s %14s %8s%n", "tokens", "messages", "legacy(KB)", "stream(KB)", "ratio");
+        for (int tokens : new int[]{10_000, 50_000, 100_000}) {
+            List<Message> messages = buildHistory(tokens);
+            long[] legacy = new long[1];
+            long[] stream = new long[1];
+            for (int round = 0; round < 2; round++) {
+                // 第一轮预热，第二轮计量
+                legacy[0] = 0;
+                stream[0] = 0;
+                for (int i = 0; i < iterations; i++) {
+                    long start = threadBean.getThreadAllocatedBytes(threadId);
+                    Map<String, Object> params = params(LLM.formatMessages(messages, false));
+                    String requestBodyJson = objectMapper.writeValueAsString(params);
+                    JSONObject.toJSONString(params);
+                    RequestBody body = RequestBody.create(MediaType.parse("application/json"), requestBodyJson);
+                    write(body);
+                    legacy[0] += threadBean.getThreadAllocatedBytes(threadId) - start;
+
+                    start = threadBean.getThreadAllocatedBytes(threadId);
+                    write(new JsonRequestBody(objectMapper, params(LLM.serializeMessages(messages, false))));
+                    stream[0] += threadBean.getThreadAllocatedBytes(threadId) - start;
+                }
+            }
+            System.out.printf("%-8d %-10d %14d %14d %7.1fx%n", tokens, messages.size(),
+                    legacy[0] / iterations / 1024, stream[0] / iterations / 1024, (double) legacy[0] / Math.max(1, stream[0]));
+        }
+    }
+
+    private static List<Message> buildHistory(int tokens) {
+        TokenCounter counter = new TokenCounter();
+        List<Message> messages = new ArrayList<>();
+        int total = 0;
+        while (total < tokens) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 20; i++) {
+                sb.append(TEXT);
+            }
+            Message message = messages.size() % 2 == 0
+                    ? Message.userMessage(sb.toString(), null)
+                    : Message.assistantMessage(sb.toString(), null);
+            total += counter.countMessage(message);
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    private static Map<String, Object> params(List<?> messages) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("model", "gpt-4.1");
+        params.put("messages", messages);
+        params.put("max_tokens", 4096);
+        params.put("temperature", 0);
+        params.put("stream", true);
+        return params;
+    }
+
+    private static void write(RequestBody body) throws Exception {
+        try (BufferedSink sink = Okio.buffer(Okio.blackhole())) {
+            body.writeTo(sink);
+        }
+    }
+}
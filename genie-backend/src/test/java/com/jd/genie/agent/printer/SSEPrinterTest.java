@@ -0,0 +1,158 @@
+package com.jd.genie.agent.printer;
+
+import com.jd.genie.agent.util.SpringContextHolder;
+import com.jd.genie.config.GenieConfig;
+import com.jd.genie.model.req.AgentRequest;
+import com.jd.genie.model.response.AgentResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.support.StaticApplicationContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * SSEPrinter 出站队列：下游暂停时合并增量、取代过期消息、超过上限结束输出
+ */
+public class SSEPrinterTest {
+    private static final int QUEUE_SIZE = 4;
+
+    private ApplicationContext previous;
+
+    @BeforeEach
+    public void setUp() {
+        previous = SpringContextHolder.getApplicationContext();
+        GenieConfig genieConfig = new GenieConfig();
+        ReflectionTestUtils.setField(genieConfig, "sseQueueSize", QUEUE_SIZE);
+        StaticApplicationContext context = new StaticApplicationContext();
+        context.getBeanFactory().registerSingleton("genieConfig", genieConfig);
+        context.refresh();
+        new SpringContextHolder().setApplicationContext(context);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        new SpringContextHolder().setApplicationContext(previous);
+    }
+
+    @Test
+    public void coalesceDeltasWhilePaused() {
+        PausedSink sink = new PausedSink();
+        SSEPrinter printer = newPrinter(sink);
+        printer.send("m1", "tool_thought", "a", null, false);
+        for (int i = 0; i < QUEUE_SIZE - 1; i++) {
+            printer.send("task", "task" + i);
+        }
+        // 队满，增量合并到排队中的同一消息
+        printer.send("m1", "tool_thought", "b", null, false);
+        printer.close();
+
+        sink.resume();
+        waitUntil(() -> sink.completed);
+        assertEquals(QUEUE_SIZE, sink.events.size());
+        assertEquals("ab", sink.events.get(0).getToolThought());
+    }
+
+    @Test
+    public void finalMessageAndPlanSupersedeQueued() {
+        PausedSink sink = new PausedSink();
+        SSEPrinter printer = newPrinter(sink);
+        printer.send("m1", "tool_thought", "a", null, false);
+        printer.send("plan", newPlan("p1"));
+        for (int i = 0; i < QUEUE_SIZE - 2; i++) {
+            printer.send("task", "task" + i);
+        }
+        printer.send("plan", newPlan("p2"));
+        printer.send("m1", "tool_thought", "abc", null, true);
+        printer.close();
+
+        sink.resume();
+        waitUntil(() -> sink.completed);
+        List<String> types = new ArrayList<>();
+        for (AgentResponse event : sink.events) {
+            types.add(event.getMessageType());
+        }
+        assertEquals(List.of("task", "task", "plan", "tool_thought"), types);
+        assertEquals("p2", sink.events.get(2).getPlan().getTitle());
+        assertEquals("abc", sink.events.get(3).getToolThought());
+    }
+
+    @Test
+    public void overflowClosesStream() {
+        PausedSink sink = new PausedSink();
+        SSEPrinter printer = newPrinter(sink);
+        for (int i = 0; i <= QUEUE_SIZE * 4; i++) {
+            printer.send("task", "task" + i);
+        }
+        // 下游仍未恢复，超过上限后直接结束输出
+        waitUntil(() -> sink.completed);
+        assertTrue(sink.events.isEmpty());
+        printer.send("task", "after overflow");
+        assertTrue(sink.events.isEmpty());
+    }
+
+    private static SSEPrinter newPrinter(EventSink sink) {
+        return new SSEPrinter(sink, AgentRequest.builder().requestId("test").build(), 1);
+    }
+
+    private static AgentResponse.Plan newPlan(String title) {
+        return AgentResponse.Plan.builder().title(title).steps(new ArrayList<>()).stepStatus(new ArrayList<>())
+                .notes(new ArrayList<>()).stages(new ArrayList<>()).build();
+    }
+
+    private static void waitUntil(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 3000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * 初始不可接收的写出目标，resume 后接收全部事件
+     */
+    private static class PausedSink implements EventSink {
+        private final List<AgentResponse> events = new CopyOnWriteArrayList<>();
+        private volatile boolean ready;
+        private volatile boolean completed;
+        private volatile Runnable listener;
+
+        @Override
+        public void send(Object payload) {
+            events.add((AgentResponse) payload);
+        }
+
+        @Override
+        public void complete() {
+            completed = true;
+        }
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        public void onReady(Runnable listener) {
+            this.listener = listener;
+        }
+
+        private void resume() {
+            ready = true;
+            listener.run();
+        }
+    }
+}
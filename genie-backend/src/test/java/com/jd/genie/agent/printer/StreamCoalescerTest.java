@@ -0,0 +1,52 @@
+package com.jd.genie.agent.printer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * StreamCoalescer：请求配置校验、按大小与延迟合并
+ */
+public class StreamCoalescerTest {
+
+    @Test
+    public void normalizeRequestConfig() {
+        assertEquals("20,100", StreamCoalescer.normalize("r", " 20 , 100 "));
+        assertEquals("1000,8192", StreamCoalescer.normalize("r", "600000,99999999"));
+        assertNull(StreamCoalescer.normalize("r", "50"));
+        assertNull(StreamCoalescer.normalize("r", "abc"));
+        assertNull(StreamCoalescer.normalize("r", "50,0"));
+        assertNull(StreamCoalescer.normalize("r", "-1,10"));
+        assertNull(StreamCoalescer.normalize("r", ""));
+    }
+
+    @Test
+    public void flushBySizeAndClose() {
+        List<String> out = new CopyOnWriteArrayList<>();
+        StreamCoalescer coalescer = new StreamCoalescer(60_000, 4, out::add);
+        // 首个增量立即发送
+        coalescer.append("a");
+        coalescer.append("bc");
+        coalescer.append("de");
+        coalescer.append("f");
+        assertEquals(List.of("a", "bcde"), out);
+        coalescer.close();
+        coalescer.append("ignored");
+        assertEquals(List.of("a", "bcde", "f"), out);
+    }
+
+    @Test
+    public void flushByLatency() throws InterruptedException {
+        List<String> out = new CopyOnWriteArrayList<>();
+        StreamCoalescer coalescer = new StreamCoalescer(50, 1024, out::add);
+        coalescer.append("a");
+        coalescer.append("b");
+        coalescer.append("c");
+        Thread.sleep(300);
+        assertEquals(List.of("a", "bc"), out);
+    }
+}
@@ -0,0 +1,113 @@
+package com.jd.genie.agent.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Desensitizer 与原逐条替换实现（legacy）的输出对比
+ */
+public class DesensitizerTest {
+
+    private static final Map<String, String> PATTERNS = new LinkedHashMap<>();
+
+    static {
+        PATTERNS.put("(?:[^A-Za-z0-9_-]|^)password[^A-Za-z0-9_-]", "PASSWORD");
+        PATTERNS.put("(?:[^A-Za-z0-9_-]|^)asd[^A-Za-z0-9_-]", "ASD");
+        PATTERNS.put("secret", "***");
+    }
+
+    private static final List<String> INPUTS = List.of(
+            "13812345678@qq.com",
+            "a@jd.com 联系 13812345678@163.com",
+            "asd 我的邮箱是test@example.com，身份证号是510104199001011234，手机号是13800138000，银行卡号是6226327514303272，哈哈password:::admin123 asd",
+            "内部邮箱 zhangsan@jd.com，手机 13912345678，卡号 6226327514303272",
+            "手机号x13812345678 与 138123456789 不脱敏，13812345678 脱敏",
+            "身份证 11010519491231002X，邮箱 foo.bar+x@mail.example.org",
+            "password: secret, asd",
+            "无敏感信息的普通文本",
+            "");
+
+    @Test
+    public void sameAsLegacy() {
+        Desensitizer desensitizer = Desensitizer.compile(PATTERNS);
+        for (String input : INPUTS) {
+            assertEquals(legacy(input, PATTERNS), desensitizer.desensitize(input), input);
+        }
+    }
+
+    @Test
+    public void phoneInsideEmailIsMasked() {
+        Desensitizer desensitizer = Desensitizer.compile(Map.of());
+        assertEquals("138✿✿✿✿5678＠qq.com", desensitizer.desensitize("13812345678@qq.com"));
+        // 含内部邮箱时邮箱不脱敏，号码仍脱敏
+        assertEquals("a@jd.com 联系 138✿✿✿✿5678@163.com", desensitizer.desensitize("a@jd.com 联系 13812345678@163.com"));
+    }
+
+    /**
+     * 原 StringUtil.textDesensitization 实现
+     */
+    private static String legacy(String content, Map<String, String> sensitivePatternsMapping) {
+        Pattern emailPattern = Pattern.compile("[a-zA-Z0-9\\._%\\+\\-]+@[a-zA-Z0-9\\.-]+\\.[a-zA-Z]{2,}");
+        Matcher emailMatcher = emailPattern.matcher(content);
+        while (emailMatcher.find()) {
+            String snippet = emailMatcher.group();
+            int maskIdx = snippet.indexOf("@");
+            if (content.contains("@jd.com")) {
+                continue;
+            }
+            content = content.replace(snippet, snippet.substring(0, maskIdx) + "＠" + snippet.substring(maskIdx + 1));
+        }
+
+        Pattern idPattern = Pattern.compile("(?:[^\\dA-Za-z_]|^)((?:[1-6][1-7]|50|71|81|82)\\d{4}(?:19|20)\\d{2}(?:0[1-9]|10|11|12)(?:[0-2][1-9]|10|20|30|31)\\d{3}[0-9Xx])(?:[^\\dA-Za-z_]|$)");
+        Matcher idMatcher = idPattern.matcher(content);
+        while (idMatcher.find()) {
+            String snippet = idMatcher.group(1);
+            content = content.replace(snippet, snippet.substring(0, 12) + "✿✿✿✿✿✿");
+        }
+
+        Pattern phonePattern = Pattern.compile("(?:[^\\dA-Za-z_]|^)(1[3456789]\\d{9})(?:[^\\dA-Za-z_]|$)");
+        Matcher phoneMatcher = phonePattern.matcher(content);
+        while (phoneMatcher.find()) {
+            String snippet = phoneMatcher.group(1);
+            content = content.replace(snippet, snippet.substring(0, 3) + "✿✿✿✿" + snippet.substring(7));
+        }
+
+        Pattern bankcardPattern = Pattern.compile("(?:[^\\dA-Za-z_]|^)(62(?:\\d{14}|\\d{17}))(?:[^\\dA-Za-z_]|$)");
+        Matcher bankcardMatcher = bankcardPattern.matcher(content);
+        while (bankcardMatcher.find()) {
+            String snippet = bankcardMatcher.group(1);
+            if (StringUtil.luhnBankCardVerify(snippet)) {
+                content = content.replace(snippet, snippet.substring(0, 12) + "✿✿✿✿✿✿");
+            }
+        }
+
+        for (Map.Entry<String, String> entry : sensitivePatternsMapping.entrySet()) {
+            String pattern = entry.getKey();
+            String wordMapping = entry.getValue();
+            int startIndex = pattern.indexOf("^)") + 2;
+            int endIndex = pattern.lastIndexOf("[^");
+            if (startIndex + 1 < endIndex) {
+                String sensitiveWord = pattern.substring(startIndex, endIndex);
+                Matcher sensitiveMatcher = Pattern.compile(pattern).matcher(content);
+                while (sensitiveMatcher.find()) {
+                    String snippet = sensitiveMatcher.group();
+                    if (content.startsWith(sensitiveWord)) {
+                        content = content.replace(snippet, wordMapping + snippet.substring(snippet.length() - 1));
+                    } else {
+                        content = content.replace(snippet, snippet.charAt(0) + wordMapping + snippet.substring(snippet.length() - 1));
+                    }
+                }
+            } else {
+                content = content.replace(pattern, wordMapping);
+            }
+        }
+        return content;
+    }
+}
@@ -0,0 +1,100 @@
+package com.jd.genie.agent.util;
+
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.Okio;
+import okio.Source;
+import okio.Timeout;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * SseFrameReader：只取 data 行、去掉可选空格与 \r、识别 [DONE]，字节分批到达时结果不变
+ */
+public class SseFrameReaderTest {
+    private static final String STREAM = ": keep-alive\n"
+            + "event: message\n"
+            + "data: {\"a\":1}\r\n"
+            + "\n"
+            + "id: 2\n"
+            + "data:{\"b\":\"中文\"}\n"
+            + "data: heartbeat\n"
+            + "data:\n"
+            + "data: [DONE]";
+
+    @Test
+    public void readDataFrames() throws IOException {
+        assertFrames(new SseFrameReader(new Buffer().writeUtf8(STREAM)));
+    }
+
+    @Test
+    public void readDataFramesByteByByte() throws IOException {
+        Buffer data = new Buffer().writeUtf8(STREAM);
+        assertFrames(new SseFrameReader(Okio.buffer(new OneByteSource(data))));
+    }
+
+    @Test
+    public void growBufferForLongFrame() throws IOException {
+        String payload = "x".repeat(20000);
+        SseFrameReader reader = new SseFrameReader(new Buffer().writeUtf8("data: " + payload + "\ndata: y\n"));
+        assertTrue(reader.next());
+        assertEquals(payload, reader.asString());
+        assertTrue(reader.next());
+        assertEquals("y", reader.asString());
+        assertFalse(reader.next());
+    }
+
+    private static void assertFrames(SseFrameReader reader) throws IOException {
+        List<String> frames = new ArrayList<>();
+        List<Boolean> heartbeats = new ArrayList<>();
+        boolean done = false;
+        while (reader.next()) {
+            if (reader.isDone()) {
+                done = true;
+                break;
+            }
+            frames.add(reader.asString());
+            heartbeats.add(reader.startsWith("heartbeat"));
+        }
+        assertTrue(done);
+        assertEquals(List.of("{\"a\":1}", "{\"b\":\"中文\"}", "heartbeat", ""), frames);
+        assertEquals(List.of(false, false, true, false), heartbeats);
+        assertFalse(reader.next());
+    }
+
+    /**
+     * 每次只返回一个字节的数据源，模拟网络分批到达
+     */
+    private static class OneByteSource implements Source {
+        private final Buffer data;
+
+        private OneByteSource(Buffer data) {
+            this.data = data;
+        }
+
+        @Override
+        public long read(Buffer sink, long byteCount) throws IOException {
+            if (data.exhausted()) {
+                return -1;
+            }
+            sink.writeByte(data.readByte());
+            return 1;
+        }
+
+        @Override
+        public Timeout timeout() {
+            return Timeout.NONE;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
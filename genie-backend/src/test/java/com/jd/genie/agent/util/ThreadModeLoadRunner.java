@@ -0,0 +1,132 @@
+package com.jd.genie.agent.util;
+
+import com.jd.genie.agent.llm.LLMClientFactory;
+import com.jd.genie.agent.llm.LLMSettings;
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.*;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 线程模式压测：模拟 N 个会话同时进入，对比 platform / virtual 两种线程模式的承载能力
+ * 每个会话在 agent 池中执行 steps 轮：一次流式 LLM 调用（本地 SSE 服务，经 OkHttpUtil.enqueue）+ tools 个并行工具调用（tool 池，阻塞 toolMs）
+ * 运行（virtual 需 JDK 21+）:
+ * java -Dautobots.autoagent.thread_mode=virtual -Dsessions=1000 -cp target/test-classes:target/classes:<依赖> com.jd.genie.agent.util.ThreadModeLoadRunner
+ */
+public class ThreadModeLoadRunner {
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    public static void main(String[] args) throws Exception {
+        int sessions = Integer.getInteger("sessions", 1000);
+        int steps = Integer.getInteger("steps", 3);
+        int tools = Integer.getInteger("tools", 2);
+        int llmMs = Integer.getInteger("llmMs", 500);
+        int toolMs = Integer.getInteger("toolMs", 200);
+        int chunks = 10;
+
+        ThreadPoolExecutor serverExecutor = (ThreadPoolExecutor) Executors.newCachedThreadPool(
+                new BasicThreadFactory.Builder().namingPattern("mock-llm-%d").daemon(true).build());
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 4096);
+        server.setExecutor(serverExecutor);
+        server.createContext("/v1/chat/completions", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int i = 0; i < chunks; i++) {
+                    ThreadUtil.sleep(llmMs / chunks);
+                    out.write(("data: {\"choices\":[{\"delta\":{\"content\":\"token" + i + "\"}}]}\n\n").getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                }
+                out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        server.start();
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/chat/completions";
+        OkHttpClient client = LLMClientFactory.getClient(LLMSettings.builder().baseUrl(url).build());
+
+        // 采样除模拟服务端外的线程数峰值
+        AtomicInteger peakThreads = new AtomicInteger();
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(
+                new BasicThreadFactory.Builder().namingPattern("sampler-%d").daemon(true).build());
+        sampler.scheduleAtFixedRate(() -> peakThreads.accumulateAndGet(
+                ManagementFactory.getThreadMXBean().getThreadCount() - serverExecutor.getPoolSize(), Math::max),
+                0, 20, TimeUnit.MILLISECONDS);
+
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger failed = new AtomicInteger();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int s = 0; s < sessions; s++) {
+            long submitted = System.nanoTime();
+            futures.add(ThreadUtil.execute(ThreadUtil.AGENT, () -> {
+                for (int step = 0; step < steps; step++) {
+                    streamLLM(client, url).join();
+                    List<CompletableFuture<String>> toolFutures = new ArrayList<>();
+                    for (int t = 0; t < tools; t++) {
+                        toolFutures.add(ThreadUtil.submit(ThreadUtil.TOOL, () -> {
+                            ThreadUtil.sleep(toolMs);
+                            return "ok";
+                        }));
+                    }
+                    toolFutures.forEach(CompletableFuture::join);
+                }
+                latencies.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - submitted));
+            }).exceptionally(e -> {
+                failed.incrementAndGet();
+                return null;
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        sampler.shutdownNow();
+        server.stop(0);
+
+        Collections.sort(latencies);
+        int completed = latencies.size();
+        System.out.printf("mode=%s jdk=%s sessions=%d completed=%d failed=%d elapsed=%dms throughput=%.1f sessions/s%n",
+                ThreadUtil.isVirtual() ? "virtual" : "platform", Runtime.version(), sessions, completed, failed.get(),
+                elapsed, completed * 1000.0 / Math.max(1, elapsed));
+        if (completed > 0) {
+            System.out.printf("latency p50=%dms p99=%dms max=%dms peakThreads=%d%n",
+                    latencies.get(completed / 2), latencies.get(Math.min(completed - 1, completed * 99 / 100)),
+                    latencies.get(completed - 1), peakThreads.get());
+        }
+        System.out.println(ThreadUtil.stats());
+        System.exit(0);
+    }
+
+    private static CompletableFuture<Integer> streamLLM(OkHttpClient client, String url) {
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        Request request = new Request.Builder().url(url).post(RequestBody.create("{\"stream\":true}", JSON)).build();
+        OkHttpUtil.enqueue(client.newCall(request), new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                int frames = 0;
+                try (ResponseBody body = response.body()) {
+                    SseFrameReader reader = new SseFrameReader(body.source());
+                    while (reader.next() && !reader.isDone()) {
+                        frames++;
+                    }
+                }
+                future.complete(frames);
+            }
+        });
+        return future;
+    }
+}
@@ -0,0 +1,127 @@
+package com.jd.genie.util;
+
+import com.jd.genie.agent.util.SpringContextHolder;
+import com.jd.genie.config.GenieConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.support.StaticApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * SseSession 断线续传：按 Last-Event-ID 补发、补发失败后仍按超时取消任务
+ */
+public class SseSessionTest {
+    private ApplicationContext previous;
+
+    @BeforeEach
+    public void setUp() {
+        previous = SpringContextHolder.getApplicationContext();
+        GenieConfig genieConfig = new GenieConfig();
+        ReflectionTestUtils.setField(genieConfig, "sseResumeBufferSize", 3);
+        ReflectionTestUtils.setField(genieConfig, "sseResumeGrace", 1);
+        StaticApplicationContext context = new StaticApplicationContext();
+        context.getBeanFactory().registerSingleton("genieConfig", genieConfig);
+        context.refresh();
+        new SpringContextHolder().setApplicationContext(context);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        new SpringContextHolder().setApplicationContext(previous);
+    }
+
+    @Test
+    public void resumeReplaysEventsAfterLastEventId() {
+        SseSession session = SseSession.open(SseSession.GPT, UUID.randomUUID().toString(), "heartbeat");
+        RecordingEmitter first = new RecordingEmitter();
+        session.attach(first, 0);
+        for (int i = 1; i <= 5; i++) {
+            session.send("e" + i);
+        }
+        assertEquals(List.of("1:e1", "2:e2", "3:e3", "4:e4", "5:e5"), first.events);
+
+        // 缓冲只保留最近 3 个事件
+        RecordingEmitter second = new RecordingEmitter();
+        session.attach(second, 3);
+        session.send("e6");
+        assertEquals(List.of("4:e4", "5:e5", "6:e6"), second.events);
+        assertEquals(5, first.events.size());
+
+        session.complete();
+        RecordingEmitter late = new RecordingEmitter();
+        session.attach(late, 5);
+        assertEquals(List.of("6:e6"), late.events);
+    }
+
+    @Test
+    public void orphanedAfterGraceWhenReplayFails() throws InterruptedException {
+        SseSession session = SseSession.open(SseSession.AUTO_AGENT, UUID.randomUUID().toString(), "heartbeat");
+        CountDownLatch orphaned = new CountDownLatch(1);
+        session.onOrphaned(orphaned::countDown);
+        session.attach(new RecordingEmitter(), 0);
+        session.send("e1");
+        session.send("e2");
+
+        // 重连后补发失败，会话没有连接，等待时间过后应取消任务
+        session.attach(new BrokenEmitter(), 1);
+        assertTrue(orphaned.await(3, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void resumeWithinGraceKeepsRun() throws InterruptedException {
+        SseSession session = SseSession.open(SseSession.AUTO_AGENT, UUID.randomUUID().toString(), "heartbeat");
+        CountDownLatch orphaned = new CountDownLatch(1);
+        session.onOrphaned(orphaned::countDown);
+        session.attach(new BrokenEmitter(), 0);
+        session.send("e1");
+
+        RecordingEmitter resumed = new RecordingEmitter();
+        session.attach(resumed, 0);
+        assertEquals(List.of("1:e1"), resumed.events);
+        assertFalse(orphaned.await(1500, TimeUnit.MILLISECONDS));
+        session.complete();
+    }
+
+    private static class RecordingEmitter extends SseEmitter {
+        private final List<String> events = new ArrayList<>();
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            StringBuilder text = new StringBuilder();
+            for (ResponseBodyEmitter.DataWithMediaType data : builder.build()) {
+                text.append(data.getData());
+            }
+            // 格式为 id:1\ndata:e1\n\n
+            String[] lines = text.toString().split("\n");
+            events.add(lines[0].substring("id:".length()) + ":" + lines[1].substring("data:".length()));
+        }
+    }
+
+    private static class BrokenEmitter extends SseEmitter {
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            throw new IOException("broken pipe");
+        }
+
+        @Override
+        public void send(Object object, MediaType mediaType) throws IOException {
+            throw new IOException("broken pipe");
+        }
+    }
+}
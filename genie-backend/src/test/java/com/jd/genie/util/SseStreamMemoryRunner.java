@@ -0,0 +1,109 @@
+package com.jd.genie.util;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.jd.genie.agent.printer.SSEPrinter;
+import com.jd.genie.agent.util.ThreadUtil;
+import com.jd.genie.model.req.AgentRequest;
+import com.jd.genie.model.response.AgentResponse;
+import org.reactivestreams.Subscription;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.BaseSubscriber;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 慢客户端下单连接内存与线程占用：同时打开 N 个流，每个流输出 events 个增量后客户端不再读取，稳定后统计堆（GC 后）与线程数
+ * servlet：SseSession + SSEPrinter，无下游请求量信号，事件全部写出并保留在续传缓冲中（连接写出不阻塞，近似容器缓冲）
+ * reactive：SseFluxSink + SSEPrinter，订阅者只请求 1 个事件，其余留在出站队列中合并
+ * 运行:
+ * java -Dstreams=1000,5000,10000 -Devents=1000 -cp target/test-classes:target/classes:<依赖> com.jd.genie.util.SseStreamMemoryRunner
+ */
+public class SseStreamMemoryRunner {
+
+    public static void main(String[] args) throws Exception {
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        String[] streamCounts = System.getProperty("streams", "1000,5000,10000").split(",");
+        int events = Integer.getInteger("events", 1000);
+
+        for (String count : streamCounts) {
+            int streams = Integer.parseInt(count.trim());
+            for (String mode : new String[]{"servlet", "reactive"}) {
+                run(mode, streams, events);
+            }
+        }
+        System.out.println(SSEPrinter.stats());
+        System.exit(0);
+    }
+
+    private static void run(String mode, int streams, int events) throws InterruptedException {
+        long baseHeap = usedHeap();
+        int baseThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+        List<Runnable> closers = new ArrayList<>(streams);
+        long start = System.nanoTime();
+        for (int s = 0; s < streams; s++) {
+            String requestId = mode + "-" + streams + "-" + s;
+            AgentRequest request = AgentRequest.builder().requestId(requestId).build();
+            SSEPrinter printer;
+            if ("servlet".equals(mode)) {
+                SseSession session = SseSession.open(SseSession.AUTO_AGENT, requestId, "heartbeat");
+                session.attach(new UnreadEmitter(), 0);
+                printer = new SSEPrinter(session, request, 1);
+                closers.add(session::complete);
+            } else {
+                SseFluxSink<AgentResponse> sink = new SseFluxSink<>(requestId, null, TimeUnit.HOURS.toMillis(1));
+                SlowSubscriber subscriber = new SlowSubscriber();
+                sink.flux().subscribe(subscriber);
+                printer = new SSEPrinter(sink, request, 1);
+                closers.add(subscriber::dispose);
+            }
+            for (int i = 0; i < events; i++) {
+                printer.send("msg", "tool_thought", "token" + i + " ", null, false);
+            }
+        }
+        // 等待写出任务结束
+        ThreadUtil.sleep(2000);
+        long heap = usedHeap() - baseHeap;
+        int threads = ManagementFactory.getThreadMXBean().getThreadCount() - baseThreads;
+        System.out.printf("mode=%s streams=%d events=%d open=%dms heap=%.1fMB (%.1fKB/stream) threads=+%d%n",
+                mode, streams, events, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                heap / 1024.0 / 1024.0, heap / 1024.0 / streams, threads);
+        closers.forEach(Runnable::run);
+        closers.clear();
+        ThreadUtil.sleep(500);
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            ThreadUtil.sleep(100);
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * 不读取的客户端：写出直接返回
+     */
+    private static class UnreadEmitter extends SseEmitter {
+        @Override
+        public void send(SseEventBuilder builder) {
+            builder.build();
+        }
+    }
+
+    /**
+     * 只请求一个事件的订阅者
+     */
+    private static class SlowSubscriber extends BaseSubscriber<ServerSentEvent<AgentResponse>> {
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            subscription.request(1);
+        }
+    }
+}